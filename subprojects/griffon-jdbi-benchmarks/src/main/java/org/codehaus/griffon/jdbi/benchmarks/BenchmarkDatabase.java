@@ -0,0 +1,100 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.jdbi.benchmarks;
+
+import org.codehaus.griffon.runtime.jdbi.CachingStatementBuilderFactory;
+import org.codehaus.griffon.runtime.jdbi.CachingStatementRewriter;
+import org.codehaus.griffon.runtime.jdbi.JMXAwareDBI;
+import org.codehaus.griffon.runtime.jdbi.RecordingDBI;
+import org.codehaus.griffon.runtime.jdbi.StatementTimingCollector;
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+
+/**
+ * In-memory H2 database shared by benchmarks. The {@code mode} selects how the DBI is assembled:
+ * <ul>
+ * <li>{@code raw}: a plain DBI.</li>
+ * <li>{@code decorated}: the JMXAwareDBI/RecordingDBI decorator stack without instrumentation.</li>
+ * <li>{@code instrumented}: the decorator stack as configured by default, plus a statement cache.</li>
+ * </ul>
+ *
+ * @author Andres Almiray
+ */
+final class BenchmarkDatabase {
+    static final int ROWS = 1000;
+
+    private final JdbcConnectionPool pool;
+    private final DBI dbi;
+
+    BenchmarkDatabase(String name, String mode) {
+        pool = JdbcConnectionPool.create("jdbc:h2:mem:" + name + "-" + mode + ";DB_CLOSE_DELAY=-1", "sa", "");
+        pool.setMaxConnections(64);
+        dbi = createDBI(mode);
+
+        Handle handle = dbi.open();
+        try {
+            handle.execute("DROP TABLE IF EXISTS people");
+            handle.execute("CREATE TABLE people (id INTEGER NOT NULL PRIMARY KEY, name VARCHAR(30) NOT NULL, lastname VARCHAR(30) NOT NULL, age INTEGER NOT NULL)");
+            PreparedBatch batch = handle.prepareBatch("INSERT INTO people (id, name, lastname, age) VALUES (:id, :name, :lastname, :age)");
+            for (int i = 0; i < ROWS; i++) {
+                batch.add()
+                    .bind("id", i)
+                    .bind("name", "name" + i)
+                    .bind("lastname", "lastname" + i)
+                    .bind("age", i % 100);
+            }
+            batch.execute();
+        } finally {
+            handle.close();
+        }
+    }
+
+    DBI getDBI() {
+        return dbi;
+    }
+
+    void close() {
+        Handle handle = dbi.open();
+        try {
+            handle.execute("SHUTDOWN");
+        } finally {
+            handle.close();
+        }
+        pool.dispose();
+    }
+
+    private DBI createDBI(String mode) {
+        DBI raw = new DBI(pool);
+        switch (mode) {
+            case "raw":
+                return raw;
+            case "decorated":
+                return new JMXAwareDBI(pool, new RecordingDBI(pool, raw));
+            case "instrumented":
+                raw.setStatementRewriter(new CachingStatementRewriter(1000));
+                RecordingDBI recordingDBI = new RecordingDBI(pool, raw);
+                recordingDBI.setStatementTimingCollector(new StatementTimingCollector(500));
+                recordingDBI.setStatementBuilderFactory(new CachingStatementBuilderFactory(32));
+                return new JMXAwareDBI(pool, recordingDBI);
+            default:
+                throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.jdbi.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionStatus;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of the decorator stack wrapped around every DBI and Handle. Compare the
+ * {@code raw} mode against {@code decorated} and {@code instrumented}; use JMH's {@code -t} option
+ * to run with more threads, i.e, {@code -PjmhArgs="DecoratorBenchmark -t 8"}.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecoratorBenchmark {
+    private static final int BATCH_SIZE = 50;
+
+    @Param({"raw", "decorated", "instrumented"})
+    public String mode;
+
+    private BenchmarkDatabase database;
+    private DBI dbi;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        database = new BenchmarkDatabase("decorators", mode);
+        dbi = database.getDBI();
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(Handle handle) {
+                handle.execute("CREATE TABLE IF NOT EXISTS events (id INTEGER NOT NULL PRIMARY KEY, name VARCHAR(30) NOT NULL, value INTEGER NOT NULL)");
+                return null;
+            }
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public boolean openClose() {
+        Handle handle = dbi.open();
+        boolean closed = handle.isClosed();
+        handle.close();
+        return closed;
+    }
+
+    @Benchmark
+    public Integer withHandle() {
+        return dbi.withHandle(new HandleCallback<Integer>() {
+            @Override
+            public Integer withHandle(Handle handle) {
+                return handle.createQuery("SELECT age FROM people WHERE id = :id")
+                    .bind("id", randomId())
+                    .mapTo(Integer.class)
+                    .first();
+            }
+        });
+    }
+
+    @Benchmark
+    public Integer inTransaction() {
+        return dbi.inTransaction(new TransactionCallback<Integer>() {
+            @Override
+            public Integer inTransaction(Handle handle, TransactionStatus status) {
+                return handle.update("UPDATE people SET age = age WHERE id = ?", randomId());
+            }
+        });
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> smallSelect() {
+        Handle handle = dbi.open();
+        try {
+            int from = randomId();
+            return handle.select("SELECT id, name, lastname, age FROM people WHERE id BETWEEN ? AND ?", from, from + 10);
+        } finally {
+            handle.close();
+        }
+    }
+
+    @Benchmark
+    public int[] batch() {
+        Handle handle = dbi.open();
+        try {
+            // merge keeps the table from growing for the duration of the benchmark
+            PreparedBatch batch = handle.prepareBatch("MERGE INTO events (id, name, value) KEY (id) VALUES (:id, :name, :value)");
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                batch.add().bind("id", i).bind("name", "event").bind("value", i);
+            }
+            return batch.execute();
+        } finally {
+            handle.close();
+        }
+    }
+
+    private static int randomId() {
+        return ThreadLocalRandom.current().nextInt(BenchmarkDatabase.ROWS - 10);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.jdbi.benchmarks;
+
+import griffon.plugins.jdbi.CompactRowMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.Query;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares JDBI's default row mapper with {@code CompactRowMapper} when reading every row of the
+ * people table. Allocation rates are reported by the GC profiler, i.e,
+ * {@code -PjmhArgs="RowMapperBenchmark -prof gc"}; look at {@code gc.alloc.rate.norm}.
+ *
+ * @author Andres Almiray
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMapperBenchmark {
+    @Param({"default", "compact"})
+    public String mapper;
+
+    private BenchmarkDatabase database;
+    private DBI dbi;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        database = new BenchmarkDatabase("mappers", "raw");
+        dbi = database.getDBI();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public long readAll() {
+        Handle handle = dbi.open();
+        try {
+            List<Map<String, Object>> rows = query(handle).list();
+            long sum = 0;
+            for (Map<String, Object> row : rows) {
+                sum += ((Number) row.get("age")).longValue();
+            }
+            return sum;
+        } finally {
+            handle.close();
+        }
+    }
+
+    private Query<Map<String, Object>> query(Handle handle) {
+        Query<Map<String, Object>> query = handle.createQuery("SELECT id, name, lastname, age FROM people");
+        return "compact".equals(mapper) ? query.map(CompactRowMapper.INSTANCE) : query;
+    }
+}
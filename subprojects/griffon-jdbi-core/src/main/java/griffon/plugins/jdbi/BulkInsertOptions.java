@@ -0,0 +1,96 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jdbi;
+
+import griffon.annotations.core.Nonnull;
+
+/**
+ * Settings for {@code JdbiHandler.withBulkInsert()}. Instances are immutable.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class BulkInsertOptions {
+    private static final BulkInsertOptions DEFAULTS = new BulkInsertOptions(1000, 10, 1);
+
+    private final int batchSize;
+    private final int commitInterval;
+    private final int parallelism;
+
+    private BulkInsertOptions(int batchSize, int commitInterval, int parallelism) {
+        this.batchSize = requirePositive(batchSize, "batchSize");
+        this.commitInterval = requirePositive(commitInterval, "commitInterval");
+        this.parallelism = requirePositive(parallelism, "parallelism");
+    }
+
+    /**
+     * Batches of 1000 rows, committed every 10 batches, on a single handle.
+     */
+    @Nonnull
+    public static BulkInsertOptions defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Number of rows sent to the database per JDBC batch.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Number of batches executed before committing.
+     */
+    public int getCommitInterval() {
+        return commitInterval;
+    }
+
+    /**
+     * Number of handles (and connections) writing batches concurrently.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @Nonnull
+    public BulkInsertOptions withBatchSize(int batchSize) {
+        return new BulkInsertOptions(batchSize, commitInterval, parallelism);
+    }
+
+    @Nonnull
+    public BulkInsertOptions withCommitInterval(int commitInterval) {
+        return new BulkInsertOptions(batchSize, commitInterval, parallelism);
+    }
+
+    @Nonnull
+    public BulkInsertOptions withParallelism(int parallelism) {
+        return new BulkInsertOptions(batchSize, commitInterval, parallelism);
+    }
+
+    @Override
+    public String toString() {
+        return "BulkInsertOptions[batchSize=" + batchSize + ", commitInterval=" + commitInterval + ", parallelism=" + parallelism + "]";
+    }
+
+    private static int requirePositive(int value, @Nonnull String name) {
+        if (value < 1) {
+            throw new IllegalArgumentException("Argument '" + name + "' must be greater than zero");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jdbi;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Caches the results of a SqlObject query method, keyed by the method's arguments.</p>
+ * <p>Cached results are shared between callers and must not be modified. Entries are discarded
+ * once {@code ttl} elapses, when the cache runs out of room, and whenever a SqlObject method or a
+ * {@code Handle} of the same datasource writes to any of the given {@code tables}.</p>
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface CachedQuery {
+    /**
+     * Time to live of each entry, in milliseconds.
+     */
+    long ttl() default 60000L;
+
+    /**
+     * Maximum number of entries for this method.
+     */
+    int maxEntries() default 1000;
+
+    /**
+     * Tables read by the query. Writes to any of them invalidate every entry of this method.
+     */
+    String[] tables() default {};
+}
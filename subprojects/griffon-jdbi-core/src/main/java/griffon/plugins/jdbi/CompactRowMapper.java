@@ -0,0 +1,292 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Maps rows to read-only {@code Map}s backed by arrays. Column names are resolved once per result and
+ * shared by every row; columns whose JDBC object type is a boxed primitive are stored unboxed and
+ * boxed again only when read. Keys are lower cased and lookups are case insensitive, just like
+ * the rows produced by JDBI's default mapper, though unlike those, rows cannot be modified.
+ * <p>
+ * Instances hold no state and may be shared, i.e, {@code query.map(CompactRowMapper.INSTANCE)}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class CompactRowMapper implements ResultSetMapper<Map<String, Object>> {
+    public static final CompactRowMapper INSTANCE = new CompactRowMapper();
+
+    private static final String ATTRIBUTE_COLUMN_INDEX = CompactRowMapper.class.getName() + ".columnIndex";
+
+    private static final byte KIND_OBJECT = 0;
+    private static final byte KIND_BOOLEAN = 1;
+    private static final byte KIND_BYTE = 2;
+    private static final byte KIND_SHORT = 3;
+    private static final byte KIND_INT = 4;
+    private static final byte KIND_LONG = 5;
+    private static final byte KIND_FLOAT = 6;
+    private static final byte KIND_DOUBLE = 7;
+
+    @Override
+    public Map<String, Object> map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+        ColumnIndex columns = (ColumnIndex) ctx.getAttribute(ATTRIBUTE_COLUMN_INDEX);
+        if (columns == null || columns.resultSet != r) {
+            columns = new ColumnIndex(r);
+            ctx.setAttribute(ATTRIBUTE_COLUMN_INDEX, columns);
+        }
+        return columns.read(r);
+    }
+
+    /**
+     * Column names, types and storage slots of a single result.
+     */
+    private static final class ColumnIndex {
+        private final ResultSet resultSet;
+        private final String[] names;
+        private final byte[] kinds;
+        private final int[] slots;
+        private final boolean[] visible;
+        private final Map<String, Integer> positions;
+        private final int primitiveCount;
+        private final int objectCount;
+        private final int size;
+
+        private ColumnIndex(@Nonnull ResultSet resultSet) throws SQLException {
+            this.resultSet = resultSet;
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            int count = metaData.getColumnCount();
+            names = new String[count];
+            kinds = new byte[count];
+            slots = new int[count];
+            visible = new boolean[count];
+            positions = new HashMap<>(count * 2);
+
+            int primitives = 0;
+            int objects = 0;
+            for (int i = 0; i < count; i++) {
+                String label = metaData.getColumnLabel(i + 1);
+                if (label == null || label.isEmpty()) {
+                    label = metaData.getColumnName(i + 1);
+                }
+                names[i] = label.toLowerCase(Locale.ENGLISH);
+                kinds[i] = kindOf(metaData.getColumnClassName(i + 1));
+                slots[i] = kinds[i] == KIND_OBJECT ? objects++ : primitives++;
+                // like the default mapper, the last column with a given name wins
+                Integer previous = positions.put(names[i], i);
+                if (previous != null) {
+                    visible[previous] = false;
+                }
+                visible[i] = true;
+            }
+            primitiveCount = primitives;
+            objectCount = objects;
+            size = positions.size();
+        }
+
+        @Nonnull
+        private CompactRow read(@Nonnull ResultSet r) throws SQLException {
+            long[] primitives = primitiveCount > 0 ? new long[primitiveCount] : null;
+            Object[] objects = objectCount > 0 ? new Object[objectCount] : null;
+            long[] nulls = null;
+
+            for (int i = 0; i < names.length; i++) {
+                int column = i + 1;
+                int slot = slots[i];
+                switch (kinds[i]) {
+                    case KIND_OBJECT:
+                        objects[slot] = r.getObject(column);
+                        continue;
+                    case KIND_BOOLEAN:
+                        primitives[slot] = r.getBoolean(column) ? 1L : 0L;
+                        break;
+                    case KIND_BYTE:
+                    case KIND_SHORT:
+                    case KIND_INT:
+                    case KIND_LONG:
+                        primitives[slot] = r.getLong(column);
+                        break;
+                    case KIND_FLOAT:
+                    case KIND_DOUBLE:
+                        primitives[slot] = Double.doubleToRawLongBits(r.getDouble(column));
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown column kind " + kinds[i]);
+                }
+                if (r.wasNull()) {
+                    if (nulls == null) {
+                        nulls = new long[(primitiveCount + 63) >>> 6];
+                    }
+                    nulls[slot >>> 6] |= 1L << slot;
+                }
+            }
+
+            return new CompactRow(this, primitives, objects, nulls);
+        }
+
+        private int positionOf(@Nullable Object key) {
+            if (!(key instanceof String)) {
+                return -1;
+            }
+            Integer position = positions.get(key);
+            if (position == null) {
+                position = positions.get(((String) key).toLowerCase(Locale.ENGLISH));
+            }
+            return position != null ? position : -1;
+        }
+
+        private static byte kindOf(@Nullable String className) {
+            if (className == null) {
+                return KIND_OBJECT;
+            }
+            switch (className) {
+                case "java.lang.Boolean":
+                    return KIND_BOOLEAN;
+                case "java.lang.Byte":
+                    return KIND_BYTE;
+                case "java.lang.Short":
+                    return KIND_SHORT;
+                case "java.lang.Integer":
+                    return KIND_INT;
+                case "java.lang.Long":
+                    return KIND_LONG;
+                case "java.lang.Float":
+                    return KIND_FLOAT;
+                case "java.lang.Double":
+                    return KIND_DOUBLE;
+                default:
+                    return KIND_OBJECT;
+            }
+        }
+    }
+
+    private static final class CompactRow extends AbstractMap<String, Object> {
+        private final ColumnIndex columns;
+        private final long[] primitives;
+        private final Object[] objects;
+        private final long[] nulls;
+
+        private CompactRow(@Nonnull ColumnIndex columns, @Nullable long[] primitives, @Nullable Object[] objects, @Nullable long[] nulls) {
+            this.columns = columns;
+            this.primitives = primitives;
+            this.objects = objects;
+            this.nulls = nulls;
+        }
+
+        @Override
+        public int size() {
+            return columns.size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return columns.positionOf(key) >= 0;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int position = columns.positionOf(key);
+            return position >= 0 ? valueAt(position) : null;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public int size() {
+                    return columns.size;
+                }
+
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+                        private int position = advance(0);
+
+                        @Override
+                        public boolean hasNext() {
+                            return position < columns.names.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, Object> entry = new SimpleImmutableEntry<>(columns.names[position], valueAt(position));
+                            position = advance(position + 1);
+                            return entry;
+                        }
+                    };
+                }
+            };
+        }
+
+        private int advance(int position) {
+            while (position < columns.names.length && !columns.visible[position]) {
+                position++;
+            }
+            return position;
+        }
+
+        @Nullable
+        private Object valueAt(int position) {
+            int slot = columns.slots[position];
+            byte kind = columns.kinds[position];
+            if (kind == KIND_OBJECT) {
+                return objects[slot];
+            }
+            if (nulls != null && (nulls[slot >>> 6] & (1L << slot)) != 0) {
+                return null;
+            }
+
+            long value = primitives[slot];
+            switch (kind) {
+                case KIND_BOOLEAN:
+                    return value != 0L;
+                case KIND_BYTE:
+                    return (byte) value;
+                case KIND_SHORT:
+                    return (short) value;
+                case KIND_INT:
+                    return (int) value;
+                case KIND_LONG:
+                    return value;
+                case KIND_FLOAT:
+                    return (float) Double.longBitsToDouble(value);
+                default:
+                    return Double.longBitsToDouble(value);
+            }
+        }
+    }
+}
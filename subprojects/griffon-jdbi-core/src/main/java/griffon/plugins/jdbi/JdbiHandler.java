@@ -20,6 +20,13 @@ package griffon.plugins.jdbi;
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
 import griffon.plugins.jdbi.exceptions.RuntimeJdbiException;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
 
 /**
  * @author Andres Almiray
@@ -34,6 +41,60 @@ public interface JdbiHandler {
     <R> R withJdbi(@Nonnull String datasourceName, @Nonnull JdbiCallback<R> callback)
         throws RuntimeJdbiException;
 
+    @Nullable
+    <R> R withJdbiReadOnly(@Nonnull JdbiCallback<R> callback)
+        throws RuntimeJdbiException;
+
+    @Nullable
+    <R> R withJdbiReadOnly(@Nonnull String datasourceName, @Nonnull JdbiCallback<R> callback)
+        throws RuntimeJdbiException;
+
+    @Nullable
+    <R> R withJdbiUnitOfWork(@Nonnull JdbiCallback<R> callback)
+        throws RuntimeJdbiException;
+
+    @Nullable
+    <R> R withJdbiUnitOfWork(@Nonnull String datasourceName, @Nonnull JdbiCallback<R> callback)
+        throws RuntimeJdbiException;
+
+    @Nonnull
+    <R> CompletableFuture<R> withJdbiAsync(@Nonnull JdbiCallback<R> callback)
+        throws RuntimeJdbiException;
+
+    @Nonnull
+    <R> CompletableFuture<R> withJdbiAsync(@Nonnull String datasourceName, @Nonnull JdbiCallback<R> callback)
+        throws RuntimeJdbiException;
+
+    @Nonnull
+    <R> CompletableFuture<R> withJdbiAsync(@Nonnull String datasourceName, @Nonnull JdbiCallback<R> callback, @Nonnull Executor executor)
+        throws RuntimeJdbiException;
+
+    @Nullable
+    <R> R withJdbiShard(@Nonnull String shardGroup, @Nonnull Object shardKey, @Nonnull JdbiCallback<R> callback)
+        throws RuntimeJdbiException;
+
+    @Nonnull
+    <R> Stream<R> withJdbiShards(@Nonnull String shardGroup, @Nonnull JdbiCallback<R> callback)
+        throws RuntimeJdbiException;
+
+    @Nullable
+    <R> R withJdbiTransaction(@Nonnull TransactionCallback<R> callback, @Nonnull RetryPolicy retryPolicy)
+        throws RuntimeJdbiException;
+
+    @Nullable
+    <R> R withJdbiTransaction(@Nonnull String datasourceName, @Nonnull TransactionCallback<R> callback, @Nonnull RetryPolicy retryPolicy)
+        throws RuntimeJdbiException;
+
+    @Nullable
+    <R> R withJdbiTransaction(@Nonnull String datasourceName, @Nonnull TransactionIsolationLevel isolation, @Nonnull TransactionCallback<R> callback, @Nonnull RetryPolicy retryPolicy)
+        throws RuntimeJdbiException;
+
+    <R> long withBulkInsert(@Nonnull String sql, @Nonnull Iterator<R> rows, @Nonnull BulkInsertOptions options)
+        throws RuntimeJdbiException;
+
+    <R> long withBulkInsert(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Iterator<R> rows, @Nonnull BulkInsertOptions options)
+        throws RuntimeJdbiException;
+
     void closeJdbi();
 
     void closeJdbi(@Nonnull String datasourceName);
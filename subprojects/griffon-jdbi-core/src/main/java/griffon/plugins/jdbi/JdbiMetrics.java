@@ -0,0 +1,60 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jdbi;
+
+import griffon.annotations.core.Nonnull;
+
+/**
+ * Receives measurements from every datasource. Implementations are discovered through the injector,
+ * just like {@code JdbiBootstrap}, when a datasource is connected.
+ * <p>
+ * Methods are invoked on the thread performing the work, often while a connection is held, and
+ * must therefore be fast and must not throw. Arguments are primitives or strings that already
+ * exist, thus reporting a measurement allocates nothing on behalf of the implementation.
+ * All times are expressed in nanoseconds.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface JdbiMetrics {
+    /**
+     * A handle was opened after waiting {@code acquisitionNanos} for a connection.
+     */
+    void handleOpened(@Nonnull String datasourceName, long acquisitionNanos);
+
+    /**
+     * A handle was closed after being held for {@code heldNanos}.
+     */
+    void handleClosed(@Nonnull String datasourceName, long heldNanos);
+
+    /**
+     * A statement was executed. Statements issued by SqlObjects are named after their type and method,
+     * any other statement is named after its SQL.
+     */
+    void statementExecuted(@Nonnull String datasourceName, @Nonnull String statementName, long elapsedNanos);
+
+    /**
+     * An outermost transaction ended, either committed or rolled back.
+     */
+    void transactionCompleted(@Nonnull String datasourceName, boolean committed, long elapsedNanos);
+
+    /**
+     * A JDBC batch of {@code size} rows was executed.
+     */
+    void batchExecuted(@Nonnull String datasourceName, int size);
+}
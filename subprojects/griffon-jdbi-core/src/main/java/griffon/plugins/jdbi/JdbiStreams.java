@@ -0,0 +1,254 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.codehaus.griffon.runtime.jdbi.DBIDecorator;
+import org.codehaus.griffon.runtime.jdbi.RecordingDBI;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.ResultIterator;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Query helpers that read rows one at a time from a forward-only, read-only cursor instead of
+ * materializing the whole result, i.e, {@code Handle.select()}. Rows are fetched from the database
+ * in chunks of {@code fetchSize}; a value of {@code 0} leaves the driver's default in place.
+ * <p>
+ * Streams obtained from a {@code DBI} own their {@code Handle}, which is closed together with the
+ * cursor once the stream is exhausted, fails, or is closed. Short-circuiting operations such as
+ * {@code findFirst()} do not exhaust the stream, thus streams should be consumed inside a
+ * try-with-resources block. Streams obtained from a {@code Handle} close the cursor only.
+ * <p>
+ * The {@code forEach()} variants release every resource before returning.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class JdbiStreams {
+    private static final String ERROR_DBI_NULL = "Argument 'dbi' must not be null";
+    private static final String ERROR_HANDLE_NULL = "Argument 'handle' must not be null";
+    private static final String ERROR_MAPPER_NULL = "Argument 'mapper' must not be null";
+    private static final String ERROR_ACTION_NULL = "Argument 'action' must not be null";
+    private static final String ERROR_SQL_BLANK = "Argument 'sql' must not be blank";
+
+    private JdbiStreams() {
+        // prevent instantiation
+    }
+
+    @Nonnull
+    public static Stream<Map<String, Object>> stream(@Nonnull DBI dbi, int fetchSize, @Nonnull String sql, @Nullable Object... args) {
+        requireNonNull(dbi, ERROR_DBI_NULL);
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        return toStream(iterator(dbi, fetchSize, null, sql, args));
+    }
+
+    @Nonnull
+    public static <T> Stream<T> stream(@Nonnull DBI dbi, int fetchSize, @Nonnull ResultSetMapper<T> mapper, @Nonnull String sql, @Nullable Object... args) {
+        requireNonNull(dbi, ERROR_DBI_NULL);
+        requireNonNull(mapper, ERROR_MAPPER_NULL);
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        return toStream(iterator(dbi, fetchSize, mapper, sql, args));
+    }
+
+    @Nonnull
+    public static Stream<Map<String, Object>> stream(@Nonnull Handle handle, int fetchSize, @Nonnull String sql, @Nullable Object... args) {
+        requireNonNull(handle, ERROR_HANDLE_NULL);
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        return toStream(new RowIterator<>(query(handle, fetchSize, null, sql, args).iterator(), null, false));
+    }
+
+    @Nonnull
+    public static <T> Stream<T> stream(@Nonnull Handle handle, int fetchSize, @Nonnull ResultSetMapper<T> mapper, @Nonnull String sql, @Nullable Object... args) {
+        requireNonNull(handle, ERROR_HANDLE_NULL);
+        requireNonNull(mapper, ERROR_MAPPER_NULL);
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        return toStream(new RowIterator<>(query(handle, fetchSize, mapper, sql, args).iterator(), null, false));
+    }
+
+    /**
+     * Invokes {@code action} for every row.
+     *
+     * @return the number of rows processed.
+     */
+    public static long forEach(@Nonnull DBI dbi, int fetchSize, @Nonnull String sql, @Nonnull Consumer<? super Map<String, Object>> action, @Nullable Object... args) {
+        requireNonNull(dbi, ERROR_DBI_NULL);
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        requireNonNull(action, ERROR_ACTION_NULL);
+        return forEach(iterator(dbi, fetchSize, null, sql, args), action);
+    }
+
+    /**
+     * Invokes {@code action} for every row, as mapped by {@code mapper}.
+     *
+     * @return the number of rows processed.
+     */
+    public static <T> long forEach(@Nonnull DBI dbi, int fetchSize, @Nonnull ResultSetMapper<T> mapper, @Nonnull String sql, @Nonnull Consumer<? super T> action, @Nullable Object... args) {
+        requireNonNull(dbi, ERROR_DBI_NULL);
+        requireNonNull(mapper, ERROR_MAPPER_NULL);
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        requireNonNull(action, ERROR_ACTION_NULL);
+        return forEach(iterator(dbi, fetchSize, mapper, sql, args), action);
+    }
+
+    private static <T> long forEach(@Nonnull RowIterator<T> iterator, @Nonnull Consumer<? super T> action) {
+        long count = 0;
+        try {
+            while (iterator.hasNext()) {
+                action.accept(iterator.next());
+                count++;
+            }
+            return count;
+        } finally {
+            iterator.close();
+        }
+    }
+
+    @Nonnull
+    private static <T> RowIterator<T> iterator(@Nonnull DBI dbi, int fetchSize, @Nullable ResultSetMapper<T> mapper, @Nonnull String sql, @Nullable Object[] args) {
+        RecordingDBI recordingDBI = DBIDecorator.unwrap(dbi, RecordingDBI.class);
+        Handle handle = dbi.open();
+        // a transaction already in progress, be it the one of a unit of work or the one reported for
+        // connections without auto-commit, is not ours to end. The handle is closed regardless, closing
+        // the handle of a unit of work has no effect
+        boolean began = false;
+        try {
+            if (!handle.isInTransaction() && (recordingDBI == null || !recordingDBI.isInUnitOfWork())) {
+                // some drivers (PostgreSQL) ignore the fetch size unless auto-commit is disabled
+                handle.begin();
+                began = true;
+            }
+            return new RowIterator<>(query(handle, fetchSize, mapper, sql, args).iterator(), handle, began);
+        } catch (RuntimeException e) {
+            RowIterator.release(handle, began);
+            throw e;
+        }
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    private static <T> Query<T> query(@Nonnull Handle handle, int fetchSize, @Nullable ResultSetMapper<T> mapper, @Nonnull String sql, @Nullable Object[] args) {
+        Query<Map<String, Object>> query = handle.createQuery(sql);
+        if (args != null) {
+            for (int i = 0; i < args.length; i++) {
+                query.bind(i, args[i]);
+            }
+        }
+        if (fetchSize != 0) {
+            query.setFetchSize(fetchSize);
+        }
+        query.fetchForward();
+        return mapper != null ? query.map(mapper) : (Query<T>) query;
+    }
+
+    @Nonnull
+    private static <T> Stream<T> toStream(@Nonnull final RowIterator<T> iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+            .onClose(new Runnable() {
+                @Override
+                public void run() {
+                    iterator.close();
+                }
+            });
+    }
+
+    /**
+     * Releases the cursor, and the handle when owned, as soon as the last row has been read or a failure occurs.
+     */
+    private static final class RowIterator<T> implements Iterator<T> {
+        private final ResultIterator<T> delegate;
+        private final Handle handle;
+        private final boolean began;
+        private boolean closed;
+
+        private RowIterator(@Nonnull ResultIterator<T> delegate, @Nullable Handle handle, boolean began) {
+            this.delegate = delegate;
+            this.handle = handle;
+            this.began = began;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            }
+            try {
+                boolean hasNext = delegate.hasNext();
+                if (!hasNext) {
+                    close();
+                }
+                return hasNext;
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return delegate.next();
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                delegate.close();
+            } finally {
+                if (handle != null) {
+                    release(handle, began);
+                }
+            }
+        }
+
+        private static void release(@Nonnull Handle handle, boolean began) {
+            try {
+                // nothing was written, rolling back simply ends the transaction opened for the cursor
+                if (began && handle.isInTransaction()) {
+                    handle.rollback();
+                }
+            } finally {
+                handle.close();
+            }
+        }
+    }
+}
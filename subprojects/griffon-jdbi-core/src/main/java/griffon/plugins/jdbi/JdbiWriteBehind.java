@@ -0,0 +1,67 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.jdbi.exceptions.RuntimeJdbiException;
+
+import java.util.Map;
+
+/**
+ * Queues fire-and-forget statements, such as counters, audit rows or last-seen timestamps, and writes
+ * them in the background as JDBC batches. Statements enqueued with the same SQL and key are coalesced:
+ * only the parameters of the latest one are written.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public interface JdbiWriteBehind {
+    /**
+     * Queues a statement whose named parameters are given by {@code params}.
+     *
+     * @throws RuntimeJdbiException if the queue stays full for longer than the datasource allows, or once
+     *                              the queues have been drained.
+     */
+    void enqueue(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Map<String, ?> params)
+        throws RuntimeJdbiException;
+
+    /**
+     * Queues a statement, replacing the parameters of a pending statement with the same SQL and key.
+     *
+     * @throws RuntimeJdbiException if the queue stays full for longer than the datasource allows, or once
+     *                              the queues have been drained.
+     */
+    void enqueue(@Nonnull String datasourceName, @Nonnull String sql, @Nullable Object key, @Nonnull Map<String, ?> params)
+        throws RuntimeJdbiException;
+
+    /**
+     * Writes the statements queued for the given datasource, waiting until they have been written or writing them failed.
+     */
+    void flush(@Nonnull String datasourceName);
+
+    /**
+     * Number of statements queued for the given datasource that have not been written yet.
+     */
+    int getPendingCount(@Nonnull String datasourceName);
+
+    /**
+     * Writes every queued statement and stops accepting new ones.
+     */
+    void drain();
+}
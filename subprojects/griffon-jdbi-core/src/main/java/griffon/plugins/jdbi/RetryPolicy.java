@@ -0,0 +1,228 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Settings for {@code JdbiHandler.withJdbiTransaction()}. Instances are immutable.
+ * <p>
+ * A failed transaction is retried when any {@code SQLException} in its cause chain has one of the
+ * retryable SQLStates, by default {@code 40001} (serialization failure, also reported by most drivers
+ * for deadlocks) and {@code 40P01} (PostgreSQL deadlock), or one of the retryable vendor error codes.
+ * Other states of class {@code 40}, such as {@code 40002} (integrity constraint violation), are not
+ * retried, and neither is a {@code SQLTransactionRollbackException} that reports one of them.
+ * <p>
+ * Vendor error codes are not namespaced, so the defaults, {@code 60} and {@code 8177} (Oracle deadlock
+ * and serialization failure) and {@code 1205} (MySQL lock wait timeout), may mean something else to
+ * other databases. Replace them with {@link #withRetryableErrorCodes(int...)} when using a database
+ * that is neither Oracle nor MySQL.
+ * <p>
+ * Attempt {@code n} waits {@code initialBackoff * multiplier^(n - 1)} milliseconds, capped at
+ * {@code maxBackoff}, before retrying; {@code jitter} is the fraction of that wait that is randomized so
+ * that transactions that collided once do not collide again.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class RetryPolicy {
+    private static final int[] DEFAULT_ERROR_CODES = {60, 8177, 1205};
+    private static final String[] DEFAULT_SQL_STATES = {"40001", "40P01"};
+    private static final RetryPolicy DEFAULTS = new RetryPolicy(3, 50L, 2000L, 2d, 0.5d, DEFAULT_ERROR_CODES, DEFAULT_SQL_STATES);
+
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final double multiplier;
+    private final double jitter;
+    private final int[] retryableErrorCodes;
+    private final String[] retryableSqlStates;
+
+    private RetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff, double multiplier, double jitter, @Nonnull int[] retryableErrorCodes, @Nonnull String[] retryableSqlStates) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Argument 'maxAttempts' must be greater than zero");
+        }
+        if (initialBackoff < 0 || maxBackoff < 0) {
+            throw new IllegalArgumentException("Backoff must not be negative");
+        }
+        if (multiplier < 1d) {
+            throw new IllegalArgumentException("Argument 'multiplier' must be at least 1");
+        }
+        if (jitter < 0d || jitter > 1d) {
+            throw new IllegalArgumentException("Argument 'jitter' must be between 0 and 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+        this.retryableErrorCodes = retryableErrorCodes;
+        this.retryableSqlStates = retryableSqlStates;
+    }
+
+    /**
+     * Up to 3 attempts, waiting 50ms then 100ms (each up to 50% shorter), never more than 2 seconds.
+     */
+    @Nonnull
+    public static RetryPolicy defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Maximum number of times the transaction is executed, including the first one.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Milliseconds to wait before the first retry.
+     */
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    /**
+     * Upper bound, in milliseconds, of the wait before any retry.
+     */
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    @Nonnull
+    public int[] getRetryableErrorCodes() {
+        return retryableErrorCodes.clone();
+    }
+
+    @Nonnull
+    public String[] getRetryableSqlStates() {
+        return retryableSqlStates.clone();
+    }
+
+    @Nonnull
+    public RetryPolicy withMaxAttempts(int maxAttempts) {
+        return new RetryPolicy(maxAttempts, initialBackoff, maxBackoff, multiplier, jitter, retryableErrorCodes, retryableSqlStates);
+    }
+
+    @Nonnull
+    public RetryPolicy withInitialBackoff(long initialBackoff) {
+        return new RetryPolicy(maxAttempts, initialBackoff, maxBackoff, multiplier, jitter, retryableErrorCodes, retryableSqlStates);
+    }
+
+    @Nonnull
+    public RetryPolicy withMaxBackoff(long maxBackoff) {
+        return new RetryPolicy(maxAttempts, initialBackoff, maxBackoff, multiplier, jitter, retryableErrorCodes, retryableSqlStates);
+    }
+
+    @Nonnull
+    public RetryPolicy withMultiplier(double multiplier) {
+        return new RetryPolicy(maxAttempts, initialBackoff, maxBackoff, multiplier, jitter, retryableErrorCodes, retryableSqlStates);
+    }
+
+    @Nonnull
+    public RetryPolicy withJitter(double jitter) {
+        return new RetryPolicy(maxAttempts, initialBackoff, maxBackoff, multiplier, jitter, retryableErrorCodes, retryableSqlStates);
+    }
+
+    /**
+     * Replaces the vendor error codes that are retried regardless of their SQLState.
+     */
+    @Nonnull
+    public RetryPolicy withRetryableErrorCodes(@Nonnull int... retryableErrorCodes) {
+        return new RetryPolicy(maxAttempts, initialBackoff, maxBackoff, multiplier, jitter, retryableErrorCodes.clone(), retryableSqlStates);
+    }
+
+    /**
+     * Replaces the SQLStates that are retried.
+     */
+    @Nonnull
+    public RetryPolicy withRetryableSqlStates(@Nonnull String... retryableSqlStates) {
+        for (String sqlState : retryableSqlStates) {
+            requireNonNull(sqlState, "Argument 'retryableSqlStates' must not contain null values");
+        }
+        return new RetryPolicy(maxAttempts, initialBackoff, maxBackoff, multiplier, jitter, retryableErrorCodes, retryableSqlStates.clone());
+    }
+
+    /**
+     * Whether a transaction that failed with the given exception may succeed if executed again.
+     */
+    public boolean isRetryable(@Nullable Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof SQLException && isRetryable((SQLException) t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Milliseconds to wait before executing the transaction for the given attempt, starting at 2.
+     */
+    public long backoffFor(int attempt) {
+        double backoff = initialBackoff * Math.pow(multiplier, Math.max(0, attempt - 2));
+        long capped = (long) Math.min(backoff, maxBackoff);
+        if (capped <= 0 || jitter == 0d) {
+            return capped;
+        }
+        return capped - (long) (capped * jitter * ThreadLocalRandom.current().nextDouble());
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy[maxAttempts=" + maxAttempts + ", initialBackoff=" + initialBackoff + ", maxBackoff=" + maxBackoff +
+            ", multiplier=" + multiplier + ", jitter=" + jitter + ", retryableErrorCodes=" + Arrays.toString(retryableErrorCodes) +
+            ", retryableSqlStates=" + Arrays.toString(retryableSqlStates) + "]";
+    }
+
+    private boolean isRetryable(@Nonnull SQLException e) {
+        String sqlState = e.getSQLState();
+        if (sqlState == null) {
+            if (e instanceof SQLTransactionRollbackException) {
+                return true;
+            }
+        } else {
+            for (String state : retryableSqlStates) {
+                if (state.equals(sqlState)) {
+                    return true;
+                }
+            }
+        }
+        for (int code : retryableErrorCodes) {
+            if (e.getErrorCode() == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
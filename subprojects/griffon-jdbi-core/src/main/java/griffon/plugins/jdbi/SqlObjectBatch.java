@@ -0,0 +1,333 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.PreparedBatchPart;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.BindingAnnotation;
+import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
+import org.skife.jdbi.v2.sqlobject.SqlStatementCustomizingAnnotation;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.Transaction;
+import org.skife.jdbi.v2.sqlobject.customizers.RegisterContainerMapper;
+import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
+import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapperFactory;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Scope in which {@code @SqlUpdate} methods of SqlObjects are not executed right away but collected and
+ * sent as JDBC batches, one per run of consecutive calls to the same statement, when {@code batchSize}
+ * calls are pending, when {@link #flush()} is called and when the scope is closed. Calls are executed in
+ * the order in which they were made.
+ * <p>
+ * Only methods returning {@code void}, {@code int} or {@code long} whose parameters are bound with
+ * {@code @Bind} (or positionally, without annotations) are batched; they return {@code 0} as their
+ * update counts are not known yet. Methods annotated with {@code @GetGeneratedKeys}, {@code @Transaction}
+ * or any statement customizer, and methods of SqlObject types annotated with a statement customizer
+ * other than a mapper registration, such as a statement locator, cannot be replayed and are not
+ * batched. Any method that is not batched, queries included, flushes pending calls and is executed
+ * right away so that it observes their effects. Update counts are returned by {@code flush()} and
+ * {@link #getUpdateCounts()}, in call order.
+ * <p>
+ * As with SqlObjects, a blank {@code @SqlUpdate} value names the statement after the method; the name is
+ * resolved by the {@code StatementLocator} of the scope's {@code Handle}.
+ * <p>
+ * Every SqlObject attached to a scope shares its {@code Handle}, which is closed together with the scope;
+ * calling {@code close()} on a SqlObject has no effect.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class SqlObjectBatch implements AutoCloseable {
+    private static final String ERROR_DBI_NULL = "Argument 'dbi' must not be null";
+    private static final String ERROR_SQL_OBJECT_TYPE_NULL = "Argument 'sqlObjectType' must not be null";
+    private static final String BARE_BINDING = defaultBindingName();
+    private static final Set<Class<? extends Annotation>> RESULT_MAPPING_CUSTOMIZERS = new HashSet<Class<? extends Annotation>>(Arrays.asList(
+        RegisterMapper.class, RegisterMapperFactory.class, RegisterContainerMapper.class));
+
+    private final Handle handle;
+    private final int batchSize;
+    private final List<Call> pending = new ArrayList<>();
+    private int[] updateCounts = new int[0];
+    private boolean closed;
+
+    private SqlObjectBatch(@Nonnull Handle handle, int batchSize) {
+        this.handle = handle;
+        this.batchSize = batchSize;
+    }
+
+    @Nonnull
+    public static SqlObjectBatch open(@Nonnull DBI dbi) {
+        return open(dbi, 1000);
+    }
+
+    @Nonnull
+    public static SqlObjectBatch open(@Nonnull DBI dbi, int batchSize) {
+        requireNonNull(dbi, ERROR_DBI_NULL);
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Argument 'batchSize' must be greater than 0");
+        }
+        return new SqlObjectBatch(dbi.open(), batchSize);
+    }
+
+    @Nonnull
+    public Handle getHandle() {
+        return handle;
+    }
+
+    /**
+     * Creates a SqlObject of the given type whose {@code @SqlUpdate} methods are batched by this scope.
+     */
+    @Nonnull
+    public <T> T attach(@Nonnull Class<T> sqlObjectType) {
+        requireNonNull(sqlObjectType, ERROR_SQL_OBJECT_TYPE_NULL);
+        if (!sqlObjectType.isInterface()) {
+            throw new IllegalArgumentException("Argument 'sqlObjectType' must be an interface");
+        }
+        ensureOpen();
+        final T target = handle.attach(sqlObjectType);
+        return sqlObjectType.cast(Proxy.newProxyInstance(sqlObjectType.getClassLoader(),
+            new Class<?>[]{sqlObjectType},
+            new BatchingInvocationHandler(sqlObjectType, target)));
+    }
+
+    /**
+     * Executes pending calls.
+     *
+     * @return the update count of each call executed, in call order.
+     */
+    @Nonnull
+    public int[] flush() {
+        ensureOpen();
+        if (pending.isEmpty()) {
+            return new int[0];
+        }
+
+        List<Call> calls = new ArrayList<>(pending);
+        pending.clear();
+
+        // only consecutive calls share a batch, otherwise calls to different statements would be reordered
+        int[] counts = new int[calls.size()];
+        int start = 0;
+        while (start < calls.size()) {
+            String sql = calls.get(start).sql;
+            int end = start + 1;
+            while (end < calls.size() && calls.get(end).sql.equals(sql)) {
+                end++;
+            }
+            PreparedBatch batch = handle.prepareBatch(sql);
+            for (int i = start; i < end; i++) {
+                calls.get(i).bind(batch.add());
+            }
+            int[] results = batch.execute();
+            System.arraycopy(results, 0, counts, start, Math.min(results.length, end - start));
+            start = end;
+        }
+
+        int[] all = Arrays.copyOf(updateCounts, updateCounts.length + counts.length);
+        System.arraycopy(counts, 0, all, updateCounts.length, counts.length);
+        updateCounts = all;
+        return counts;
+    }
+
+    /**
+     * Number of calls waiting to be executed.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Update counts of every call executed by this scope so far, in call order.
+     */
+    @Nonnull
+    public int[] getUpdateCounts() {
+        return updateCounts.clone();
+    }
+
+    /**
+     * Executes pending calls and closes the handle of this scope.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            handle.close();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("SqlObject batch has been closed");
+        }
+    }
+
+    @Nonnull
+    private static String defaultBindingName() {
+        try {
+            return String.valueOf(Bind.class.getMethod("value").getDefaultValue());
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Nullable
+    private static String[] bindingsOf(@Nonnull Class<?> sqlObjectType, @Nonnull Method method) {
+        Class<?> returnType = method.getReturnType();
+        if (!method.isAnnotationPresent(SqlUpdate.class) ||
+            (returnType != void.class && returnType != int.class && returnType != long.class)) {
+            return null;
+        }
+        if (isCustomized(method) || isCustomized(method.getDeclaringClass()) || isCustomized(sqlObjectType)) {
+            return null;
+        }
+
+        // a null name binds the argument by position
+        Annotation[][] annotations = method.getParameterAnnotations();
+        String[] names = new String[annotations.length];
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof Bind) {
+                    String name = ((Bind) annotation).value();
+                    names[i] = BARE_BINDING.equals(name) ? null : name;
+                } else if (annotation.annotationType().isAnnotationPresent(BindingAnnotation.class) ||
+                    annotation.annotationType().isAnnotationPresent(SqlStatementCustomizingAnnotation.class)) {
+                    // other binders and customizers, such as @BindBean or @Define, cannot be replayed
+                    return null;
+                }
+            }
+        }
+        return names;
+    }
+
+    private static boolean isCustomized(@Nonnull AnnotatedElement element) {
+        for (Annotation annotation : element.getAnnotations()) {
+            Class<? extends Annotation> type = annotation.annotationType();
+            if (type == GetGeneratedKeys.class || type == Transaction.class) {
+                return true;
+            }
+            // mapper registrations only affect queries, which are never batched
+            if (type.isAnnotationPresent(SqlStatementCustomizingAnnotation.class) && !RESULT_MAPPING_CUSTOMIZERS.contains(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nonnull
+    private static String sqlOf(@Nonnull Method method) {
+        String sql = method.getAnnotation(SqlUpdate.class).value();
+        // as with SqlObjects, a blank value names the statement after the method
+        return sql.trim().isEmpty() ? method.getName() : sql;
+    }
+
+    private final class BatchingInvocationHandler implements InvocationHandler {
+        private final Class<?> sqlObjectType;
+        private final Object target;
+
+        private BatchingInvocationHandler(@Nonnull Class<?> sqlObjectType, @Nonnull Object target) {
+            this.sqlObjectType = sqlObjectType;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return invokeTarget(method, args);
+                }
+            }
+
+            ensureOpen();
+            if ("close".equals(method.getName()) && method.getParameterTypes().length == 0) {
+                // the handle belongs to the scope
+                return null;
+            }
+
+            String[] bindings = bindingsOf(sqlObjectType, method);
+            if (bindings == null) {
+                flush();
+                return invokeTarget(method, args);
+            }
+
+            pending.add(new Call(sqlOf(method), bindings, args != null ? args.clone() : new Object[0]));
+            if (pending.size() >= batchSize) {
+                flush();
+            }
+            return method.getReturnType() == int.class ? Integer.valueOf(0) : method.getReturnType() == long.class ? Long.valueOf(0L) : null;
+        }
+
+        private Object invokeTarget(@Nonnull Method method, @Nullable Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static final class Call {
+        private final String sql;
+        private final String[] bindings;
+        private final Object[] args;
+
+        private Call(@Nonnull String sql, @Nonnull String[] bindings, @Nonnull Object[] args) {
+            this.sql = sql;
+            this.bindings = bindings;
+            this.args = args;
+        }
+
+        private void bind(@Nonnull PreparedBatchPart part) {
+            for (int i = 0; i < args.length; i++) {
+                if (bindings[i] != null) {
+                    part.bind(bindings[i], args[i]);
+                } else {
+                    part.bind(i, args[i]);
+                }
+            }
+        }
+    }
+}
@@ -34,11 +34,17 @@ public class JdbiConnectEndEvent extends Event {
     private final String name;
     private final Map<String, Object> config;
     private final DBI dbi;
+    private final long duration;
 
     public JdbiConnectEndEvent(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull DBI dbi) {
+        this(name, config, dbi, -1L);
+    }
+
+    public JdbiConnectEndEvent(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull DBI dbi, long duration) {
         this.name = requireNonBlank(name, "Argument 'name' must not be blank");
         this.config = requireNonNull(config, "Argument 'config' must not be null");
         this.dbi = requireNonNull(dbi, "Argument 'dbi' must not be null");
+        this.duration = duration;
     }
 
     @Nonnull
@@ -56,8 +62,21 @@ public class JdbiConnectEndEvent extends Event {
         return dbi;
     }
 
+    /**
+     * Time spent connecting to the datasource, including pool initialization and warm-up, in milliseconds.
+     * Returns {@code -1} if unknown.
+     */
+    public long getDuration() {
+        return duration;
+    }
+
     @Nonnull
     public static JdbiConnectEndEvent of(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull DBI dbi) {
         return new JdbiConnectEndEvent(name, config, dbi);
     }
+
+    @Nonnull
+    public static JdbiConnectEndEvent of(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull DBI dbi, long duration) {
+        return new JdbiConnectEndEvent(name, config, dbi, duration);
+    }
 }
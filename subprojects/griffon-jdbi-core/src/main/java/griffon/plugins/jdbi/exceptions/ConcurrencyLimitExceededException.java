@@ -0,0 +1,43 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jdbi.exceptions;
+
+import griffon.annotations.core.Nonnull;
+
+/**
+ * Thrown when work on a datasource is rejected because as many callers as its concurrency limit
+ * allows are already executing and no slot became available within the queue timeout.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ConcurrencyLimitExceededException extends RuntimeJdbiException {
+    private final int limit;
+
+    public ConcurrencyLimitExceededException(@Nonnull String datasourceName, int limit) {
+        super(datasourceName, "Concurrency limit of " + limit + " reached on jdbi '" + datasourceName + "'");
+        this.limit = limit;
+    }
+
+    /**
+     * The concurrency limit in effect when the work was rejected.
+     */
+    public int getLimit() {
+        return limit;
+    }
+}
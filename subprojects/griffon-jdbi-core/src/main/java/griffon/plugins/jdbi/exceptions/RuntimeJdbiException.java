@@ -34,6 +34,11 @@ public class RuntimeJdbiException extends GriffonException {
         this.datasourceName = datasourceName;
     }
 
+    protected RuntimeJdbiException(@Nonnull String datasourceName, @Nonnull String message) {
+        super(requireNonBlank(message, "message"));
+        this.datasourceName = requireNonBlank(datasourceName, "datasourceName");
+    }
+
     @Nonnull
     private static String format(@Nonnull String datasourceName) {
         requireNonBlank(datasourceName, "datasourceName");
@@ -0,0 +1,40 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jdbi.exceptions;
+
+import griffon.annotations.core.Nonnull;
+
+/**
+ * Thrown when a statement cannot be queued for writing behind because the queue of its datasource
+ * stayed full for longer than the offer timeout.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class WriteBehindOverflowException extends RuntimeJdbiException {
+    private final int capacity;
+
+    public WriteBehindOverflowException(@Nonnull String datasourceName, int capacity) {
+        super(datasourceName, "Write-behind queue of jdbi '" + datasourceName + "' is full (" + capacity + " statements)");
+        this.capacity = capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
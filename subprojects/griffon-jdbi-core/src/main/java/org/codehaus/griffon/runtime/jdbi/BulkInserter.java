@@ -0,0 +1,236 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.jdbi.BulkInsertOptions;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Streams rows into {@code PreparedBatch} chunks, committing every few chunks. Rows may be
+ * {@code Map}s (bound by name), {@code Object[]}s (bound by position) or beans (bound by property).
+ * When parallelism is greater than one the calling thread reads rows into chunks which are written
+ * by as many handles; at most two chunks per handle are buffered at any time.
+ * <p>
+ * Bulk inserts are not atomic: chunks committed before a failure remain in the database. A serial
+ * bulk insert running inside a unit of work whose transaction is in progress joins that transaction
+ * instead, leaving commit and rollback to its owner.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class BulkInserter {
+    private static final List<Object> END_OF_ROWS = Collections.emptyList();
+    private static final long POLL_INTERVAL = 100L;
+
+    private final String datasourceName;
+    private final DBI dbi;
+    private final RecordingDBI recordingDBI;
+
+    BulkInserter(@Nonnull String datasourceName, @Nonnull DBI dbi) {
+        this.datasourceName = datasourceName;
+        this.dbi = requireNonNull(dbi, "Argument 'dbi' must not be null");
+        this.recordingDBI = DBIDecorator.unwrap(dbi, RecordingDBI.class);
+    }
+
+    long insert(@Nonnull String sql, @Nonnull Iterator<?> rows, @Nonnull BulkInsertOptions options) throws Exception {
+        long start = System.nanoTime();
+        long count = options.getParallelism() > 1 ? insertInParallel(sql, rows, options) : insertSerially(sql, rows, options);
+        if (recordingDBI != null) {
+            recordingDBI.getBulkWriteStatistics().operationCompleted(count, System.nanoTime() - start);
+        }
+        return count;
+    }
+
+    private long insertSerially(@Nonnull String sql, @Nonnull Iterator<?> rows, @Nonnull BulkInsertOptions options) {
+        Handle handle = dbi.open();
+        // the transaction of an enclosing unit of work is joined, it is not ours to commit nor to roll back
+        boolean owned = !(handle instanceof JoinedHandle && handle.isInTransaction());
+        try {
+            if (owned) {
+                handle.begin();
+            }
+            long count = 0;
+            int pending = 0;
+            while (rows.hasNext()) {
+                PreparedBatch batch = handle.prepareBatch(sql);
+                int size = 0;
+                while (size < options.getBatchSize() && rows.hasNext()) {
+                    add(batch, rows.next());
+                    size++;
+                }
+                count += execute(batch, size);
+                if (++pending == options.getCommitInterval()) {
+                    if (owned) {
+                        handle.commit();
+                        handle.begin();
+                    }
+                    pending = 0;
+                }
+            }
+            if (owned) {
+                handle.commit();
+            }
+            return count;
+        } catch (RuntimeException e) {
+            if (owned) {
+                rollback(handle);
+            }
+            throw e;
+        } finally {
+            handle.close();
+        }
+    }
+
+    private long insertInParallel(@Nonnull final String sql, @Nonnull Iterator<?> rows, @Nonnull final BulkInsertOptions options) throws Exception {
+        int parallelism = options.getParallelism();
+        final BlockingQueue<List<Object>> chunks = new ArrayBlockingQueue<>(parallelism * 2);
+        ExecutorService executor = DatasourceExecutors.newBoundedExecutor("jdbi-bulk-" + datasourceName, parallelism, parallelism, false);
+        List<Future<Long>> writers = new ArrayList<>(parallelism);
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                writers.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        return write(sql, chunks, options);
+                    }
+                }));
+            }
+
+            List<Object> chunk = new ArrayList<>(options.getBatchSize());
+            while (rows.hasNext()) {
+                chunk.add(rows.next());
+                if (chunk.size() == options.getBatchSize()) {
+                    offer(chunks, chunk, writers);
+                    chunk = new ArrayList<>(options.getBatchSize());
+                }
+            }
+            if (!chunk.isEmpty()) {
+                offer(chunks, chunk, writers);
+            }
+            for (int i = 0; i < parallelism; i++) {
+                offer(chunks, END_OF_ROWS, writers);
+            }
+
+            long count = 0;
+            for (Future<Long> writer : writers) {
+                count += writer.get();
+            }
+            return count;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long write(@Nonnull String sql, @Nonnull BlockingQueue<List<Object>> chunks, @Nonnull BulkInsertOptions options) throws InterruptedException {
+        Handle handle = dbi.open();
+        try {
+            handle.begin();
+            long count = 0;
+            int pending = 0;
+            for (List<Object> chunk = chunks.take(); chunk != END_OF_ROWS; chunk = chunks.take()) {
+                PreparedBatch batch = handle.prepareBatch(sql);
+                for (Object row : chunk) {
+                    add(batch, row);
+                }
+                count += execute(batch, chunk.size());
+                if (++pending == options.getCommitInterval()) {
+                    handle.commit();
+                    handle.begin();
+                    pending = 0;
+                }
+            }
+            handle.commit();
+            return count;
+        } catch (RuntimeException | InterruptedException e) {
+            rollback(handle);
+            throw e;
+        } finally {
+            handle.close();
+        }
+    }
+
+    /**
+     * Blocks until there is room for the chunk, failing fast if any writer terminated abnormally.
+     */
+    private void offer(@Nonnull BlockingQueue<List<Object>> chunks, @Nonnull List<Object> chunk, @Nonnull List<Future<Long>> writers) throws Exception {
+        while (!chunks.offer(chunk, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+            for (Future<Long> writer : writers) {
+                if (writer.isDone()) {
+                    // either failed or, unexpectedly, finished early; get() reports the failure
+                    writer.get();
+                    throw new IllegalStateException("Bulk insert writer on datasource '" + datasourceName + "' finished prematurely");
+                }
+            }
+        }
+    }
+
+    private int execute(@Nonnull PreparedBatch batch, int size) {
+        if (size == 0) {
+            return 0;
+        }
+        batch.execute();
+        if (recordingDBI != null) {
+            recordingDBI.batchExecuted(size);
+        }
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void add(@Nonnull PreparedBatch batch, @Nullable Object row) {
+        if (row instanceof Map) {
+            batch.add((Map<String, ?>) row);
+        } else if (row instanceof Object[]) {
+            batch.add((Object[]) row);
+        } else if (row != null) {
+            batch.add().bindFromProperties(row);
+        } else {
+            throw new IllegalArgumentException("Bulk insert rows must not be null");
+        }
+    }
+
+    private static void rollback(@Nonnull Handle handle) {
+        try {
+            if (handle.isInTransaction()) {
+                handle.rollback();
+            }
+        } catch (RuntimeException ignored) {
+            // the original failure is more relevant
+        }
+    }
+}
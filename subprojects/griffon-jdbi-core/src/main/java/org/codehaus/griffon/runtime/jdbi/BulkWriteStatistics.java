@@ -0,0 +1,64 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput of bulk writes performed on a single datasource.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class BulkWriteStatistics {
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private volatile double lastRowsPerSecond;
+
+    public void batchExecuted(int size) {
+        rows.add(size);
+        batches.increment();
+    }
+
+    public void operationCompleted(long rowCount, long elapsedNanos) {
+        nanos.add(elapsedNanos);
+        lastRowsPerSecond = rowsPerSecond(rowCount, elapsedNanos);
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public double getLastRowsPerSecond() {
+        return lastRowsPerSecond;
+    }
+
+    public double getAverageRowsPerSecond() {
+        return rowsPerSecond(rows.sum(), nanos.sum());
+    }
+
+    private static double rowsPerSecond(long rowCount, long elapsedNanos) {
+        return elapsedNanos > 0 ? rowCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0d;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import org.skife.jdbi.v2.DefaultStatementBuilder;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.StatementBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps a bounded LRU of {@code PreparedStatement}s for the lifetime of a single handle, keyed
+ * by the rewritten SQL. A cached statement is handed out to one statement at a time; should the
+ * same SQL be requested while its statement is still in use a throw-away statement is prepared
+ * instead. Statements that return generated keys or produce updatable result sets are prepared
+ * differently for the same SQL, and are never cached.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class CachingStatementBuilder implements StatementBuilder {
+    private static final Logger LOG = LoggerFactory.getLogger(CachingStatementBuilder.class);
+
+    private final StatementBuilder delegate = new DefaultStatementBuilder();
+    private final StatementCacheStatistics statistics;
+    private final Map<String, CachedStatement> cache;
+    private final List<CachedStatement> evicted = new ArrayList<>();
+
+    public CachingStatementBuilder(final int cacheSize, @Nonnull StatementCacheStatistics statistics) {
+        this.statistics = requireNonNull(statistics, "Argument 'statistics' must not be null");
+        this.cache = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() > cacheSize) {
+                    evict(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public PreparedStatement create(Connection conn, String sql, StatementContext ctx) throws SQLException {
+        if (ctx.isReturningGeneratedKeys() || ctx.isConcurrentUpdatable()) {
+            return delegate.create(conn, sql, ctx);
+        }
+
+        CachedStatement cached = cache.get(sql);
+        if (cached != null) {
+            if (cached.inUse) {
+                // same SQL is still being consumed, e.g. nested iteration over the same query
+                statistics.miss();
+                return delegate.create(conn, sql, ctx);
+            }
+            statistics.hit();
+            cached.inUse = true;
+            return cached.statement;
+        }
+
+        statistics.miss();
+        PreparedStatement statement = delegate.create(conn, sql, ctx);
+        try {
+            cached = new CachedStatement(statement);
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
+        }
+        cached.inUse = true;
+        cache.put(sql, cached);
+        return cached.statement;
+    }
+
+    @Override
+    public void close(Connection conn, String sql, Statement stmt) throws SQLException {
+        CachedStatement cached = sql != null ? cache.get(sql) : null;
+        if (cached == null || cached.statement != stmt) {
+            if (!closeEvicted(stmt)) {
+                delegate.close(conn, sql, stmt);
+            }
+            return;
+        }
+
+        try {
+            cached.reset();
+            cached.inUse = false;
+        } catch (SQLException e) {
+            LOG.debug("Discarding cached statement for {}", sql, e);
+            cache.remove(sql);
+            cached.statement.close();
+        }
+    }
+
+    @Override
+    public CallableStatement createCall(Connection conn, String sql, StatementContext ctx) throws SQLException {
+        return delegate.createCall(conn, sql, ctx);
+    }
+
+    @Override
+    public void close(Connection conn) {
+        for (CachedStatement cached : cache.values()) {
+            closeQuietly(cached.statement);
+        }
+        for (CachedStatement cached : evicted) {
+            closeQuietly(cached.statement);
+        }
+        cache.clear();
+        evicted.clear();
+        delegate.close(conn);
+    }
+
+    private void evict(@Nonnull CachedStatement cached) {
+        statistics.eviction();
+        if (cached.inUse) {
+            // closed once returned
+            evicted.add(cached);
+        } else {
+            closeQuietly(cached.statement);
+        }
+    }
+
+    private boolean closeEvicted(@Nonnull Statement stmt) throws SQLException {
+        for (int i = 0; i < evicted.size(); i++) {
+            if (evicted.get(i).statement == stmt) {
+                evicted.remove(i);
+                stmt.close();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void closeQuietly(@Nonnull Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            LOG.debug("Could not close cached statement", e);
+        }
+    }
+
+    private static final class CachedStatement {
+        private final PreparedStatement statement;
+        private final int fetchSize;
+        private final int maxRows;
+        private final int maxFieldSize;
+        private final int queryTimeout;
+        private boolean inUse;
+
+        private CachedStatement(@Nonnull PreparedStatement statement) throws SQLException {
+            this.statement = statement;
+            this.fetchSize = statement.getFetchSize();
+            this.maxRows = statement.getMaxRows();
+            this.maxFieldSize = statement.getMaxFieldSize();
+            this.queryTimeout = statement.getQueryTimeout();
+        }
+
+        /**
+         * Undoes any customization applied by the previous user of this statement.
+         */
+        private void reset() throws SQLException {
+            statement.clearParameters();
+            statement.clearBatch();
+            if (statement.getFetchSize() != fetchSize) {
+                statement.setFetchSize(fetchSize);
+            }
+            if (statement.getMaxRows() != maxRows) {
+                statement.setMaxRows(maxRows);
+            }
+            if (statement.getMaxFieldSize() != maxFieldSize) {
+                statement.setMaxFieldSize(maxFieldSize);
+            }
+            if (statement.getQueryTimeout() != queryTimeout) {
+                statement.setQueryTimeout(queryTimeout);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import org.skife.jdbi.v2.tweak.StatementBuilder;
+import org.skife.jdbi.v2.tweak.StatementBuilderFactory;
+
+import java.sql.Connection;
+
+/**
+ * Hands a {@code CachingStatementBuilder} to every handle opened by a DBI.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class CachingStatementBuilderFactory implements StatementBuilderFactory {
+    private final int cacheSize;
+    private final StatementCacheStatistics statistics = new StatementCacheStatistics();
+
+    public CachingStatementBuilderFactory(int cacheSize) {
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("Argument 'cacheSize' must be greater than zero");
+        }
+        this.cacheSize = cacheSize;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    @Nonnull
+    public StatementCacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public StatementBuilder createStatementBuilder(Connection conn) {
+        return new CachingStatementBuilder(cacheSize, statistics);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import org.skife.jdbi.v2.Binding;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.exceptions.UnableToCreateStatementException;
+import org.skife.jdbi.v2.exceptions.UnableToExecuteStatementException;
+import org.skife.jdbi.v2.tweak.Argument;
+import org.skife.jdbi.v2.tweak.RewrittenStatement;
+import org.skife.jdbi.v2.tweak.StatementRewriter;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drop-in replacement for JDBI's {@code ColonPrefixNamedParamStatementRewriter} that parses each
+ * distinct SQL text once and memoizes the result in a bounded map. Named parameters are prefixed
+ * with a colon, positional parameters use {@code ?}; text within single or double quotes is left
+ * untouched and a backslash escapes the next character.
+ * <p>
+ * Defined attributes need not be part of the cache key as they are applied by the statement
+ * locator before the SQL reaches the rewriter.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class CachingStatementRewriter implements StatementRewriter {
+    private static final String POSITIONAL = "*";
+
+    private final ConcurrentMap<String, ParsedStatement> cache = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CachingStatementRewriter(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Argument 'maxSize' must be greater than zero");
+        }
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public RewrittenStatement rewrite(String sql, Binding params, StatementContext ctx) {
+        ParsedStatement parsed = cache.get(sql);
+        if (parsed != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            parsed = parse(sql);
+            if (cache.size() >= maxSize) {
+                // cheap approximation of eviction, parsing is what we want to avoid, not precision
+                Iterator<String> keys = cache.keySet().iterator();
+                if (keys.hasNext()) {
+                    cache.remove(keys.next());
+                }
+            }
+            cache.put(sql, parsed);
+        }
+        return new CachedRewrittenStatement(parsed, ctx);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total > 0 ? (double) h / total : 0d;
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    @Nonnull
+    static ParsedStatement parse(@Nonnull String sql) {
+        StringBuilder b = new StringBuilder(sql.length());
+        List<String> params = new ArrayList<>();
+        boolean positionalOnly = true;
+
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                int end = closingQuote(sql, i, c);
+                b.append(sql, i, end);
+                i = end;
+            } else if (c == '\\' && i + 1 < length) {
+                b.append(sql.charAt(i + 1));
+                i += 2;
+            } else if (c == ':' && i + 1 < length && sql.charAt(i + 1) == ':') {
+                // a cast such as x::int, not a named parameter
+                b.append("::");
+                i += 2;
+            } else if (c == ':' && i + 1 < length && isNameChar(sql.charAt(i + 1))) {
+                int end = i + 1;
+                while (end < length && isNameChar(sql.charAt(end))) {
+                    end++;
+                }
+                params.add(sql.substring(i + 1, end));
+                positionalOnly = false;
+                b.append('?');
+                i = end;
+            } else if (c == '?') {
+                params.add(POSITIONAL);
+                b.append('?');
+                i++;
+            } else {
+                b.append(c);
+                i++;
+            }
+        }
+
+        return new ParsedStatement(b.toString(), params.toArray(new String[params.size()]), positionalOnly);
+    }
+
+    private static int closingQuote(@Nonnull String sql, int start, char quote) {
+        int length = sql.length();
+        int i = start + 1;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (quote == '\'' && c == '\\' && i + 1 < length && sql.charAt(i + 1) == '\'') {
+                i += 2;
+            } else if (c == quote) {
+                return i + 1;
+            } else {
+                i++;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '.' || c == '#';
+    }
+
+    static final class ParsedStatement {
+        private final String sql;
+        private final String[] params;
+        private final boolean positionalOnly;
+
+        private ParsedStatement(@Nonnull String sql, @Nonnull String[] params, boolean positionalOnly) {
+            this.sql = sql;
+            this.params = params;
+            this.positionalOnly = positionalOnly;
+        }
+    }
+
+    private static final class CachedRewrittenStatement implements RewrittenStatement {
+        private final ParsedStatement statement;
+        private final StatementContext context;
+
+        private CachedRewrittenStatement(@Nonnull ParsedStatement statement, StatementContext context) {
+            this.statement = statement;
+            this.context = context;
+        }
+
+        @Override
+        public void bind(Binding params, PreparedStatement preparedStatement) throws SQLException {
+            if (statement.positionalOnly) {
+                // bind every positional argument that was supplied, same as JDBI does
+                for (int i = 0; ; i++) {
+                    Argument argument = params.forPosition(i);
+                    if (argument == null) {
+                        break;
+                    }
+                    try {
+                        argument.apply(i + 1, preparedStatement, context);
+                    } catch (SQLException e) {
+                        throw new UnableToExecuteStatementException(String.format("Exception while binding positional param at (0 based) position %d", i), e, context);
+                    }
+                }
+                return;
+            }
+
+            int i = 0;
+            for (String param : statement.params) {
+                if (POSITIONAL.equals(param)) {
+                    // same as JDBI, named and positional parameters bind to different places
+                    throw new UnableToExecuteStatementException("Cannot mix named and positional parameters in a SQL statement: " + Arrays.toString(statement.params), context);
+                }
+                Argument argument = params.forName(param);
+                if (argument == null) {
+                    argument = params.forPosition(i);
+                }
+                if (argument == null) {
+                    throw new UnableToExecuteStatementException(String.format("Unable to execute, no named parameter matches \"%s\" and no positional param for place %d (which is %d in the JDBC 'start at 1' scheme) has been set.", param, i, i + 1), context);
+                }
+                try {
+                    argument.apply(i + 1, preparedStatement, context);
+                } catch (SQLException e) {
+                    throw new UnableToCreateStatementException(String.format("Exception while binding '%s'", param), e, context);
+                }
+                i++;
+            }
+        }
+
+        @Override
+        public String getSql() {
+            return statement.sql;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.jdbi.CircuitState;
+import griffon.plugins.jdbi.exceptions.CircuitBreakerOpenException;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.exceptions.UnableToObtainConnectionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Stops callers from waiting on a datasource that is down. The outcome of the last {@code windowSize}
+ * calls is kept; once at least {@code minimumCalls} have been recorded the breaker opens when the
+ * percentage of failed calls or of slow calls reaches its threshold. Only failures that point at the
+ * datasource count: connection errors (SQLState class {@code 08}), timeouts and failures to obtain a
+ * connection. Errors such as constraint violations come from a healthy database and are ignored.
+ * <p>
+ * While open every call is rejected with a {@code CircuitBreakerOpenException}. After the open duration
+ * the next caller turns the breaker half-open and validates a single handle; the breaker closes if the
+ * handle is valid and opens again otherwise.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class CircuitBreaker {
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    /**
+     * Notified after every state transition.
+     */
+    public interface Listener {
+        void stateChanged(@Nonnull CircuitState previousState, @Nonnull CircuitState state);
+    }
+
+    private final String datasourceName;
+    private final DBI dbi;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int probeTimeout;
+    private final Listener listener;
+    private final AtomicBoolean probing = new AtomicBoolean();
+    private final LongAdder rejections = new LongAdder();
+
+    // guarded by this
+    private final byte[] window;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+
+    private volatile CircuitState state = CircuitState.CLOSED;
+    private volatile long openedAt;
+
+    /**
+     * @param failureRateThreshold  percentage of failed calls that opens the breaker.
+     * @param slowCallRateThreshold percentage of slow calls that opens the breaker.
+     * @param slowCallMillis        calls taking at least this long are slow.
+     * @param minimumCalls          number of calls recorded before rates are evaluated.
+     * @param windowSize            number of most recent calls rates are computed over.
+     * @param openMillis            how long the breaker stays open before probing.
+     * @param probeTimeout          seconds to wait for the probing handle to be validated.
+     */
+    public CircuitBreaker(@Nonnull String datasourceName, @Nonnull DBI dbi, double failureRateThreshold, double slowCallRateThreshold, long slowCallMillis,
+                          int minimumCalls, int windowSize, long openMillis, int probeTimeout, @Nullable Listener listener) {
+        this.datasourceName = requireNonNull(datasourceName, "Argument 'datasourceName' must not be null");
+        this.dbi = requireNonNull(dbi, "Argument 'dbi' must not be null");
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, slowCallMillis));
+        this.window = new byte[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, window.length));
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, openMillis));
+        this.probeTimeout = Math.max(1, probeTimeout);
+        this.listener = listener;
+    }
+
+    /**
+     * Returns if the caller may proceed, probing the datasource if the breaker has been open long enough.
+     *
+     * @throws CircuitBreakerOpenException if the breaker is open or half-open.
+     */
+    public void acquirePermission() {
+        if (state == CircuitState.CLOSED) {
+            return;
+        }
+
+        if (state == CircuitState.OPEN && System.nanoTime() - openedAt >= openNanos && probing.compareAndSet(false, true)) {
+            try {
+                if (transition(CircuitState.OPEN, CircuitState.HALF_OPEN)) {
+                    boolean healthy = probe();
+                    transition(CircuitState.HALF_OPEN, healthy ? CircuitState.CLOSED : CircuitState.OPEN);
+                    if (healthy) {
+                        return;
+                    }
+                }
+            } finally {
+                probing.set(false);
+            }
+        }
+
+        rejections.increment();
+        throw new CircuitBreakerOpenException(datasourceName);
+    }
+
+    public void onSuccess(long elapsedNanos) {
+        record(false, elapsedNanos);
+    }
+
+    public void onError(long elapsedNanos, @Nonnull Throwable error) {
+        record(isDatasourceFailure(error), elapsedNanos);
+    }
+
+    @Nonnull
+    public CircuitState getState() {
+        return state;
+    }
+
+    /**
+     * Whether calls are being rejected without probing the datasource, that is, the breaker is half-open
+     * or has not been open long enough.
+     */
+    public boolean isRejecting() {
+        CircuitState current = state;
+        return current == CircuitState.HALF_OPEN || (current == CircuitState.OPEN && System.nanoTime() - openedAt < openNanos);
+    }
+
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    public synchronized double getFailureRate() {
+        return calls > 0 ? failures * 100d / calls : 0d;
+    }
+
+    public synchronized double getSlowCallRate() {
+        return calls > 0 ? slowCalls * 100d / calls : 0d;
+    }
+
+    /**
+     * Whether the given failure, or any of its causes, indicates that the datasource is unavailable.
+     */
+    public static boolean isDatasourceFailure(@Nullable Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof UnableToObtainConnectionException ||
+                t instanceof SQLTransientConnectionException ||
+                t instanceof SQLNonTransientConnectionException ||
+                t instanceof SQLRecoverableException ||
+                t instanceof SQLTimeoutException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                String sqlState = ((SQLException) t).getSQLState();
+                if (sqlState != null && sqlState.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void record(boolean failed, long elapsedNanos) {
+        if (state != CircuitState.CLOSED) {
+            // calls that started before the breaker opened
+            return;
+        }
+
+        boolean open;
+        synchronized (this) {
+            byte outcome = (byte) ((failed ? FAILED : 0) | (elapsedNanos >= slowCallNanos ? SLOW : 0));
+            if (calls == window.length) {
+                byte evicted = window[next];
+                failures -= evicted & FAILED;
+                slowCalls -= (evicted & SLOW) >> 1;
+            } else {
+                calls++;
+            }
+            window[next] = outcome;
+            next = (next + 1) % window.length;
+            failures += outcome & FAILED;
+            slowCalls += (outcome & SLOW) >> 1;
+
+            open = calls >= minimumCalls &&
+                (failures * 100d / calls >= failureRateThreshold || slowCalls * 100d / calls >= slowCallRateThreshold);
+        }
+
+        if (open) {
+            transition(CircuitState.CLOSED, CircuitState.OPEN);
+        }
+    }
+
+    private boolean probe() {
+        try (Handle handle = dbi.open()) {
+            return handle.getConnection().isValid(probeTimeout);
+        } catch (SQLException | RuntimeException e) {
+            LOG.debug("Datasource '{}' is still unavailable", datasourceName, e);
+            return false;
+        }
+    }
+
+    private boolean transition(@Nonnull CircuitState from, @Nonnull CircuitState to) {
+        synchronized (this) {
+            if (state != from) {
+                return false;
+            }
+            state = to;
+            if (to == CircuitState.OPEN) {
+                openedAt = System.nanoTime();
+            } else if (to == CircuitState.CLOSED) {
+                next = 0;
+                calls = 0;
+                failures = 0;
+                slowCalls = 0;
+            }
+        }
+
+        if (to == CircuitState.OPEN) {
+            LOG.warn("Circuit breaker of datasource '{}' is open", datasourceName);
+        } else {
+            LOG.info("Circuit breaker of datasource '{}' is {}", datasourceName, to.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        }
+        if (listener != null) {
+            try {
+                listener.stateChanged(from, to);
+            } catch (RuntimeException e) {
+                LOG.warn("Could not notify state change of circuit breaker of datasource '" + datasourceName + "'", e);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.jdbi.JdbiMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+
+/**
+ * Forwards measurements to several {@code JdbiMetrics}. A failing implementation is logged and
+ * does not affect the others nor the operation being measured.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class CompositeJdbiMetrics implements JdbiMetrics {
+    private static final Logger LOG = LoggerFactory.getLogger(CompositeJdbiMetrics.class);
+
+    private final JdbiMetrics[] metrics;
+
+    CompositeJdbiMetrics(@Nonnull Collection<JdbiMetrics> metrics) {
+        this.metrics = metrics.toArray(new JdbiMetrics[metrics.size()]);
+    }
+
+    @Override
+    public void handleOpened(@Nonnull String datasourceName, long acquisitionNanos) {
+        for (JdbiMetrics m : metrics) {
+            try {
+                m.handleOpened(datasourceName, acquisitionNanos);
+            } catch (RuntimeException e) {
+                LOG.warn("Could not record metrics on {}", m, e);
+            }
+        }
+    }
+
+    @Override
+    public void handleClosed(@Nonnull String datasourceName, long heldNanos) {
+        for (JdbiMetrics m : metrics) {
+            try {
+                m.handleClosed(datasourceName, heldNanos);
+            } catch (RuntimeException e) {
+                LOG.warn("Could not record metrics on {}", m, e);
+            }
+        }
+    }
+
+    @Override
+    public void statementExecuted(@Nonnull String datasourceName, @Nonnull String statementName, long elapsedNanos) {
+        for (JdbiMetrics m : metrics) {
+            try {
+                m.statementExecuted(datasourceName, statementName, elapsedNanos);
+            } catch (RuntimeException e) {
+                LOG.warn("Could not record metrics on {}", m, e);
+            }
+        }
+    }
+
+    @Override
+    public void transactionCompleted(@Nonnull String datasourceName, boolean committed, long elapsedNanos) {
+        for (JdbiMetrics m : metrics) {
+            try {
+                m.transactionCompleted(datasourceName, committed, elapsedNanos);
+            } catch (RuntimeException e) {
+                LOG.warn("Could not record metrics on {}", m, e);
+            }
+        }
+    }
+
+    @Override
+    public void batchExecuted(@Nonnull String datasourceName, int size) {
+        for (JdbiMetrics m : metrics) {
+            try {
+                m.batchExecuted(datasourceName, size);
+            } catch (RuntimeException e) {
+                LOG.warn("Could not record metrics on {}", m, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.jdbi.exceptions.ConcurrencyLimitExceededException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bounds the number of callers working with a single datasource at the same time. Callers over the
+ * limit wait up to the queue timeout for a slot and are rejected with a
+ * {@code ConcurrencyLimitExceededException} afterwards; they are rejected right away when the timeout
+ * is {@code 0}. A thread that already holds a slot may acquire it again without waiting.
+ * <p>
+ * In adaptive mode the limit starts at {@code maxLimit} and follows an AIMD scheme: it shrinks by 10%
+ * when a call takes longer than the latency threshold, at most once per threshold, and grows by one
+ * every {@code limit} calls that complete in time while all slots were taken. Without an explicit
+ * threshold twice the lowest latency seen during the previous {@value #WINDOW_SIZE} calls is used.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ConcurrencyLimiter {
+    private static final int WINDOW_SIZE = 1000;
+    private static final double DECREASE_FACTOR = 0.9d;
+
+    private final String datasourceName;
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long queueTimeoutNanos;
+    private final long latencyThresholdNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+    private final LongAdder rejections = new LongAdder();
+
+    // guarded by lock
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private long baselineNanos = Long.MAX_VALUE;
+    private long windowMinNanos = Long.MAX_VALUE;
+    private int windowSamples;
+    private long lastDecrease;
+
+    /**
+     * @param adaptive              whether the limit adapts to observed latency.
+     * @param minLimit              lowest limit an adaptive limiter may reach.
+     * @param maxLimit              the static limit, or the highest limit an adaptive limiter may reach.
+     * @param queueTimeoutMillis    how long callers over the limit wait for a slot.
+     * @param latencyThresholdMillis latency above which an adaptive limiter shrinks; {@code 0} derives it from observed latency.
+     */
+    public ConcurrencyLimiter(@Nonnull String datasourceName, boolean adaptive, int minLimit, int maxLimit, long queueTimeoutMillis, long latencyThresholdMillis) {
+        this.datasourceName = requireNonNull(datasourceName, "Argument 'datasourceName' must not be null");
+        this.adaptive = adaptive;
+        this.maxLimit = Math.max(1, maxLimit);
+        this.minLimit = Math.max(1, Math.min(minLimit, this.maxLimit));
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, queueTimeoutMillis));
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, latencyThresholdMillis));
+        this.limit = this.maxLimit;
+    }
+
+    /**
+     * Takes a slot, waiting for one if needed. Returns the time at which the slot was taken, to be
+     * handed back to {@code release()}.
+     */
+    public long acquire() {
+        int[] held = depth.get();
+        if (held[0] > 0) {
+            held[0]++;
+            return System.nanoTime();
+        }
+
+        boolean acquired = false;
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                long remaining = queueTimeoutNanos;
+                queued++;
+                try {
+                    while (inFlight >= (int) limit) {
+                        if (remaining <= 0L) {
+                            throw reject();
+                        }
+                        remaining = available.awaitNanos(remaining);
+                    }
+                } finally {
+                    queued--;
+                }
+            }
+            inFlight++;
+            acquired = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject();
+        } finally {
+            lock.unlock();
+            if (!acquired) {
+                depth.remove();
+            }
+        }
+
+        held[0] = 1;
+        return System.nanoTime();
+    }
+
+    public void release(long acquiredAt) {
+        int[] held = depth.get();
+        if (--held[0] > 0) {
+            return;
+        }
+        depth.remove();
+
+        long latency = System.nanoTime() - acquiredAt;
+        lock.lock();
+        try {
+            boolean saturated = inFlight >= (int) limit;
+            inFlight--;
+            int previous = (int) limit;
+            if (adaptive) {
+                adjust(latency, saturated);
+            }
+            if ((int) limit > previous) {
+                available.signalAll();
+            } else {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    private void adjust(long latency, boolean saturated) {
+        windowMinNanos = Math.min(windowMinNanos, latency);
+        if (baselineNanos == Long.MAX_VALUE || ++windowSamples >= WINDOW_SIZE) {
+            baselineNanos = windowMinNanos;
+            windowMinNanos = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+
+        long threshold = latencyThresholdNanos > 0L ? latencyThresholdNanos : 2L * baselineNanos;
+        long now = System.nanoTime();
+        if (latency > threshold) {
+            if (now - lastDecrease >= threshold) {
+                limit = Math.max(minLimit, limit * DECREASE_FACTOR);
+                lastDecrease = now;
+            }
+        } else if (saturated) {
+            limit = Math.min(maxLimit, limit + 1d / limit);
+        }
+    }
+
+    @Nonnull
+    private ConcurrencyLimitExceededException reject() {
+        rejections.increment();
+        return new ConcurrencyLimitExceededException(datasourceName, (int) limit);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import org.codehaus.griffon.runtime.jdbi.monitor.LatencyHistogram;
+import org.codehaus.griffon.runtime.jdbi.monitor.LatencyStatistics;
+
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent obtaining connections from the datasource of a single DBI. Failures caused by
+ * {@code SQLTransientConnectionException} or {@code SQLTimeoutException} (how connection pools
+ * report that no connection became available in time) are counted as timeouts.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ConnectionAcquisitionStatistics {
+    private final LatencyHistogram latencies = new LatencyHistogram("acquisition");
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public void started() {
+        waiting.incrementAndGet();
+    }
+
+    public void acquired(long elapsedNanos) {
+        waiting.decrementAndGet();
+        latencies.recordNanos(elapsedNanos);
+    }
+
+    public void failed(@Nonnull Throwable failure) {
+        waiting.decrementAndGet();
+        if (isTimeout(failure)) {
+            timeouts.increment();
+        } else {
+            failures.increment();
+        }
+    }
+
+    /**
+     * Number of threads waiting for a connection right now.
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Nonnull
+    public LatencyStatistics getLatencies() {
+        return latencies.snapshot();
+    }
+
+    public void reset() {
+        latencies.reset();
+        timeouts.reset();
+        failures.reset();
+    }
+
+    private static boolean isTimeout(@Nonnull Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause() != t ? t.getCause() : null) {
+            if (t instanceof SQLTransientConnectionException || t instanceof SQLTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -18,6 +18,7 @@
 package org.codehaus.griffon.runtime.jdbi;
 
 import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.ResultSetMapperFactory;
@@ -46,18 +47,42 @@ import static java.util.Objects.requireNonNull;
  * @since 1.1.0
  */
 public class DBIDecorator extends DBI {
+    private final DataSource dataSource;
     private final DBI delegate;
 
     public DBIDecorator(@Nonnull DataSource dataSource, @Nonnull DBI delegate) {
         super(requireNonNull(dataSource, "Argument 'dataSource' must not be null"));
+        this.dataSource = dataSource;
         this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
     }
 
+    @Nonnull
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
     @Nonnull
     protected DBI getDelegate() {
         return delegate;
     }
 
+    /**
+     * Walks the decorator chain starting at {@code dbi} looking for an instance of the given type.
+     *
+     * @return the first match, or {@code null} if none is found.
+     */
+    @Nullable
+    public static <T extends DBI> T unwrap(@Nullable DBI dbi, @Nonnull Class<T> type) {
+        requireNonNull(type, "Argument 'type' must not be null");
+        for (DBI current = dbi; current != null; ) {
+            if (type.isInstance(current)) {
+                return type.cast(current);
+            }
+            current = current instanceof DBIDecorator ? ((DBIDecorator) current).getDelegate() : null;
+        }
+        return null;
+    }
+
     @Override
     public void setStatementLocator(StatementLocator locator) {
         delegate.setStatementLocator(locator);
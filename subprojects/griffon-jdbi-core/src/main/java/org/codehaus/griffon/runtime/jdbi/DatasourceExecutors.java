@@ -0,0 +1,110 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Creates bounded executors for running datasource work off the calling thread.
+ * Virtual threads are used when the running JDK supports them.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class DatasourceExecutors {
+    private static final Logger LOG = LoggerFactory.getLogger(DatasourceExecutors.class);
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    private DatasourceExecutors() {
+        // prevent instantiation
+    }
+
+    @Nonnull
+    public static ExecutorService newBoundedExecutor(@Nonnull String name, int poolSize, int queueSize, boolean virtualThreads) {
+        requireNonBlank(name, "Argument 'name' must not be blank");
+        ThreadFactory threadFactory = virtualThreads ? virtualThreadFactory(name) : null;
+        if (threadFactory == null) {
+            threadFactory = platformThreadFactory(name);
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(Math.max(1, poolSize), Math.max(1, poolSize),
+            KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)),
+            threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Creates a scheduled executor running on daemon platform threads.
+     */
+    @Nonnull
+    public static ScheduledExecutorService newScheduledExecutor(@Nonnull String name, int poolSize) {
+        requireNonBlank(name, "Argument 'name' must not be blank");
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(Math.max(1, poolSize), platformThreadFactory(name));
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    @Nonnull
+    private static ThreadFactory platformThreadFactory(@Nonnull final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    @Nullable
+    private static ThreadFactory virtualThreadFactory(@Nonnull String name) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Method named = builderType.getMethod("name", String.class, long.class);
+            Method factory = builderType.getMethod("factory");
+            Object builder = named.invoke(ofVirtual.invoke(null), name + "-", 1L);
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            // virtual threads are not available in this JDK
+            return null;
+        } catch (Exception e) {
+            LOG.debug("Could not create a virtual thread factory for {}", name, e);
+            return null;
+        }
+    }
+}
@@ -23,30 +23,57 @@ import griffon.core.env.Metadata;
 import griffon.core.injection.Injector;
 import griffon.plugins.datasource.DataSourceFactory;
 import griffon.plugins.datasource.DataSourceStorage;
+import griffon.plugins.jdbi.CircuitState;
 import griffon.plugins.jdbi.JdbiBootstrap;
 import griffon.plugins.jdbi.JdbiFactory;
+import griffon.plugins.jdbi.JdbiMetrics;
+import griffon.plugins.jdbi.events.JdbiCircuitStateChangeEvent;
 import griffon.plugins.jdbi.events.JdbiConnectEndEvent;
 import griffon.plugins.jdbi.events.JdbiConnectStartEvent;
 import griffon.plugins.jdbi.events.JdbiDisconnectEndEvent;
 import griffon.plugins.jdbi.events.JdbiDisconnectStartEvent;
+import griffon.plugins.jdbi.exceptions.RuntimeJdbiException;
 import griffon.plugins.monitor.MBeanManager;
 import org.codehaus.griffon.runtime.core.storage.AbstractObjectFactory;
 import org.codehaus.griffon.runtime.jdbi.monitor.DBIMonitor;
 import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsDouble;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
 import static java.util.Objects.requireNonNull;
 
 /**
  * @author Andres Almiray
  */
 public class DefaultJdbiFactory extends AbstractObjectFactory<DBI> implements JdbiFactory {
+    private static final int DEFAULT_STATEMENT_TIMINGS_MAX = 500;
+    private static final int DEFAULT_VALIDATION_TIMEOUT = 5;
+    private static final int DEFAULT_STATEMENT_REWRITER_CACHE_SIZE = 1000;
+    private static final int DEFAULT_SLOW_QUERY_BUFFER_SIZE = 256;
+    private static final double DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE = 50d;
+    private static final double DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_RATE = 100d;
+    private static final long DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_DURATION = 10000L;
+    private static final int DEFAULT_CIRCUIT_BREAKER_MINIMUM_CALLS = 20;
+    private static final int DEFAULT_CIRCUIT_BREAKER_WINDOW_SIZE = 100;
+    private static final long DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION = 30000L;
+
+    private final SingleFlight<DataSource> dataSourceCreations = new SingleFlight<>();
+
     @Inject
     private DataSourceFactory dataSourceFactory;
 
@@ -95,9 +122,21 @@ public class DefaultJdbiFactory extends AbstractObjectFactory<DBI> implements Jd
     @Override
     public DBI create(@Nonnull String name) {
         Map<String, Object> config = getConfigurationFor(name);
+        long start = System.nanoTime();
         event(JdbiConnectStartEvent.of(name, config));
         DBI dbi = createDBI(name);
 
+        try {
+            warmUp(name, config, dbi);
+        } catch (RuntimeException e) {
+            closeDataSource(name);
+            throw e;
+        }
+
+        if (dbi instanceof RecordingDBI) {
+            configureRecordingDBI(name, config, (RecordingDBI) dbi);
+        }
+
         if (getConfigValueAsBoolean(config, "jmx", true)) {
             dbi = new JMXAwareDBI(getDataSource(name), dbi);
             registerMBeans(name, (JMXAwareDBI) dbi);
@@ -107,7 +146,7 @@ public class DefaultJdbiFactory extends AbstractObjectFactory<DBI> implements Jd
             ((JdbiBootstrap) o).init(name, dbi);
         }
 
-        event(JdbiConnectEndEvent.of(name, config, dbi));
+        event(JdbiConnectEndEvent.of(name, config, dbi, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
         return dbi;
     }
 
@@ -121,6 +160,11 @@ public class DefaultJdbiFactory extends AbstractObjectFactory<DBI> implements Jd
             ((JdbiBootstrap) o).destroy(name, instance);
         }
 
+        RecordingDBI recordingDBI = DBIDecorator.unwrap(instance, RecordingDBI.class);
+        if (recordingDBI != null && recordingDBI.getSlowQueryLog() != null) {
+            recordingDBI.getSlowQueryLog().close();
+        }
+
         closeDataSource(name);
 
         if (getConfigValueAsBoolean(config, "jmx", true)) {
@@ -143,11 +187,122 @@ public class DefaultJdbiFactory extends AbstractObjectFactory<DBI> implements Jd
         dbi.clearObjectNames();
     }
 
+    protected void configureRecordingDBI(@Nonnull final String name, @Nonnull Map<String, Object> config, @Nonnull RecordingDBI dbi) {
+        if (getConfigValueAsBoolean(config, "statement_timings", true)) {
+            int maxStatements = getConfigValueAsInt(config, "statement_timings_max", DEFAULT_STATEMENT_TIMINGS_MAX);
+            dbi.setStatementTimingCollector(new StatementTimingCollector(maxStatements));
+        }
+
+        long slowQueryThreshold = getConfigValueAsLong(config, "slow_query_threshold", 0L);
+        if (slowQueryThreshold > 0) {
+            dbi.setSlowQueryLog(new SlowQueryLog(name, dbi, slowQueryThreshold,
+                getConfigValueAsDouble(config, "slow_query_bind_sample_rate", 0d),
+                getConfigValueAsString(config, "slow_query_explain", null),
+                getConfigValueAsInt(config, "slow_query_buffer_size", DEFAULT_SLOW_QUERY_BUFFER_SIZE)));
+        }
+
+        int statementCacheSize = getConfigValueAsInt(config, "statement_cache_size", 0);
+        if (statementCacheSize > 0) {
+            dbi.setStatementBuilderFactory(new CachingStatementBuilderFactory(statementCacheSize));
+        }
+
+        dbi.setCompactRows(getConfigValueAsBoolean(config, "compact_rows", false));
+
+        List<JdbiMetrics> metrics = new ArrayList<>();
+        for (Object o : injector.getInstances(JdbiMetrics.class)) {
+            metrics.add((JdbiMetrics) o);
+        }
+        if (!metrics.isEmpty()) {
+            dbi.setMetrics(name, new CompositeJdbiMetrics(metrics));
+        }
+
+        if (getConfigValueAsBoolean(config, "leak_detection", true)) {
+            dbi.setLeakDetector(new HandleLeakDetector(name,
+                getConfigValueAsLong(config, "leak_detection_threshold", 0L),
+                getConfigValueAsDouble(config, "leak_detection_sample_rate", 0d)));
+        }
+
+        if (getConfigValueAsBoolean(config, "query_cache", true)) {
+            dbi.setQueryResultCache(new QueryResultCache());
+        }
+
+        int maxConcurrency = getConfigValueAsInt(config, "max_concurrency", 0);
+        if (maxConcurrency > 0) {
+            dbi.setConcurrencyLimiter(new ConcurrencyLimiter(name,
+                "adaptive".equalsIgnoreCase(getConfigValueAsString(config, "concurrency_mode", "static")),
+                getConfigValueAsInt(config, "min_concurrency", 1),
+                maxConcurrency,
+                getConfigValueAsLong(config, "concurrency_queue_timeout", 0L),
+                getConfigValueAsLong(config, "concurrency_latency_threshold", 0L)));
+        }
+
+        if (getConfigValueAsLong(config, "health_check_interval", 0L) > 0) {
+            dbi.setHealthChecker(new HealthChecker(name, dbi.getDataSource(),
+                getConfigValueAsInt(config, "min_warm_connections", 1),
+                getConfigValueAsInt(config, "validation_timeout", DEFAULT_VALIDATION_TIMEOUT),
+                getConfigValueAsString(config, "health_check_query", null)));
+        }
+
+        if (getConfigValueAsBoolean(config, "circuit_breaker", false)) {
+            dbi.setCircuitBreaker(new CircuitBreaker(name, dbi,
+                getConfigValueAsDouble(config, "circuit_breaker_failure_rate", DEFAULT_CIRCUIT_BREAKER_FAILURE_RATE),
+                getConfigValueAsDouble(config, "circuit_breaker_slow_call_rate", DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_RATE),
+                getConfigValueAsLong(config, "circuit_breaker_slow_call_duration", DEFAULT_CIRCUIT_BREAKER_SLOW_CALL_DURATION),
+                getConfigValueAsInt(config, "circuit_breaker_minimum_calls", DEFAULT_CIRCUIT_BREAKER_MINIMUM_CALLS),
+                getConfigValueAsInt(config, "circuit_breaker_window_size", DEFAULT_CIRCUIT_BREAKER_WINDOW_SIZE),
+                getConfigValueAsLong(config, "circuit_breaker_open_duration", DEFAULT_CIRCUIT_BREAKER_OPEN_DURATION),
+                getConfigValueAsInt(config, "validation_timeout", DEFAULT_VALIDATION_TIMEOUT),
+                new CircuitBreaker.Listener() {
+                    @Override
+                    public void stateChanged(@Nonnull CircuitState previousState, @Nonnull CircuitState state) {
+                        event(JdbiCircuitStateChangeEvent.of(name, previousState, state));
+                    }
+                }));
+        }
+    }
+
+    /**
+     * Opens {@code warmup_connections} handles at once, forcing the pool to establish as many physical
+     * connections, and checks each one when {@code validate_on_connect} is enabled.
+     */
+    protected void warmUp(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull DBI dbi) {
+        int connections = getConfigValueAsInt(config, "warmup_connections", 0);
+        boolean validate = getConfigValueAsBoolean(config, "validate_on_connect", false);
+        if (connections <= 0 && !validate) {
+            return;
+        }
+
+        int timeout = getConfigValueAsInt(config, "validation_timeout", DEFAULT_VALIDATION_TIMEOUT);
+        List<Handle> handles = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.max(1, connections); i++) {
+                Handle handle = dbi.open();
+                handles.add(handle);
+                if (validate && !handle.getConnection().isValid(timeout)) {
+                    throw new IllegalStateException("Connection to datasource '" + name + "' is not valid");
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeJdbiException(name, e);
+        } finally {
+            for (Handle handle : handles) {
+                handle.close();
+            }
+        }
+    }
+
     @Nonnull
     @SuppressWarnings("ConstantConditions")
     protected DBI createDBI(@Nonnull String dataSourceName) {
         DataSource dataSource = getDataSource(dataSourceName);
-        return new RecordingDBI(dataSource, new DBI(dataSource));
+        DBI dbi = new DBI(dataSource);
+
+        int rewriterCacheSize = getConfigValueAsInt(getConfigurationFor(dataSourceName), "statement_rewriter_cache_size", DEFAULT_STATEMENT_REWRITER_CACHE_SIZE);
+        if (rewriterCacheSize > 0) {
+            dbi.setStatementRewriter(new CachingStatementRewriter(rewriterCacheSize));
+        }
+
+        return new RecordingDBI(dataSource, dbi);
     }
 
     protected void closeDataSource(@Nonnull String dataSourceName) {
@@ -159,12 +314,22 @@ public class DefaultJdbiFactory extends AbstractObjectFactory<DBI> implements Jd
     }
 
     @Nonnull
-    protected DataSource getDataSource(@Nonnull String dataSourceName) {
+    protected DataSource getDataSource(@Nonnull final String dataSourceName) {
         DataSource dataSource = dataSourceStorage.get(dataSourceName);
-        if (dataSource == null) {
-            dataSource = dataSourceFactory.create(dataSourceName);
-            dataSourceStorage.set(dataSourceName, dataSource);
+        if (dataSource != null) {
+            return dataSource;
         }
-        return dataSource;
+
+        return dataSourceCreations.execute(dataSourceName, new Supplier<DataSource>() {
+            @Override
+            public DataSource get() {
+                DataSource instance = dataSourceStorage.get(dataSourceName);
+                if (instance == null) {
+                    instance = dataSourceFactory.create(dataSourceName);
+                    dataSourceStorage.set(dataSourceName, instance);
+                }
+                return instance;
+            }
+        });
     }
 }
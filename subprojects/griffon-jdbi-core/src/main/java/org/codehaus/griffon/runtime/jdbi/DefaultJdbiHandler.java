@@ -19,17 +19,51 @@ package org.codehaus.griffon.runtime.jdbi;
 
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
+import griffon.plugins.jdbi.BulkInsertOptions;
 import griffon.plugins.jdbi.JdbiCallback;
 import griffon.plugins.jdbi.JdbiFactory;
 import griffon.plugins.jdbi.JdbiHandler;
 import griffon.plugins.jdbi.JdbiStorage;
+import griffon.plugins.jdbi.RetryPolicy;
 import griffon.plugins.jdbi.exceptions.RuntimeJdbiException;
 import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
 import static griffon.util.GriffonNameUtils.requireNonBlank;
 import static java.util.Objects.requireNonNull;
 
@@ -40,9 +74,23 @@ public class DefaultJdbiHandler implements JdbiHandler {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultJdbiHandler.class);
     private static final String ERROR_DATASOURCE_NAME_BLANK = "Argument 'datasourceName' must not be blank";
     private static final String ERROR_CALLBACK_NULL = "Argument 'callback' must not be null";
+    private static final String ERROR_EXECUTOR_NULL = "Argument 'executor' must not be null";
+    private static final String ERROR_SQL_BLANK = "Argument 'sql' must not be blank";
+    private static final String ERROR_ROWS_NULL = "Argument 'rows' must not be null";
+    private static final String ERROR_OPTIONS_NULL = "Argument 'options' must not be null";
+    private static final String ERROR_ISOLATION_NULL = "Argument 'isolation' must not be null";
+    private static final String ERROR_RETRY_POLICY_NULL = "Argument 'retryPolicy' must not be null";
+    private static final String ERROR_SHARD_GROUP_BLANK = "Argument 'shardGroup' must not be blank";
+    private static final String ERROR_SHARD_KEY_NULL = "Argument 'shardKey' must not be null";
+    private static final int DEFAULT_SHARD_VIRTUAL_NODES = 160;
+    private static final int DEFAULT_ASYNC_QUEUE_SIZE = 1024;
+    private static final int DEFAULT_ASYNC_SHUTDOWN_TIMEOUT = 5000;
 
     private final JdbiFactory jdbiFactory;
     private final JdbiStorage jdbiStorage;
+    private final ConcurrentMap<String, ExecutorService> executors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ShardRing> shardRings = new ConcurrentHashMap<>();
+    private final SingleFlight<DBI> creations = new SingleFlight<>();
 
     @Inject
     public DefaultJdbiHandler(@Nonnull JdbiFactory jdbiFactory, @Nonnull JdbiStorage jdbiStorage) {
@@ -58,15 +106,232 @@ public class DefaultJdbiHandler implements JdbiHandler {
 
     @Nullable
     @Override
-    public <R> R withJdbi(@Nonnull String datasourceName, @Nonnull JdbiCallback<R> callback) throws RuntimeJdbiException {
+    public <R> R withJdbi(@Nonnull final String datasourceName, @Nonnull final JdbiCallback<R> callback) throws RuntimeJdbiException {
         requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
         requireNonNull(callback, ERROR_CALLBACK_NULL);
-        DBI dbi = getDBI(datasourceName);
+        return execute(datasourceName, false, new Work<R>() {
+            @Override
+            public R call(@Nonnull DBI dbi) throws Exception {
+                LOG.debug("Executing statements on datasource '{}'", datasourceName);
+                return callback.handle(datasourceName, dbi);
+            }
+        });
+    }
+
+    @Nullable
+    @Override
+    public <R> R withJdbiUnitOfWork(@Nonnull JdbiCallback<R> callback) throws RuntimeJdbiException {
+        return withJdbiUnitOfWork(DefaultJdbiFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withJdbiUnitOfWork(@Nonnull final String datasourceName, @Nonnull final JdbiCallback<R> callback) throws RuntimeJdbiException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        return execute(datasourceName, false, new Work<R>() {
+            @Override
+            public R call(@Nonnull final DBI dbi) throws Exception {
+                RecordingDBI recordingDBI = DBIDecorator.unwrap(dbi, RecordingDBI.class);
+                Callable<R> work = new Callable<R>() {
+                    @Override
+                    public R call() throws Exception {
+                        return callback.handle(datasourceName, dbi);
+                    }
+                };
+                LOG.debug("Executing unit of work on datasource '{}'", datasourceName);
+                return recordingDBI != null ? recordingDBI.inUnitOfWork(work) : work.call();
+            }
+        });
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withJdbiAsync(@Nonnull JdbiCallback<R> callback) throws RuntimeJdbiException {
+        return withJdbiAsync(DefaultJdbiFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withJdbiAsync(@Nonnull String datasourceName, @Nonnull JdbiCallback<R> callback) throws RuntimeJdbiException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        return withJdbiAsync(datasourceName, callback, getExecutor(datasourceName));
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withJdbiAsync(@Nonnull final String datasourceName, @Nonnull final JdbiCallback<R> callback, @Nonnull Executor executor) throws RuntimeJdbiException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        requireNonNull(executor, ERROR_EXECUTOR_NULL);
         try {
-            LOG.debug("Executing statements on datasource '{}'", datasourceName);
-            return callback.handle(datasourceName, dbi);
-        } catch (Exception e) {
-            throw new RuntimeJdbiException(datasourceName, e);
+            return CompletableFuture.supplyAsync(new Supplier<R>() {
+                @Override
+                public R get() {
+                    return withJdbi(datasourceName, callback);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<R> future = new CompletableFuture<>();
+            future.completeExceptionally(new RuntimeJdbiException(datasourceName, e));
+            return future;
+        }
+    }
+
+    @Nullable
+    @Override
+    public <R> R withJdbiReadOnly(@Nonnull JdbiCallback<R> callback) throws RuntimeJdbiException {
+        return withJdbiReadOnly(DefaultJdbiFactory.KEY_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withJdbiReadOnly(@Nonnull final String datasourceName, @Nonnull final JdbiCallback<R> callback) throws RuntimeJdbiException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        return execute(datasourceName, true, new Work<R>() {
+            @Override
+            public R call(@Nonnull DBI dbi) throws Exception {
+                LOG.debug("Executing read-only statements on datasource '{}'", datasourceName);
+                return callback.handle(datasourceName, dbi);
+            }
+        });
+    }
+
+    @Nullable
+    @Override
+    public <R> R withJdbiShard(@Nonnull String shardGroup, @Nonnull Object shardKey, @Nonnull JdbiCallback<R> callback) throws RuntimeJdbiException {
+        requireNonBlank(shardGroup, ERROR_SHARD_GROUP_BLANK);
+        requireNonNull(shardKey, ERROR_SHARD_KEY_NULL);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        String datasourceName = getShardRing(shardGroup).resolve(shardKey);
+        LOG.debug("Shard key '{}' of group '{}' maps to datasource '{}'", shardKey, shardGroup, datasourceName);
+        return withJdbi(datasourceName, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> Stream<R> withJdbiShards(@Nonnull String shardGroup, @Nonnull JdbiCallback<R> callback) throws RuntimeJdbiException {
+        requireNonBlank(shardGroup, ERROR_SHARD_GROUP_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        final List<CompletableFuture<R>> results = new ArrayList<>();
+        try {
+            for (String datasourceName : getShardRing(shardGroup).getDatasourceNames()) {
+                results.add(withJdbiAsync(datasourceName, callback));
+            }
+        } catch (RuntimeException | Error e) {
+            // no stream is returned, nobody else can cancel the shards submitted so far
+            for (CompletableFuture<R> result : results) {
+                result.cancel(false);
+            }
+            throw e;
+        }
+
+        Stream<R> stream = StreamSupport.stream(Spliterators.spliterator(new ShardResultIterator<>(results), results.size(), Spliterator.ORDERED), false);
+        return stream.onClose(new Runnable() {
+            @Override
+            public void run() {
+                // shards that have not started yet are skipped
+                for (CompletableFuture<R> result : results) {
+                    result.cancel(false);
+                }
+            }
+        });
+    }
+
+    @Nullable
+    @Override
+    public <R> R withJdbiTransaction(@Nonnull TransactionCallback<R> callback, @Nonnull RetryPolicy retryPolicy) throws RuntimeJdbiException {
+        return withJdbiTransaction(DefaultJdbiFactory.KEY_DEFAULT, callback, retryPolicy);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withJdbiTransaction(@Nonnull String datasourceName, @Nonnull TransactionCallback<R> callback, @Nonnull RetryPolicy retryPolicy) throws RuntimeJdbiException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        requireNonNull(retryPolicy, ERROR_RETRY_POLICY_NULL);
+        return executeInTransaction(datasourceName, null, callback, retryPolicy);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withJdbiTransaction(@Nonnull String datasourceName, @Nonnull TransactionIsolationLevel isolation, @Nonnull TransactionCallback<R> callback, @Nonnull RetryPolicy retryPolicy) throws RuntimeJdbiException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonNull(isolation, ERROR_ISOLATION_NULL);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        requireNonNull(retryPolicy, ERROR_RETRY_POLICY_NULL);
+        return executeInTransaction(datasourceName, isolation, callback, retryPolicy);
+    }
+
+    @Override
+    public <R> long withBulkInsert(@Nonnull String sql, @Nonnull Iterator<R> rows, @Nonnull BulkInsertOptions options) throws RuntimeJdbiException {
+        return withBulkInsert(DefaultJdbiFactory.KEY_DEFAULT, sql, rows, options);
+    }
+
+    @Override
+    public <R> long withBulkInsert(@Nonnull final String datasourceName, @Nonnull final String sql, @Nonnull final Iterator<R> rows, @Nonnull final BulkInsertOptions options) throws RuntimeJdbiException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        requireNonNull(rows, ERROR_ROWS_NULL);
+        requireNonNull(options, ERROR_OPTIONS_NULL);
+        return execute(datasourceName, false, new Work<Long>() {
+            @Override
+            public Long call(@Nonnull DBI dbi) throws Exception {
+                LOG.debug("Executing bulk insert on datasource '{}'", datasourceName);
+                return new BulkInserter(datasourceName, dbi).insert(sql, rows, options);
+            }
+        });
+    }
+
+    @Nullable
+    private <R> R executeInTransaction(@Nonnull final String datasourceName, @Nullable final TransactionIsolationLevel isolation, @Nonnull final TransactionCallback<R> callback, @Nonnull final RetryPolicy retryPolicy) {
+        return execute(datasourceName, false, new Work<R>() {
+            @Override
+            public R call(@Nonnull DBI dbi) throws Exception {
+                RecordingDBI recordingDBI = DBIDecorator.unwrap(dbi, RecordingDBI.class);
+                RetryStatistics statistics = recordingDBI != null ? recordingDBI.getRetryStatistics() : null;
+                return executeWithRetries(datasourceName, dbi, statistics, isolation, callback, retryPolicy);
+            }
+        });
+    }
+
+    @Nullable
+    private <R> R executeWithRetries(@Nonnull String datasourceName, @Nonnull DBI dbi, @Nullable RetryStatistics statistics, @Nullable TransactionIsolationLevel isolation, @Nonnull TransactionCallback<R> callback, @Nonnull RetryPolicy retryPolicy) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                LOG.debug("Executing transaction on datasource '{}' (attempt {})", datasourceName, attempt);
+                R result = isolation != null ? dbi.inTransaction(isolation, callback) : dbi.inTransaction(callback);
+                if (attempt > 1 && statistics != null) {
+                    statistics.recovered();
+                }
+                return result;
+            } catch (Exception e) {
+                if (!retryPolicy.isRetryable(e)) {
+                    throw e;
+                }
+                if (attempt >= retryPolicy.getMaxAttempts()) {
+                    if (statistics != null) {
+                        statistics.exhausted();
+                    }
+                    throw e;
+                }
+
+                long backoff = retryPolicy.backoffFor(attempt + 1);
+                LOG.debug("Transaction on datasource '{}' failed with a retryable error, retrying in {}ms", datasourceName, backoff);
+                if (statistics != null) {
+                    statistics.retried(System.nanoTime() - start + TimeUnit.MILLISECONDS.toNanos(backoff));
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    e.addSuppressed(ie);
+                    throw e;
+                }
+            }
         }
     }
 
@@ -77,20 +342,300 @@ public class DefaultJdbiHandler implements JdbiHandler {
 
     @Override
     public void closeJdbi(@Nonnull String datasourceName) {
+        shutdownExecutor(datasourceName);
         DBI dbi = jdbiStorage.get(datasourceName);
         if (dbi != null) {
-            jdbiFactory.destroy(datasourceName, dbi);
+            // replicas are datasources on their own right, closed separately
+            jdbiFactory.destroy(datasourceName, dbi instanceof RoutingDBI ? ((RoutingDBI) dbi).getPrimary() : dbi);
             jdbiStorage.remove(datasourceName);
         }
     }
 
+    /**
+     * Executes the given work with the DBI of the datasource, or one of its replicas if {@code readOnly},
+     * retaining both so that neither is evicted for being idle meanwhile.
+     */
+    private <R> R execute(@Nonnull String datasourceName, boolean readOnly, @Nonnull Work<R> work) {
+        DBI dbi = retainDBI(datasourceName);
+        RecordingDBI lease = DBIDecorator.unwrap(dbi, RecordingDBI.class);
+        try {
+            if (!readOnly || !(dbi instanceof RoutingDBI)) {
+                return execute(datasourceName, dbi, work);
+            }
+
+            // replicas are guarded by their own limits and breakers
+            DBI replica = ((RoutingDBI) dbi).readOnly();
+            RecordingDBI replicaLease = DBIDecorator.unwrap(replica, RecordingDBI.class);
+            if (replicaLease == null || replicaLease == lease) {
+                return execute(datasourceName, replica, work);
+            }
+            if (!replicaLease.retain()) {
+                // the replica is being evicted
+                return execute(datasourceName, ((RoutingDBI) dbi).getPrimary(), work);
+            }
+            try {
+                return execute(datasourceName, replica, work);
+            } finally {
+                replicaLease.release();
+            }
+        } finally {
+            if (lease != null) {
+                lease.release();
+            }
+        }
+    }
+
+    /**
+     * Executes the given work unless the circuit breaker of the DBI is open, holding a slot of its
+     * concurrency limiter meanwhile. Failures are wrapped in a {@code RuntimeJdbiException}.
+     */
+    private <R> R execute(@Nonnull String datasourceName, @Nonnull DBI dbi, @Nonnull Work<R> work) {
+        RecordingDBI recordingDBI = DBIDecorator.unwrap(dbi, RecordingDBI.class);
+        CircuitBreaker breaker = recordingDBI != null ? recordingDBI.getCircuitBreaker() : null;
+        ConcurrencyLimiter limiter = recordingDBI != null ? recordingDBI.getConcurrencyLimiter() : null;
+
+        if (breaker != null) {
+            breaker.acquirePermission();
+        }
+        long acquiredAt = limiter != null ? limiter.acquire() : 0L;
+        long start = System.nanoTime();
+        try {
+            R result = work.call(dbi);
+            if (breaker != null) {
+                breaker.onSuccess(System.nanoTime() - start);
+            }
+            return result;
+        } catch (Exception e) {
+            if (breaker != null) {
+                breaker.onError(System.nanoTime() - start, e);
+            }
+            throw new RuntimeJdbiException(datasourceName, e);
+        } finally {
+            if (limiter != null) {
+                limiter.release(acquiredAt);
+            }
+        }
+    }
+
+    /**
+     * Obtains the DBI of the datasource, retained on behalf of the caller. A DBI retired for being idle
+     * is replaced by a new one once it has been destroyed.
+     */
     @Nonnull
-    private DBI getDBI(@Nonnull String datasourceName) {
+    private DBI retainDBI(@Nonnull String datasourceName) {
+        while (true) {
+            DBI dbi = getDBI(datasourceName);
+            RecordingDBI recordingDBI = DBIDecorator.unwrap(dbi, RecordingDBI.class);
+            if (recordingDBI == null || recordingDBI.retain()) {
+                return dbi;
+            }
+            // the DBI is being evicted, wait until it is gone before creating a new one
+            try {
+                recordingDBI.awaitRemoval();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while datasource '" + datasourceName + "' was being evicted", e);
+            }
+        }
+    }
+
+    @Nonnull
+    private DBI getDBI(@Nonnull final String datasourceName) {
         DBI dbi = jdbiStorage.get(datasourceName);
-        if (dbi == null) {
-            dbi = jdbiFactory.create(datasourceName);
-            jdbiStorage.set(datasourceName, dbi);
+        if (dbi != null) {
+            return dbi;
+        }
+
+        return creations.execute(datasourceName, new Supplier<DBI>() {
+            @Override
+            public DBI get() {
+                // another caller may have completed the creation in the meantime
+                DBI instance = jdbiStorage.get(datasourceName);
+                if (instance == null) {
+                    instance = route(datasourceName, jdbiFactory.create(datasourceName));
+                    jdbiStorage.set(datasourceName, instance);
+                }
+                return instance;
+            }
+        });
+    }
+
+    /**
+     * Wraps the given DBI with a {@code RoutingDBI} when the datasource lists {@code replicas}.
+     */
+    @Nonnull
+    private DBI route(@Nonnull String datasourceName, @Nonnull DBI dbi) {
+        List<String> replicas = getReplicaNames(datasourceName);
+        if (replicas.isEmpty()) {
+            return dbi;
+        }
+
+        DBIDecorator primary = DBIDecorator.unwrap(dbi, DBIDecorator.class);
+        if (primary == null) {
+            LOG.warn("Datasource '{}' defines replicas but its DBI cannot be decorated; replicas will be ignored", datasourceName);
+            return dbi;
+        }
+
+        LOG.debug("Routing read-only work on datasource '{}' to {}", datasourceName, replicas);
+        long retryInterval = getConfigValueAsLong(jdbiFactory.getConfigurationFor(datasourceName), "replica_retry_interval", RoutingDBI.DEFAULT_RETRY_INTERVAL);
+        return new RoutingDBI(datasourceName, primary, replicas, new Function<String, DBI>() {
+            @Override
+            public DBI apply(String replicaName) {
+                return getDBI(replicaName);
+            }
+        }, retryInterval);
+    }
+
+    @Nonnull
+    private List<String> getReplicaNames(@Nonnull String datasourceName) {
+        Object value = getConfigValue(jdbiFactory.getConfigurationFor(datasourceName), "replicas", null);
+        List<String> replicas = new ArrayList<>();
+        if (value instanceof Collection) {
+            for (Object replica : (Collection<?>) value) {
+                addReplica(datasourceName, replicas, String.valueOf(replica));
+            }
+        } else if (value instanceof CharSequence) {
+            for (String replica : value.toString().split(",")) {
+                addReplica(datasourceName, replicas, replica);
+            }
+        }
+        return replicas;
+    }
+
+    private static void addReplica(@Nonnull String datasourceName, @Nonnull List<String> replicas, @Nonnull String replica) {
+        String replicaName = replica.trim();
+        if (!replicaName.isEmpty() && !replicaName.equals(datasourceName) && !replicas.contains(replicaName)) {
+            replicas.add(replicaName);
+        }
+    }
+
+    @Nonnull
+    private ShardRing getShardRing(@Nonnull String shardGroup) {
+        ShardRing ring = shardRings.get(shardGroup);
+        if (ring == null) {
+            ShardRing candidate = createShardRing(shardGroup);
+            ring = shardRings.putIfAbsent(shardGroup, candidate);
+            if (ring == null) {
+                ring = candidate;
+            }
         }
-        return dbi;
+        return ring;
+    }
+
+    /**
+     * Places every datasource whose {@code shard_group} matches on a ring, with as many points as its
+     * {@code shard_virtual_nodes}. The DBIs themselves are created on first use.
+     */
+    @Nonnull
+    private ShardRing createShardRing(@Nonnull String shardGroup) {
+        Map<String, Integer> virtualNodes = new LinkedHashMap<>();
+        for (String datasourceName : jdbiFactory.getDatasourceNames()) {
+            Map<String, Object> config = jdbiFactory.getConfigurationFor(datasourceName);
+            if (shardGroup.equals(getConfigValueAsString(config, "shard_group", null))) {
+                virtualNodes.put(datasourceName, getConfigValueAsInt(config, "shard_virtual_nodes", DEFAULT_SHARD_VIRTUAL_NODES));
+            }
+        }
+        return new ShardRing(shardGroup, virtualNodes);
+    }
+
+    @Nonnull
+    private ExecutorService getExecutor(@Nonnull String datasourceName) {
+        ExecutorService executor = executors.get(datasourceName);
+        if (executor == null) {
+            ExecutorService candidate = createExecutor(datasourceName);
+            executor = executors.putIfAbsent(datasourceName, candidate);
+            if (executor == null) {
+                executor = candidate;
+            } else {
+                candidate.shutdown();
+            }
+        }
+        return executor;
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    private ExecutorService createExecutor(@Nonnull String datasourceName) {
+        Map<String, Object> config = jdbiFactory.getConfigurationFor(datasourceName);
+        // by default match the size of the connection pool, there's no point in having more threads
+        Map<String, Object> pool = getConfigValue(config, "pool", null);
+        int defaultPoolSize = pool != null ? getConfigValueAsInt(pool, "maximumPoolSize", 0) : 0;
+        if (defaultPoolSize <= 0) {
+            defaultPoolSize = Runtime.getRuntime().availableProcessors();
+        }
+
+        return DatasourceExecutors.newBoundedExecutor("jdbi-" + datasourceName,
+            getConfigValueAsInt(config, "async_pool_size", defaultPoolSize),
+            getConfigValueAsInt(config, "async_queue_size", DEFAULT_ASYNC_QUEUE_SIZE),
+            getConfigValueAsBoolean(config, "async_virtual_threads", true));
+    }
+
+    private void shutdownExecutor(@Nonnull String datasourceName) {
+        ExecutorService executor = executors.remove(datasourceName);
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdown();
+        int timeout = getConfigValueAsInt(jdbiFactory.getConfigurationFor(datasourceName), "async_shutdown_timeout", DEFAULT_ASYNC_SHUTDOWN_TIMEOUT);
+        try {
+            if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Async tasks on datasource '{}' did not finish within {}ms", datasourceName, timeout);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Yields the result of every shard as soon as it is available, regardless of the order in which
+     * shards were queried.
+     */
+    private static class ShardResultIterator<R> implements Iterator<R> {
+        private final BlockingQueue<CompletableFuture<R>> completed = new LinkedBlockingQueue<>();
+        private int remaining;
+
+        private ShardResultIterator(@Nonnull List<CompletableFuture<R>> results) {
+            remaining = results.size();
+            for (final CompletableFuture<R> result : results) {
+                result.whenComplete(new BiConsumer<R, Throwable>() {
+                    @Override
+                    public void accept(R value, Throwable throwable) {
+                        completed.add(result);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public R next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            CompletableFuture<R> result;
+            try {
+                result = completed.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for shard results", e);
+            }
+            remaining--;
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+    }
+
+    private interface Work<R> {
+        R call(@Nonnull DBI dbi) throws Exception;
     }
 }
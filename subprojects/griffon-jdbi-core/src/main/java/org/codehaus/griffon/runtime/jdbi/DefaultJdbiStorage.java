@@ -17,12 +17,94 @@
  */
 package org.codehaus.griffon.runtime.jdbi;
 
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.jdbi.JdbiFactory;
 import griffon.plugins.jdbi.JdbiStorage;
 import org.codehaus.griffon.runtime.core.storage.DefaultObjectStorage;
 import org.skife.jdbi.v2.DBI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
 
 /**
  * @author Andres Almiray
  */
 public class DefaultJdbiStorage extends DefaultObjectStorage<DBI> implements JdbiStorage {
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultJdbiStorage.class);
+
+    private final Set<String> evicted = ConcurrentHashMap.newKeySet();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder recreations = new LongAdder();
+
+    @Inject
+    private JdbiFactory jdbiFactory;
+
+    @Override
+    public void set(@Nonnull String name, @Nullable DBI instance) {
+        super.set(name, instance);
+        if (instance != null && evicted.remove(name)) {
+            recreations.increment();
+        }
+    }
+
+    /**
+     * Destroys the DBI, and with it the DataSource, of every datasource that has not been used for
+     * longer than its {@code dbi_idle_timeout}. A new one is created the next time it is needed.
+     *
+     * @return the number of datasources evicted.
+     * @since 3.0.0
+     */
+    public int evictIdle() {
+        int count = 0;
+        for (String name : new ArrayList<>(getKeys())) {
+            long idleTimeout = getConfigValueAsLong(jdbiFactory.getConfigurationFor(name), "dbi_idle_timeout", 0L);
+            DBI dbi = get(name);
+            RecordingDBI recordingDBI = DBIDecorator.unwrap(dbi, RecordingDBI.class);
+            if (idleTimeout <= 0 || recordingDBI == null || !recordingDBI.retire(idleTimeout)) {
+                continue;
+            }
+
+            LOG.debug("Evicting datasource '{}', idle for more than {}ms", name, idleTimeout);
+            try {
+                // replicas are datasources on their own right, evicted separately
+                jdbiFactory.destroy(name, dbi instanceof RoutingDBI ? ((RoutingDBI) dbi).getPrimary() : dbi);
+            } catch (RuntimeException e) {
+                LOG.warn("Could not close idle datasource '{}'", name, e);
+            } finally {
+                // callers waiting on the retired DBI create a new one once it is gone
+                evicted.add(name);
+                remove(name);
+                recordingDBI.removed();
+            }
+            evictions.increment();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Number of DBIs destroyed for being idle.
+     *
+     * @since 3.0.0
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Number of DBIs created again after having been evicted.
+     *
+     * @since 3.0.0
+     */
+    public long getRecreations() {
+        return recreations.sum();
+    }
 }
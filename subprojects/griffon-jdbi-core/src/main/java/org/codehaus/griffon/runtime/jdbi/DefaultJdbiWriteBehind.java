@@ -0,0 +1,163 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.core.env.Metadata;
+import griffon.plugins.jdbi.JdbiFactory;
+import griffon.plugins.jdbi.JdbiHandler;
+import griffon.plugins.jdbi.JdbiWriteBehind;
+import griffon.plugins.jdbi.exceptions.RuntimeJdbiException;
+import griffon.plugins.jdbi.exceptions.WriteBehindClosedException;
+import griffon.plugins.monitor.MBeanManager;
+import org.codehaus.griffon.runtime.jdbi.monitor.WriteBehindMonitor;
+
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DefaultJdbiWriteBehind implements JdbiWriteBehind {
+    private static final String ERROR_DATASOURCE_NAME_BLANK = "Argument 'datasourceName' must not be blank";
+    private static final String ERROR_SQL_BLANK = "Argument 'sql' must not be blank";
+    private static final String ERROR_PARAMS_NULL = "Argument 'params' must not be null";
+    private static final int DEFAULT_QUEUE_SIZE = 10000;
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final long DEFAULT_FLUSH_INTERVAL = 1000L;
+    private static final long DEFAULT_OFFER_TIMEOUT = 1000L;
+    private static final long DEFAULT_SHUTDOWN_TIMEOUT = 5000L;
+
+    private final JdbiHandler jdbiHandler;
+    private final JdbiFactory jdbiFactory;
+    private final ConcurrentMap<String, WriteBehindQueue> queues = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> objectNames = new ConcurrentHashMap<>();
+    private volatile boolean draining;
+
+    @Inject
+    private MBeanManager mBeanManager;
+
+    @Inject
+    private Metadata metadata;
+
+    @Inject
+    public DefaultJdbiWriteBehind(@Nonnull JdbiHandler jdbiHandler, @Nonnull JdbiFactory jdbiFactory) {
+        this.jdbiHandler = requireNonNull(jdbiHandler, "Argument 'jdbiHandler' must not be null");
+        this.jdbiFactory = requireNonNull(jdbiFactory, "Argument 'jdbiFactory' must not be null");
+    }
+
+    @Override
+    public void enqueue(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Map<String, ?> params) throws RuntimeJdbiException {
+        enqueue(datasourceName, sql, null, params);
+    }
+
+    @Override
+    public void enqueue(@Nonnull String datasourceName, @Nonnull String sql, @Nullable Object key, @Nonnull Map<String, ?> params) throws RuntimeJdbiException {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        requireNonBlank(sql, ERROR_SQL_BLANK);
+        requireNonNull(params, ERROR_PARAMS_NULL);
+        getQueue(datasourceName).offer(sql, key, params);
+    }
+
+    @Override
+    public void flush(@Nonnull String datasourceName) {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        WriteBehindQueue queue = queues.get(datasourceName);
+        if (queue != null) {
+            queue.flush();
+        }
+    }
+
+    @Override
+    public int getPendingCount(@Nonnull String datasourceName) {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        WriteBehindQueue queue = queues.get(datasourceName);
+        return queue != null ? queue.getPendingCount() : 0;
+    }
+
+    /**
+     * Statements written, requeued and lost by the queue of the given datasource, if it has been used.
+     */
+    @Nullable
+    public WriteBehindStatistics getStatistics(@Nonnull String datasourceName) {
+        requireNonBlank(datasourceName, ERROR_DATASOURCE_NAME_BLANK);
+        WriteBehindQueue queue = queues.get(datasourceName);
+        return queue != null ? queue.getStatistics() : null;
+    }
+
+    @Override
+    public void drain() {
+        synchronized (queues) {
+            draining = true;
+        }
+        for (Map.Entry<String, WriteBehindQueue> entry : queues.entrySet()) {
+            long timeout = getConfigValueAsLong(jdbiFactory.getConfigurationFor(entry.getKey()), "write_behind_shutdown_timeout", DEFAULT_SHUTDOWN_TIMEOUT);
+            entry.getValue().close(timeout);
+        }
+        queues.clear();
+        for (String objectName : objectNames.values()) {
+            mBeanManager.unregisterMBean(objectName);
+        }
+        objectNames.clear();
+    }
+
+    @Nonnull
+    private WriteBehindQueue getQueue(@Nonnull String datasourceName) {
+        WriteBehindQueue queue = queues.get(datasourceName);
+        if (queue != null) {
+            return queue;
+        }
+
+        // each queue owns a writer thread, create it once
+        synchronized (queues) {
+            if (draining) {
+                throw new WriteBehindClosedException(datasourceName);
+            }
+            queue = queues.get(datasourceName);
+            if (queue == null) {
+                queue = createQueue(datasourceName);
+                queues.put(datasourceName, queue);
+                if (getConfigValueAsBoolean(jdbiFactory.getConfigurationFor(datasourceName), "jmx", true)) {
+                    WriteBehindMonitor monitor = new WriteBehindMonitor(metadata, this, queue.getStatistics(), datasourceName);
+                    objectNames.put(datasourceName, mBeanManager.registerMBean(monitor, false).getCanonicalName());
+                }
+            }
+            return queue;
+        }
+    }
+
+    @Nonnull
+    private WriteBehindQueue createQueue(@Nonnull String datasourceName) {
+        Map<String, Object> config = jdbiFactory.getConfigurationFor(datasourceName);
+        return new WriteBehindQueue(datasourceName, jdbiHandler,
+            getConfigValueAsInt(config, "write_behind_queue_size", DEFAULT_QUEUE_SIZE),
+            getConfigValueAsInt(config, "write_behind_batch_size", DEFAULT_BATCH_SIZE),
+            getConfigValueAsLong(config, "write_behind_flush_interval", DEFAULT_FLUSH_INTERVAL),
+            getConfigValueAsLong(config, "write_behind_offer_timeout", DEFAULT_OFFER_TIMEOUT));
+    }
+}
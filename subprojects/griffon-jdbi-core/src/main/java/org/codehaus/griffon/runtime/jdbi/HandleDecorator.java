@@ -31,6 +31,7 @@ import org.skife.jdbi.v2.TimingCollector;
 import org.skife.jdbi.v2.TransactionCallback;
 import org.skife.jdbi.v2.TransactionConsumer;
 import org.skife.jdbi.v2.TransactionIsolationLevel;
+import org.skife.jdbi.v2.TransactionStatus;
 import org.skife.jdbi.v2.Update;
 import org.skife.jdbi.v2.exceptions.TransactionFailedException;
 import org.skife.jdbi.v2.tweak.ArgumentFactory;
@@ -146,22 +147,44 @@ public class HandleDecorator implements Handle {
 
     @Override
     public <ReturnType> ReturnType inTransaction(TransactionCallback<ReturnType> callback) throws TransactionFailedException {
-        return delegate.inTransaction(callback);
+        return delegate.inTransaction(decorate(callback));
     }
 
     @Override
     public void useTransaction(TransactionConsumer callback) throws TransactionFailedException {
-        delegate.useTransaction(callback);
+        delegate.useTransaction(decorate(callback));
     }
 
     @Override
     public <ReturnType> ReturnType inTransaction(TransactionIsolationLevel level, TransactionCallback<ReturnType> callback) throws TransactionFailedException {
-        return delegate.inTransaction(level, callback);
+        return delegate.inTransaction(level, decorate(callback));
     }
 
     @Override
     public void useTransaction(TransactionIsolationLevel level, TransactionConsumer callback) throws TransactionFailedException {
-        delegate.useTransaction(level, callback);
+        delegate.useTransaction(level, decorate(callback));
+    }
+
+    // callbacks get this handle rather than the delegate, so that work within transactions is decorated too
+
+    @Nonnull
+    private <ReturnType> TransactionCallback<ReturnType> decorate(@Nonnull final TransactionCallback<ReturnType> callback) {
+        return new TransactionCallback<ReturnType>() {
+            @Override
+            public ReturnType inTransaction(Handle handle, TransactionStatus status) throws Exception {
+                return callback.inTransaction(HandleDecorator.this, status);
+            }
+        };
+    }
+
+    @Nonnull
+    private TransactionConsumer decorate(@Nonnull final TransactionConsumer callback) {
+        return new TransactionConsumer() {
+            @Override
+            public void useTransaction(Handle handle, TransactionStatus status) throws Exception {
+                callback.useTransaction(HandleDecorator.this, status);
+            }
+        };
     }
 
     @Override
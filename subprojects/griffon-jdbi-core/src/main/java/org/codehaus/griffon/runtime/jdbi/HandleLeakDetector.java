@@ -0,0 +1,202 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.codehaus.griffon.runtime.jdbi.monitor.OpenHandleInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps track of the handles of a single datasource that have not been closed yet. Handles are
+ * weakly referenced; a handle that is garbage collected without being closed is reported as leaked,
+ * together with the stack trace of the call that opened it when that call was sampled.
+ * <p>
+ * Handles held longer than the threshold are reported once as suspected leaks. The check piggybacks
+ * on {@code open()}, running at most once per half threshold. Stack traces are captured for a
+ * fraction of calls given by the sample rate; no stack trace is captured when it is {@code 0}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class HandleLeakDetector {
+    private static final Logger LOG = LoggerFactory.getLogger(HandleLeakDetector.class);
+    private static final Comparator<Tracked> OLDEST_FIRST = new Comparator<Tracked>() {
+        @Override
+        public int compare(Tracked a, Tracked b) {
+            return Long.compare(a.openedAt, b.openedAt);
+        }
+    };
+
+    private final String datasourceName;
+    private final long thresholdNanos;
+    private final double sampleRate;
+    private final ConcurrentMap<Long, Tracked> openHandles = new ConcurrentHashMap<>();
+    private final ReferenceQueue<LinkedHandle> collected = new ReferenceQueue<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong nextCheck = new AtomicLong();
+    private final LongAdder suspectedLeaks = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+
+    /**
+     * @param thresholdMillis handles held longer than this are suspected leaks; {@code 0} disables the check.
+     * @param sampleRate      fraction of calls to {@code open()} whose stack trace is captured, from 0 to 1.
+     */
+    public HandleLeakDetector(@Nonnull String datasourceName, long thresholdMillis, double sampleRate) {
+        this.datasourceName = datasourceName;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, thresholdMillis));
+        this.sampleRate = Math.max(0d, Math.min(1d, sampleRate));
+        this.nextCheck.set(System.nanoTime() + thresholdNanos / 2);
+    }
+
+    public long getThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Number of handles that were held longer than the threshold.
+     */
+    public long getSuspectedLeaks() {
+        return suspectedLeaks.sum();
+    }
+
+    /**
+     * Number of handles that were garbage collected without being closed.
+     */
+    public long getLeaks() {
+        return leaks.sum();
+    }
+
+    public int getOpenHandles() {
+        return openHandles.size();
+    }
+
+    @Nonnull
+    Object track(@Nonnull LinkedHandle handle) {
+        long now = System.nanoTime();
+        Throwable site = sampleRate > 0d && (sampleRate >= 1d || ThreadLocalRandom.current().nextDouble() < sampleRate)
+            ? new Throwable("Handle opened by " + Thread.currentThread().getName()) : null;
+        Tracked tracked = new Tracked(handle, collected, ids.incrementAndGet(), now, Thread.currentThread().getName(), site);
+        openHandles.put(tracked.id, tracked);
+
+        long check = nextCheck.get();
+        if (now - check >= 0 && nextCheck.compareAndSet(check, now + Math.max(thresholdNanos / 2, TimeUnit.SECONDS.toNanos(1)))) {
+            check(now);
+        }
+        return tracked;
+    }
+
+    void untrack(@Nonnull Object token) {
+        Tracked tracked = (Tracked) token;
+        openHandles.remove(tracked.id);
+        tracked.clear();
+    }
+
+    /**
+     * Lists open handles, oldest first.
+     */
+    @Nonnull
+    public OpenHandleInfo[] findOldestHandles(int max) {
+        expunge();
+        List<Tracked> handles = new ArrayList<>(openHandles.values());
+        Collections.sort(handles, OLDEST_FIRST);
+        long now = System.nanoTime();
+        int size = Math.max(0, Math.min(max, handles.size()));
+        OpenHandleInfo[] result = new OpenHandleInfo[size];
+        for (int i = 0; i < size; i++) {
+            Tracked tracked = handles.get(i);
+            result[i] = new OpenHandleInfo(tracked.id,
+                TimeUnit.NANOSECONDS.toMillis(now - tracked.openedAt),
+                tracked.thread,
+                format(tracked.site));
+        }
+        return result;
+    }
+
+    private void check(long now) {
+        expunge();
+        if (thresholdNanos <= 0) {
+            return;
+        }
+        for (Tracked tracked : openHandles.values()) {
+            if (!tracked.flagged && now - tracked.openedAt > thresholdNanos) {
+                tracked.flagged = true;
+                suspectedLeaks.increment();
+                LOG.warn("Handle #{} on datasource '{}' has been open for {}ms (opened by {})", tracked.id, datasourceName,
+                    TimeUnit.NANOSECONDS.toMillis(now - tracked.openedAt), tracked.thread, tracked.site);
+            }
+        }
+    }
+
+    private void expunge() {
+        for (Object reference = collected.poll(); reference != null; reference = collected.poll()) {
+            Tracked tracked = (Tracked) reference;
+            if (openHandles.remove(tracked.id) != null) {
+                leaks.increment();
+                LOG.error("Handle #{} on datasource '{}' was garbage collected without being closed (opened by {})",
+                    tracked.id, datasourceName, tracked.thread, tracked.site);
+            }
+        }
+    }
+
+    @Nullable
+    private static String format(@Nullable Throwable site) {
+        if (site == null) {
+            return null;
+        }
+        StringWriter writer = new StringWriter();
+        site.printStackTrace(new PrintWriter(writer));
+        return writer.toString();
+    }
+
+    private static final class Tracked extends WeakReference<LinkedHandle> {
+        private final long id;
+        private final long openedAt;
+        private final String thread;
+        private final Throwable site;
+        private volatile boolean flagged;
+
+        private Tracked(@Nonnull LinkedHandle handle, @Nonnull ReferenceQueue<LinkedHandle> queue, long id, long openedAt, @Nonnull String thread, @Nullable Throwable site) {
+            super(handle, queue);
+            this.id = id;
+            this.openedAt = openedAt;
+            this.thread = thread;
+            this.site = site;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.codehaus.griffon.runtime.jdbi.monitor.LatencyHistogram;
+import org.codehaus.griffon.runtime.jdbi.monitor.LatencyStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Validates the pooled connections of a single datasource in the background, so that callers are
+ * not the ones finding out about connections broken by a network blip or a database restart.
+ * <p>
+ * Each check borrows {@code warmConnections} connections at once, which makes the pool hand out idle
+ * connections and establish new ones if it holds fewer, and validates each one with
+ * {@code Connection.isValid()} and, when given, by executing the validation query. A connection is
+ * considered broken only when {@code isValid()} fails or the query fails with a SQLState of class
+ * {@code 08} (connection exception); any other query error fails the check and is counted separately,
+ * but leaves the connection in the pool as it most likely points at the query rather than the
+ * connection. Broken connections are evicted from the pool when it offers an
+ * {@code evictConnection(Connection)} method, as HikariCP does, and simply closed otherwise, which
+ * returns them to the pool and is not counted as an eviction. Connections are borrowed straight from
+ * the {@code DataSource}, bypassing handle tracking and statement timings.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class HealthChecker {
+    private static final Logger LOG = LoggerFactory.getLogger(HealthChecker.class);
+    private static final String SQL_STATE_CONNECTION_EXCEPTION = "08";
+
+    private enum Validation {
+        VALID, BROKEN, QUERY_FAILED
+    }
+
+    private final String datasourceName;
+    private final DataSource dataSource;
+    private final int warmConnections;
+    private final int validationTimeout;
+    private final String validationQuery;
+    private final Method evictConnection;
+    private final LatencyHistogram latencies = new LatencyHistogram("health_check");
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder queryFailures = new LongAdder();
+    private volatile long lastCheck;
+    private volatile boolean healthy = true;
+
+    /**
+     * @param warmConnections   number of connections borrowed and validated by each check.
+     * @param validationTimeout seconds to wait for a connection to be validated.
+     * @param validationQuery   query used to validate connections; {@code null} relies on {@code Connection.isValid()}.
+     */
+    public HealthChecker(@Nonnull String datasourceName, @Nonnull DataSource dataSource, int warmConnections, int validationTimeout, @Nullable String validationQuery) {
+        this.datasourceName = requireNonNull(datasourceName, "Argument 'datasourceName' must not be null");
+        this.dataSource = requireNonNull(dataSource, "Argument 'dataSource' must not be null");
+        this.warmConnections = Math.max(1, warmConnections);
+        this.validationTimeout = Math.max(1, validationTimeout);
+        this.validationQuery = validationQuery != null && !validationQuery.trim().isEmpty() ? validationQuery : null;
+        this.evictConnection = findEvictConnection(dataSource);
+    }
+
+    /**
+     * Runs a single check. Returns {@code true} if every connection could be borrowed and was valid.
+     */
+    public synchronized boolean check() {
+        List<Connection> connections = new ArrayList<>(warmConnections);
+        boolean result = true;
+        try {
+            for (int i = 0; i < warmConnections; i++) {
+                Connection connection;
+                try {
+                    connection = dataSource.getConnection();
+                } catch (SQLException e) {
+                    LOG.warn("Health check could not obtain a connection from datasource '{}'", datasourceName, e);
+                    failures.increment();
+                    result = false;
+                    break;
+                }
+
+                long start = System.nanoTime();
+                Validation validation = validate(connection);
+                latencies.recordNanos(System.nanoTime() - start);
+                if (validation == Validation.BROKEN) {
+                    failures.increment();
+                    result = false;
+                    evict(connection);
+                    continue;
+                }
+                if (validation == Validation.QUERY_FAILED) {
+                    queryFailures.increment();
+                    result = false;
+                }
+                connections.add(connection);
+            }
+        } finally {
+            for (Connection connection : connections) {
+                close(connection);
+            }
+        }
+
+        checks.increment();
+        lastCheck = System.currentTimeMillis();
+        healthy = result;
+        return result;
+    }
+
+    @Nonnull
+    public LatencyStatistics getLatencies() {
+        return latencies.snapshot();
+    }
+
+    public long getChecks() {
+        return checks.sum();
+    }
+
+    /**
+     * Number of connections that could not be obtained or were found broken.
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Number of broken connections evicted from the pool.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Number of times the validation query failed on a connection that was not broken.
+     */
+    public long getQueryFailures() {
+        return queryFailures.sum();
+    }
+
+    /**
+     * Time at which the last check completed, in milliseconds since the epoch, or {@code 0} if none did.
+     */
+    public long getLastCheck() {
+        return lastCheck;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    public void reset() {
+        latencies.reset();
+        checks.reset();
+        failures.reset();
+        evictions.reset();
+        queryFailures.reset();
+    }
+
+    @Nonnull
+    private Validation validate(@Nonnull Connection connection) {
+        try {
+            if (!connection.isValid(validationTimeout)) {
+                LOG.debug("Connection of datasource '{}' failed validation", datasourceName);
+                return Validation.BROKEN;
+            }
+        } catch (SQLException e) {
+            LOG.debug("Connection of datasource '{}' failed validation", datasourceName, e);
+            return Validation.BROKEN;
+        }
+
+        if (validationQuery == null) {
+            return Validation.VALID;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout(validationTimeout);
+            statement.execute(validationQuery);
+            return Validation.VALID;
+        } catch (SQLException e) {
+            String sqlState = e.getSQLState();
+            if (sqlState != null && sqlState.startsWith(SQL_STATE_CONNECTION_EXCEPTION)) {
+                LOG.debug("Connection of datasource '{}' failed validation", datasourceName, e);
+                return Validation.BROKEN;
+            }
+            LOG.warn("Health check query of datasource '{}' failed", datasourceName, e);
+            return Validation.QUERY_FAILED;
+        }
+    }
+
+    private void evict(@Nonnull Connection connection) {
+        if (evictConnection != null) {
+            try {
+                evictConnection.invoke(dataSource, connection);
+                evictions.increment();
+                return;
+            } catch (Exception e) {
+                LOG.debug("Could not evict connection of datasource '{}'", datasourceName, e);
+            }
+        }
+        close(connection);
+    }
+
+    private void close(@Nonnull Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOG.debug("Could not close connection of datasource '{}'", datasourceName, e);
+        }
+    }
+
+    @Nullable
+    private static Method findEvictConnection(@Nonnull DataSource dataSource) {
+        try {
+            return dataSource.getClass().getMethod("evictConnection", Connection.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
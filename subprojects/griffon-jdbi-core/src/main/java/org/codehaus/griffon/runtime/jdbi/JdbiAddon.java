@@ -26,17 +26,29 @@ import griffon.plugins.jdbi.JdbiCallback;
 import griffon.plugins.jdbi.JdbiFactory;
 import griffon.plugins.jdbi.JdbiHandler;
 import griffon.plugins.jdbi.JdbiStorage;
+import griffon.plugins.jdbi.JdbiWriteBehind;
 import griffon.plugins.monitor.MBeanManager;
 import org.codehaus.griffon.runtime.core.addon.AbstractGriffonAddon;
 import org.codehaus.griffon.runtime.jdbi.monitor.JdbiStorageMonitor;
 import org.skife.jdbi.v2.DBI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.application.event.EventHandler;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
 
 /**
  * @author Andres Almiray
@@ -44,6 +56,11 @@ import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
 @DependsOn("datasource")
 @Named("jdbi")
 public class JdbiAddon extends AbstractGriffonAddon {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbiAddon.class);
+    private static final String KEY_STARTUP_PARALLELISM = "jdbi.startup.parallelism";
+    private static final int MAX_HEALTH_CHECK_THREADS = 4;
+    private static final long MIN_IDLE_EVICTION_PERIOD = 1000L;
+
     @Inject
     private JdbiHandler jdbiHandler;
 
@@ -53,34 +70,188 @@ public class JdbiAddon extends AbstractGriffonAddon {
     @Inject
     private JdbiStorage jdbiStorage;
 
+    @Inject
+    private JdbiWriteBehind jdbiWriteBehind;
+
     @Inject
     private MBeanManager mbeanManager;
 
     @Inject
     private Metadata metadata;
 
+    @Inject
+    private GriffonApplication application;
+
+    private ScheduledExecutorService healthChecks;
+    private ScheduledExecutorService idleEviction;
+
     @Override
     public void init(@Nonnull GriffonApplication application) {
         mbeanManager.registerMBean(new JdbiStorageMonitor(metadata, jdbiStorage));
+        scheduleHealthChecks();
+        scheduleIdleEviction();
+    }
+
+    /**
+     * Checks every datasource that sets a {@code health_check_interval} periodically, once connected.
+     */
+    private void scheduleHealthChecks() {
+        Map<String, Long> intervals = new LinkedHashMap<>();
+        for (String dataSourceName : jdbiFactory.getDatasourceNames()) {
+            long interval = getConfigValueAsLong(jdbiFactory.getConfigurationFor(dataSourceName), "health_check_interval", 0L);
+            if (interval > 0) {
+                intervals.put(dataSourceName, interval);
+            }
+        }
+        if (intervals.isEmpty()) {
+            return;
+        }
+
+        healthChecks = DatasourceExecutors.newScheduledExecutor("jdbi-health-check", Math.min(intervals.size(), MAX_HEALTH_CHECK_THREADS));
+        for (Map.Entry<String, Long> entry : intervals.entrySet()) {
+            final String dataSourceName = entry.getKey();
+            healthChecks.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    checkHealth(dataSourceName);
+                }
+            }, entry.getValue(), entry.getValue(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Looks for idle datasources at half the shortest {@code dbi_idle_timeout}, at most once a second.
+     */
+    private void scheduleIdleEviction() {
+        if (!(jdbiStorage instanceof DefaultJdbiStorage)) {
+            return;
+        }
+        long shortest = Long.MAX_VALUE;
+        for (String dataSourceName : jdbiFactory.getDatasourceNames()) {
+            long idleTimeout = getConfigValueAsLong(jdbiFactory.getConfigurationFor(dataSourceName), "dbi_idle_timeout", 0L);
+            if (idleTimeout > 0) {
+                shortest = Math.min(shortest, idleTimeout);
+            }
+        }
+        if (shortest == Long.MAX_VALUE) {
+            return;
+        }
+
+        final DefaultJdbiStorage storage = (DefaultJdbiStorage) jdbiStorage;
+        long period = Math.max(MIN_IDLE_EVICTION_PERIOD, shortest / 2);
+        idleEviction = DatasourceExecutors.newScheduledExecutor("jdbi-idle-eviction", 1);
+        idleEviction.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    storage.evictIdle();
+                } catch (RuntimeException e) {
+                    // an exception would cancel further evictions
+                    LOG.warn("Could not evict idle datasources", e);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkHealth(@Nonnull String dataSourceName) {
+        // datasources are not connected just to be checked
+        RecordingDBI dbi = DBIDecorator.unwrap(jdbiStorage.get(dataSourceName), RecordingDBI.class);
+        HealthChecker checker = dbi != null ? dbi.getHealthChecker() : null;
+        if (checker == null) {
+            return;
+        }
+        try {
+            checker.check();
+        } catch (RuntimeException e) {
+            // an exception would cancel further checks
+            LOG.warn("Health check of datasource '{}' failed", dataSourceName, e);
+        }
     }
 
     @EventHandler
     public void handleStartupStartEvent(@Nonnull StartupStartEvent event) {
+        List<String> dataSourceNames = new ArrayList<>();
         for (String dataSourceName : jdbiFactory.getDatasourceNames()) {
             Map<String, Object> config = jdbiFactory.getConfigurationFor(dataSourceName);
             if (getConfigValueAsBoolean(config, "connect_on_startup", false)) {
-                jdbiHandler.withJdbi(dataSourceName, new JdbiCallback<Void>() {
+                dataSourceNames.add(dataSourceName);
+            }
+        }
+
+        connect(dataSourceNames, application.getConfiguration().getAsInt(KEY_STARTUP_PARALLELISM, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Connects the given datasources using up to {@code parallelism} threads. Failures are rethrown as
+     * they would be when connecting sequentially; the first one wins and the rest are suppressed by it.
+     */
+    void connect(@Nonnull List<String> dataSourceNames, int parallelism) {
+        int threads = Math.min(dataSourceNames.size(), parallelism);
+        if (threads <= 1) {
+            for (String dataSourceName : dataSourceNames) {
+                connect(dataSourceName);
+            }
+            return;
+        }
+
+        ExecutorService executor = DatasourceExecutors.newBoundedExecutor("jdbi-startup", threads, dataSourceNames.size(), false);
+        try {
+            List<Future<?>> connections = new ArrayList<>();
+            for (final String dataSourceName : dataSourceNames) {
+                connections.add(executor.submit(new Runnable() {
                     @Override
-                    public Void handle(@Nonnull String dataSourceName, @Nonnull DBI dbi) {
-                        return null;
+                    public void run() {
+                        connect(dataSourceName);
                     }
-                });
+                }));
             }
+            awaitConnections(connections);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void connect(@Nonnull String dataSourceName) {
+        jdbiHandler.withJdbi(dataSourceName, new JdbiCallback<Void>() {
+            @Override
+            public Void handle(@Nonnull String dataSourceName, @Nonnull DBI dbi) {
+                return null;
+            }
+        });
+    }
+
+    private void awaitConnections(@Nonnull List<Future<?>> connections) {
+        RuntimeException failure = null;
+        for (Future<?> connection : connections) {
+            try {
+                connection.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while connecting to datasources", e);
+            } catch (ExecutionException e) {
+                RuntimeException cause = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
         }
     }
 
     @Override
     public void onShutdown(@Nonnull GriffonApplication application) {
+        if (healthChecks != null) {
+            healthChecks.shutdownNow();
+        }
+        if (idleEviction != null) {
+            idleEviction.shutdownNow();
+        }
+        // queued statements need their datasources
+        jdbiWriteBehind.drain();
         for (String dataSourceName : jdbiFactory.getDatasourceNames()) {
             jdbiHandler.closeJdbi(dataSourceName);
         }
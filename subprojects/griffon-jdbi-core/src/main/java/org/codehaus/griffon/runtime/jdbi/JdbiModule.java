@@ -23,6 +23,7 @@ import griffon.core.injection.Module;
 import griffon.plugins.jdbi.JdbiFactory;
 import griffon.plugins.jdbi.JdbiHandler;
 import griffon.plugins.jdbi.JdbiStorage;
+import griffon.plugins.jdbi.JdbiWriteBehind;
 import org.codehaus.griffon.runtime.core.injection.AbstractModule;
 import org.kordamp.jipsy.annotations.ServiceProviderFor;
 
@@ -50,6 +51,10 @@ public class JdbiModule extends AbstractModule {
             .to(DefaultJdbiHandler.class)
             .asSingleton();
 
+        bind(JdbiWriteBehind.class)
+            .to(DefaultJdbiWriteBehind.class)
+            .asSingleton();
+
         bind(GriffonAddon.class)
             .to(JdbiAddon.class)
             .asSingleton();
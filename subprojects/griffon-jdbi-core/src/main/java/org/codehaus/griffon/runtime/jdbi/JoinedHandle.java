@@ -0,0 +1,38 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+
+/**
+ * Handle given to code that joins a unit of work. Closing it has no effect; the handle of the unit
+ * of work is closed when the outermost unit of work completes.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class JoinedHandle extends HandleDecorator {
+    JoinedHandle(@Nonnull LinkedHandle delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public void close() {
+        // owned by the unit of work
+    }
+}
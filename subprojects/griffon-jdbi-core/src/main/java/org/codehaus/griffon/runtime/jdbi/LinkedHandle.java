@@ -18,8 +18,20 @@
 package org.codehaus.griffon.runtime.jdbi;
 
 import griffon.annotations.core.Nonnull;
+import griffon.plugins.jdbi.CompactRowMapper;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.Query;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.Update;
+import org.skife.jdbi.v2.tweak.BaseStatementCustomizer;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author Andres Almiray
@@ -27,6 +39,10 @@ import org.skife.jdbi.v2.Handle;
  */
 public class LinkedHandle extends HandleDecorator {
     private RecordingDBI dbi;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile Object leakToken;
+    private final long openedAt = System.nanoTime();
+    private final QueryCacheInvalidator queryCacheInvalidator = new QueryCacheInvalidator();
 
     public LinkedHandle(@Nonnull Handle delegate, @Nonnull RecordingDBI dbi) {
         super(delegate);
@@ -38,9 +54,87 @@ public class LinkedHandle extends HandleDecorator {
         return dbi;
     }
 
+    @Override
+    public Query<Map<String, Object>> createQuery(String sql) {
+        Query<Map<String, Object>> query = super.createQuery(sql);
+        return dbi.isCompactRows() ? query.map(CompactRowMapper.INSTANCE) : query;
+    }
+
+    @Override
+    public List<Map<String, Object>> select(String sql, Object... args) {
+        if (!dbi.isCompactRows()) {
+            return super.select(sql, args);
+        }
+
+        Query<Map<String, Object>> query = createQuery(sql);
+        int position = 0;
+        for (Object arg : args) {
+            query.bind(position++, arg);
+        }
+        return query.list();
+    }
+
+    @Override
+    public int insert(String sql, Object... args) {
+        int count = super.insert(sql, args);
+        dbi.invalidateQueryCache(sql);
+        return count;
+    }
+
+    @Override
+    public int update(String sql, Object... args) {
+        int count = super.update(sql, args);
+        dbi.invalidateQueryCache(sql);
+        return count;
+    }
+
+    @Override
+    public void execute(String sql, Object... args) {
+        super.execute(sql, args);
+        dbi.invalidateQueryCache(sql);
+    }
+
+    @Override
+    public Update createStatement(String sql) {
+        Update update = super.createStatement(sql);
+        return dbi.getQueryResultCache() != null ? update.addStatementCustomizer(queryCacheInvalidator) : update;
+    }
+
+    @Override
+    public PreparedBatch prepareBatch(String sql) {
+        PreparedBatch batch = super.prepareBatch(sql);
+        return dbi.getQueryResultCache() != null ? batch.addStatementCustomizer(queryCacheInvalidator) : batch;
+    }
+
+    @Override
+    public <SqlObjectType> SqlObjectType attach(Class<SqlObjectType> sqlObjectType) {
+        return dbi.cached(sqlObjectType, super.attach(sqlObjectType));
+    }
+
+    void setLeakToken(Object leakToken) {
+        this.leakToken = leakToken;
+    }
+
     @Override
     public void close() {
-        super.close();
-        dbi.decreaseHandleCount();
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            super.close();
+        } finally {
+            dbi.handleClosed(leakToken, openedAt);
+        }
+    }
+
+    /**
+     * Invalidates cached query results once a statement created from this handle has been executed.
+     */
+    private final class QueryCacheInvalidator extends BaseStatementCustomizer {
+        @Override
+        public void afterExecution(PreparedStatement stmt, StatementContext ctx) throws SQLException {
+            // the located statement, the given one may be the name of an externalized statement
+            dbi.invalidateQueryCache(ctx.getLocatedSql());
+        }
     }
 }
@@ -0,0 +1,129 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.jdbi.JdbiMetrics;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+import org.skife.jdbi.v2.tweak.TransactionHandler;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reports the outcome and duration of outermost transactions to {@code JdbiMetrics}. Start times are
+ * kept per handle, as transactions of different handles used by the same thread may nest or interleave.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class MetricsTransactionHandler implements TransactionHandler {
+    private final Map<Handle, Long> starts = Collections.synchronizedMap(new IdentityHashMap<Handle, Long>());
+    private final TransactionHandler delegate;
+    private final String datasourceName;
+    private final JdbiMetrics metrics;
+
+    MetricsTransactionHandler(@Nonnull TransactionHandler delegate, @Nonnull String datasourceName, @Nonnull JdbiMetrics metrics) {
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        this.datasourceName = datasourceName;
+        this.metrics = metrics;
+    }
+
+    @Nonnull
+    TransactionHandler getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void begin(Handle handle) {
+        boolean outermost = !delegate.isInTransaction(handle);
+        delegate.begin(handle);
+        if (outermost) {
+            starts.put(handle, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void commit(Handle handle) {
+        boolean failed = true;
+        try {
+            delegate.commit(handle);
+            failed = false;
+        } finally {
+            completed(handle, !failed, failed);
+        }
+    }
+
+    @Override
+    public void rollback(Handle handle) {
+        boolean failed = true;
+        try {
+            delegate.rollback(handle);
+            failed = false;
+        } finally {
+            completed(handle, false, failed);
+        }
+    }
+
+    @Override
+    public void rollback(Handle handle, String name) {
+        delegate.rollback(handle, name);
+    }
+
+    @Override
+    public boolean isInTransaction(Handle handle) {
+        return delegate.isInTransaction(handle);
+    }
+
+    @Override
+    public void checkpoint(Handle handle, String name) {
+        delegate.checkpoint(handle, name);
+    }
+
+    @Override
+    public void release(Handle handle, String checkpointName) {
+        delegate.release(handle, checkpointName);
+    }
+
+    @Override
+    public <ReturnType> ReturnType inTransaction(Handle handle, TransactionCallback<ReturnType> callback) {
+        // begin(), commit() and rollback() are called back through the handle
+        return delegate.inTransaction(handle, callback);
+    }
+
+    @Override
+    public <ReturnType> ReturnType inTransaction(Handle handle, TransactionIsolationLevel level, TransactionCallback<ReturnType> callback) {
+        return delegate.inTransaction(handle, level, callback);
+    }
+
+    private void completed(@Nonnull Handle handle, boolean committed, boolean failed) {
+        // a failed commit or rollback ends the measurement, even if the transaction is left open
+        if (!failed && delegate.isInTransaction(handle)) {
+            return;
+        }
+        Long start = starts.remove(handle);
+        if (start != null) {
+            metrics.transactionCompleted(datasourceName, committed, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+import org.skife.jdbi.v2.tweak.TransactionHandler;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Tells a {@code QueryResultCache} when outermost transactions begin and end, so that results read
+ * within a transaction are not cached and tables written by it are invalidated once it completes.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class QueryCacheTransactionHandler implements TransactionHandler {
+    private final TransactionHandler delegate;
+    private final QueryResultCache cache;
+
+    QueryCacheTransactionHandler(@Nonnull TransactionHandler delegate, @Nonnull QueryResultCache cache) {
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+        this.cache = requireNonNull(cache, "Argument 'cache' must not be null");
+    }
+
+    @Nonnull
+    TransactionHandler getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void begin(Handle handle) {
+        boolean outermost = !delegate.isInTransaction(handle);
+        delegate.begin(handle);
+        if (outermost) {
+            cache.transactionBegun(handle);
+        }
+    }
+
+    @Override
+    public void commit(Handle handle) {
+        try {
+            delegate.commit(handle);
+        } finally {
+            completed(handle);
+        }
+    }
+
+    @Override
+    public void rollback(Handle handle) {
+        try {
+            delegate.rollback(handle);
+        } finally {
+            completed(handle);
+        }
+    }
+
+    @Override
+    public void rollback(Handle handle, String name) {
+        delegate.rollback(handle, name);
+    }
+
+    @Override
+    public boolean isInTransaction(Handle handle) {
+        return delegate.isInTransaction(handle);
+    }
+
+    @Override
+    public void checkpoint(Handle handle, String name) {
+        delegate.checkpoint(handle, name);
+    }
+
+    @Override
+    public void release(Handle handle, String checkpointName) {
+        delegate.release(handle, checkpointName);
+    }
+
+    @Override
+    public <ReturnType> ReturnType inTransaction(Handle handle, TransactionCallback<ReturnType> callback) {
+        // begin(), commit() and rollback() are called back through the handle
+        return delegate.inTransaction(handle, callback);
+    }
+
+    @Override
+    public <ReturnType> ReturnType inTransaction(Handle handle, TransactionIsolationLevel level, TransactionCallback<ReturnType> callback) {
+        return delegate.inTransaction(handle, level, callback);
+    }
+
+    private void completed(@Nonnull Handle handle) {
+        boolean inTransaction;
+        try {
+            inTransaction = delegate.isInTransaction(handle);
+        } catch (RuntimeException e) {
+            // the connection is unusable, the transaction is over either way
+            inTransaction = false;
+        }
+        if (!inTransaction) {
+            cache.transactionEnded(handle);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.jdbi.CachedQuery;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
+import org.skife.jdbi.v2.sqlobject.SqlCall;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.BaseStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Results of {@code @CachedQuery} methods of every SqlObject created by a single DBI. SqlObjects are
+ * wrapped with a proxy that serves cached results and invalidates them after write methods
+ * ({@code @SqlUpdate}, {@code @SqlBatch}, {@code @SqlCall}) complete. Writes whose target table
+ * cannot be determined from their SQL invalidate every cached result.
+ * <p>
+ * Results read by a thread with an open transaction are neither served from nor put in the cache, as
+ * they may include uncommitted rows. Tables written within a transaction are invalidated once more
+ * when it completes, discarding rows cached meanwhile by other threads from before the commit.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class QueryResultCache {
+    private static final Pattern WRITE_STATEMENT = Pattern.compile(
+        "^\\s*(?:insert\\s+(?:ignore\\s+)?into|upsert\\s+into|merge\\s+into|replace\\s+into|update|delete\\s+from|truncate\\s+table)\\s+([^\\s(]+)",
+        Pattern.CASE_INSENSITIVE);
+    private static final String[] ALL_TABLES = new String[0];
+
+    private static final ClassValue<TypeMetadata> TYPES = new ClassValue<TypeMetadata>() {
+        @Override
+        protected TypeMetadata computeValue(Class<?> type) {
+            return new TypeMetadata(type);
+        }
+    };
+
+    private final QueryCacheStatistics statistics = new QueryCacheStatistics();
+    private final ConcurrentMap<Method, TinyLfuCache<CacheKey, Object>> caches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Set<TinyLfuCache<CacheKey, Object>>> cachesByTable = new ConcurrentHashMap<>();
+    private final ThreadLocal<Transactions> transactions = new ThreadLocal<>();
+
+    @Nonnull
+    public QueryCacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    public int getSize() {
+        int size = 0;
+        for (TinyLfuCache<CacheKey, Object> cache : caches.values()) {
+            size += cache.size();
+        }
+        return size;
+    }
+
+    /**
+     * Whether SqlObjects of the given type need to be wrapped, that is, the type is an interface that
+     * declares cached queries or write methods.
+     */
+    public boolean supports(@Nonnull Class<?> sqlObjectType) {
+        return sqlObjectType.isInterface() && TYPES.get(sqlObjectType).proxied;
+    }
+
+    @Nonnull
+    public <T> T wrap(@Nonnull Class<T> sqlObjectType, @Nonnull T sqlObject) {
+        requireNonNull(sqlObjectType, "Argument 'sqlObjectType' must not be null");
+        requireNonNull(sqlObject, "Argument 'sqlObject' must not be null");
+        if (!supports(sqlObjectType)) {
+            return sqlObject;
+        }
+        return sqlObjectType.cast(Proxy.newProxyInstance(sqlObjectType.getClassLoader(),
+            new Class<?>[]{sqlObjectType},
+            new CachingInvocationHandler(this, TYPES.get(sqlObjectType), sqlObject)));
+    }
+
+    /**
+     * Returns the SqlObject wrapped by {@code wrap()}, or the given object if it was not wrapped.
+     */
+    @Nonnull
+    public static Object unwrap(@Nonnull Object sqlObject) {
+        if (Proxy.isProxyClass(sqlObject.getClass())) {
+            InvocationHandler handler = Proxy.getInvocationHandler(sqlObject);
+            if (handler instanceof CachingInvocationHandler) {
+                return ((CachingInvocationHandler) handler).target;
+            }
+        }
+        return sqlObject;
+    }
+
+    /**
+     * Invalidates results read from the table written by the given statement, if it is a write.
+     */
+    public void invalidate(@Nullable String sql) {
+        String table = writtenTable(sql);
+        if (table != null) {
+            written(new String[]{table});
+        }
+    }
+
+    /**
+     * Whether the current thread has an open transaction.
+     */
+    public boolean isInTransaction() {
+        Transactions current = transactions.get();
+        if (current == null) {
+            return false;
+        }
+
+        // a handle closed without ending its transaction must not disable caching for good
+        for (Handle handle : new ArrayList<>(current.handles.keySet())) {
+            if (!isInTransaction(handle)) {
+                transactionEnded(handle);
+            }
+        }
+        return transactions.get() != null;
+    }
+
+    private static boolean isInTransaction(@Nonnull Handle handle) {
+        try {
+            return handle.isInTransaction();
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    void transactionBegun(@Nonnull Handle handle) {
+        Transactions current = transactions.get();
+        if (current == null) {
+            current = new Transactions();
+            transactions.set(current);
+        }
+        current.handles.put(handle, Boolean.TRUE);
+    }
+
+    void transactionEnded(@Nonnull Handle handle) {
+        Transactions current = transactions.get();
+        if (current == null || current.handles.remove(handle) == null) {
+            return;
+        }
+
+        if (current.allTables) {
+            invalidateAll();
+        } else {
+            for (String table : current.tables) {
+                invalidateTable(table);
+            }
+        }
+        if (current.handles.isEmpty()) {
+            transactions.remove();
+        }
+    }
+
+    public void invalidateTable(@Nonnull String table) {
+        Set<TinyLfuCache<CacheKey, Object>> dependents = cachesByTable.get(normalize(table));
+        if (dependents != null) {
+            for (TinyLfuCache<CacheKey, Object> cache : dependents) {
+                cache.clear();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        for (TinyLfuCache<CacheKey, Object> cache : caches.values()) {
+            cache.clear();
+        }
+    }
+
+    @Nonnull
+    private TinyLfuCache<CacheKey, Object> cacheFor(@Nonnull Method method, @Nonnull CachedQuery cachedQuery) {
+        TinyLfuCache<CacheKey, Object> cache = caches.get(method);
+        if (cache != null) {
+            return cache;
+        }
+
+        TinyLfuCache<CacheKey, Object> candidate = new TinyLfuCache<>(cachedQuery.maxEntries(), cachedQuery.ttl(), statistics);
+        cache = caches.putIfAbsent(method, candidate);
+        if (cache == null) {
+            cache = candidate;
+            for (String table : cachedQuery.tables()) {
+                String name = normalize(table);
+                Set<TinyLfuCache<CacheKey, Object>> dependents = cachesByTable.get(name);
+                if (dependents == null) {
+                    Set<TinyLfuCache<CacheKey, Object>> set = new CopyOnWriteArraySet<>();
+                    dependents = cachesByTable.putIfAbsent(name, set);
+                    if (dependents == null) {
+                        dependents = set;
+                    }
+                }
+                dependents.add(cache);
+            }
+        }
+        return cache;
+    }
+
+    private void written(@Nonnull String[] tables) {
+        Transactions current = transactions.get();
+        if (tables == ALL_TABLES) {
+            invalidateAll();
+            if (current != null) {
+                current.allTables = true;
+            }
+            return;
+        }
+        for (String table : tables) {
+            invalidateTable(table);
+            if (current != null) {
+                current.tables.add(table);
+            }
+        }
+    }
+
+    @Nullable
+    private static String writtenTable(@Nullable String sql) {
+        if (sql == null) {
+            return null;
+        }
+        Matcher matcher = WRITE_STATEMENT.matcher(sql);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    @Nonnull
+    private static String normalize(@Nonnull String table) {
+        String name = table.replaceAll("[\"`\\[\\]]", "").toLowerCase(Locale.ENGLISH);
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(dot + 1) : name;
+    }
+
+    /**
+     * Cached queries and written tables of a SqlObject type.
+     */
+    private static final class TypeMetadata {
+        private final Map<Method, CachedQuery> cachedQueries;
+        private final Map<Method, String[]> writes;
+        private final boolean proxied;
+
+        private TypeMetadata(@Nonnull Class<?> type) {
+            Map<Method, CachedQuery> queries = new HashMap<>();
+            Map<Method, String[]> tables = new HashMap<>();
+            if (type.isInterface()) {
+                for (Method method : type.getMethods()) {
+                    CachedQuery cachedQuery = method.getAnnotation(CachedQuery.class);
+                    if (cachedQuery != null && isCacheable(method.getReturnType())) {
+                        queries.put(method, cachedQuery);
+                    }
+
+                    if (method.isAnnotationPresent(SqlUpdate.class)) {
+                        tables.put(method, tablesOf(method.getAnnotation(SqlUpdate.class).value()));
+                    } else if (method.isAnnotationPresent(SqlBatch.class)) {
+                        tables.put(method, tablesOf(method.getAnnotation(SqlBatch.class).value()));
+                    } else if (method.isAnnotationPresent(SqlCall.class)) {
+                        tables.put(method, ALL_TABLES);
+                    }
+                }
+            }
+            this.cachedQueries = Collections.unmodifiableMap(queries);
+            this.writes = Collections.unmodifiableMap(tables);
+            this.proxied = !queries.isEmpty() || !tables.isEmpty();
+        }
+
+        private static boolean isCacheable(@Nonnull Class<?> returnType) {
+            // lazily evaluated results are bound to an open cursor
+            return returnType != void.class &&
+                !Iterator.class.isAssignableFrom(returnType) &&
+                !BaseStream.class.isAssignableFrom(returnType);
+        }
+
+        @Nonnull
+        private static String[] tablesOf(@Nullable String sql) {
+            // the SQL may be the name of an externalized statement
+            String table = writtenTable(sql);
+            return table != null ? new String[]{table} : ALL_TABLES;
+        }
+    }
+
+    /**
+     * Handles with an open transaction on a single thread, and the tables written meanwhile.
+     */
+    private static final class Transactions {
+        private final Map<Handle, Boolean> handles = new IdentityHashMap<>();
+        private final Set<String> tables = new HashSet<>();
+        private boolean allTables;
+    }
+
+    private static final class CachingInvocationHandler implements InvocationHandler {
+        private final QueryResultCache owner;
+        private final TypeMetadata metadata;
+        private final Object target;
+
+        private CachingInvocationHandler(@Nonnull QueryResultCache owner, @Nonnull TypeMetadata metadata, @Nonnull Object target) {
+            this.owner = owner;
+            this.metadata = metadata;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return invokeTarget(method, args);
+                }
+            }
+
+            CachedQuery cachedQuery = metadata.cachedQueries.get(method);
+            if (cachedQuery != null && !owner.isInTransaction()) {
+                TinyLfuCache<CacheKey, Object> cache = owner.cacheFor(method, cachedQuery);
+                CacheKey key = new CacheKey(args);
+                boolean[] found = new boolean[1];
+                Object result = cache.get(key, found);
+                if (found[0]) {
+                    return result;
+                }
+                long generation = cache.generation();
+                result = invokeTarget(method, args);
+                cache.put(key, result, generation);
+                return result;
+            }
+
+            Object result = invokeTarget(method, args);
+            String[] tables = metadata.writes.get(method);
+            if (tables != null) {
+                owner.written(tables);
+            }
+            return result;
+        }
+
+        private Object invokeTarget(@Nonnull Method method, @Nullable Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static final class CacheKey {
+        private final Object[] args;
+        private final int hash;
+
+        private CacheKey(@Nullable Object[] args) {
+            this.args = args != null ? args : new Object[0];
+            this.hash = Arrays.deepHashCode(this.args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof CacheKey && hash == ((CacheKey) o).hash && Arrays.deepEquals(args, ((CacheKey) o).args));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -18,11 +18,26 @@
 package org.codehaus.griffon.runtime.jdbi;
 
 import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.jdbi.JdbiMetrics;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.TimingCollector;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionIsolationLevel;
+import org.skife.jdbi.v2.exceptions.CallbackFailedException;
+import org.skife.jdbi.v2.sqlobject.SqlObjectBuilder;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.skife.jdbi.v2.tweak.TransactionHandler;
 
 import javax.sql.DataSource;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
 
 /**
  * @author Andres Almiray
@@ -30,16 +45,40 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class RecordingDBI extends DBIDecorator {
     private AtomicInteger handleCount = new AtomicInteger(0);
+    // callers currently executing work with this DBI, -1 once retired for being idle
+    private final AtomicInteger leases = new AtomicInteger(0);
+    private volatile long lastUsed = System.nanoTime();
+    // released once a retired DBI has been removed from storage
+    private final CountDownLatch removal = new CountDownLatch(1);
+    private StatementTimingCollector statementTimingCollector;
+    private SlowQueryLog slowQueryLog;
+    private final BulkWriteStatistics bulkWriteStatistics = new BulkWriteStatistics();
+    private final ConnectionAcquisitionStatistics acquisitionStatistics = new ConnectionAcquisitionStatistics();
+    private final RetryStatistics retryStatistics = new RetryStatistics();
+    private volatile boolean compactRows;
+    private volatile RoutingStatistics routingStatistics;
+    private volatile QueryResultCache queryResultCache;
+    private volatile HandleLeakDetector leakDetector;
+    private volatile ConcurrencyLimiter concurrencyLimiter;
+    private volatile CircuitBreaker circuitBreaker;
+    private volatile HealthChecker healthChecker;
+    private final ThreadLocal<UnitOfWork> unitOfWork = new ThreadLocal<>();
+    private final LongAdder unitOfWorkOpens = new LongAdder();
+    private final LongAdder unitOfWorkJoins = new LongAdder();
+    private String datasourceName;
+    private volatile JdbiMetrics metrics;
 
     public RecordingDBI(@Nonnull DataSource dataSource, @Nonnull DBI delegate) {
         super(dataSource, delegate);
     }
 
     public int increaseHandleCount() {
+        lastUsed = System.nanoTime();
         return handleCount.incrementAndGet();
     }
 
     public int decreaseHandleCount() {
+        lastUsed = System.nanoTime();
         return handleCount.decrementAndGet();
     }
 
@@ -47,15 +86,445 @@ public class RecordingDBI extends DBIDecorator {
         return handleCount.get();
     }
 
+    /**
+     * Marks this DBI as in use until {@link #release()} is called, preventing its retirement.
+     *
+     * @return {@code false} if this DBI has been retired already.
+     */
+    public boolean retain() {
+        while (true) {
+            int current = leases.get();
+            if (current < 0) {
+                return false;
+            }
+            if (leases.compareAndSet(current, current + 1)) {
+                lastUsed = System.nanoTime();
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        lastUsed = System.nanoTime();
+        leases.decrementAndGet();
+    }
+
+    /**
+     * Retires this DBI if no caller retains it, it has no open handles and it has not been used for the
+     * given time. A retired DBI cannot be retained anymore and is expected to be destroyed.
+     */
+    public boolean retire(long idleTimeoutMillis) {
+        if (handleCount.get() > 0 || System.nanoTime() - lastUsed < TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis)) {
+            return false;
+        }
+        if (!leases.compareAndSet(0, -1)) {
+            return false;
+        }
+        if (handleCount.get() > 0) {
+            // a handle was opened directly through the DBI meanwhile
+            leases.set(0);
+            return false;
+        }
+        return true;
+    }
+
+    public boolean isRetired() {
+        return leases.get() < 0;
+    }
+
+    /**
+     * Signals callers blocked in {@link #awaitRemoval()} that this retired DBI is no longer stored.
+     */
+    public void removed() {
+        removal.countDown();
+    }
+
+    /**
+     * Blocks until {@link #removed()} is called, after which a new DBI may be created in place of this one.
+     */
+    public void awaitRemoval() throws InterruptedException {
+        removal.await();
+    }
+
+    public boolean isCompactRows() {
+        return compactRows;
+    }
+
+    /**
+     * Whether queries created by handles of this DBI map rows with {@code CompactRowMapper}.
+     */
+    public void setCompactRows(boolean compactRows) {
+        this.compactRows = compactRows;
+    }
+
+    @Nullable
+    public JdbiMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reports handles, statements, transactions and batches of this DBI to the given metrics.
+     */
+    public void setMetrics(@Nonnull String datasourceName, @Nullable JdbiMetrics metrics) {
+        TransactionHandler current = getTransactionHandler();
+        this.datasourceName = datasourceName;
+        this.metrics = metrics;
+        if (statementTimingCollector != null) {
+            statementTimingCollector.setMetrics(datasourceName, metrics);
+        }
+        super.setTransactionHandler(track(current));
+    }
+
+    @Override
+    public void setTransactionHandler(TransactionHandler handler) {
+        // keep tracking transactions, wrapping the given handler
+        super.setTransactionHandler(track(handler));
+    }
+
+    @Override
+    public TransactionHandler getTransactionHandler() {
+        TransactionHandler handler = super.getTransactionHandler();
+        if (handler instanceof MetricsTransactionHandler) {
+            handler = ((MetricsTransactionHandler) handler).getDelegate();
+        }
+        if (handler instanceof QueryCacheTransactionHandler) {
+            handler = ((QueryCacheTransactionHandler) handler).getDelegate();
+        }
+        return handler;
+    }
+
+    @Nonnull
+    private TransactionHandler track(@Nonnull TransactionHandler handler) {
+        QueryResultCache cache = queryResultCache;
+        if (cache != null) {
+            handler = new QueryCacheTransactionHandler(handler, cache);
+        }
+        JdbiMetrics m = metrics;
+        return m != null ? new MetricsTransactionHandler(handler, datasourceName, m) : handler;
+    }
+
+    /**
+     * Records a JDBC batch of {@code size} rows executed by a bulk operation.
+     */
+    public void batchExecuted(int size) {
+        bulkWriteStatistics.batchExecuted(size);
+        JdbiMetrics m = metrics;
+        if (m != null) {
+            m.batchExecuted(datasourceName, size);
+        }
+    }
+
+    @Nullable
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Bounds the number of callers of {@code JdbiHandler} working with this DBI at the same time.
+     */
+    public void setConcurrencyLimiter(@Nullable ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    @Nullable
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Makes callers of {@code JdbiHandler} fail fast while this DBI's datasource is unavailable.
+     */
+    public void setCircuitBreaker(@Nullable CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Nullable
+    public HealthChecker getHealthChecker() {
+        return healthChecker;
+    }
+
+    public void setHealthChecker(@Nullable HealthChecker healthChecker) {
+        this.healthChecker = healthChecker;
+    }
+
+    @Nullable
+    public HandleLeakDetector getLeakDetector() {
+        return leakDetector;
+    }
+
+    public void setLeakDetector(@Nullable HandleLeakDetector leakDetector) {
+        this.leakDetector = leakDetector;
+    }
+
+    @Nullable
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * Enables results of {@code @CachedQuery} methods to be cached for SqlObjects obtained from this DBI.
+     */
+    public void setQueryResultCache(@Nullable QueryResultCache queryResultCache) {
+        TransactionHandler current = getTransactionHandler();
+        this.queryResultCache = queryResultCache;
+        super.setTransactionHandler(track(current));
+    }
+
+    public void invalidateQueryCache(@Nullable String sql) {
+        QueryResultCache cache = queryResultCache;
+        if (cache != null) {
+            cache.invalidate(sql);
+        }
+    }
+
+    @Nullable
+    public RoutingStatistics getRoutingStatistics() {
+        return routingStatistics;
+    }
+
+    public void setRoutingStatistics(@Nullable RoutingStatistics routingStatistics) {
+        this.routingStatistics = routingStatistics;
+    }
+
+    @Nonnull
+    public ConnectionAcquisitionStatistics getAcquisitionStatistics() {
+        return acquisitionStatistics;
+    }
+
+    @Nonnull
+    public BulkWriteStatistics getBulkWriteStatistics() {
+        return bulkWriteStatistics;
+    }
+
+    @Nonnull
+    public RetryStatistics getRetryStatistics() {
+        return retryStatistics;
+    }
+
+    @Nullable
+    public StatementTimingCollector getStatementTimingCollector() {
+        return statementTimingCollector;
+    }
+
+    public void setStatementTimingCollector(@Nullable StatementTimingCollector statementTimingCollector) {
+        TimingCollector current = getTimingCollector();
+        this.statementTimingCollector = statementTimingCollector;
+        if (statementTimingCollector != null && metrics != null) {
+            statementTimingCollector.setMetrics(datasourceName, metrics);
+        }
+        chainTimingCollectors(current);
+    }
+
+    @Nullable
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /**
+     * Reports statements slower than the log's threshold. The log is chained after the statement timings.
+     */
+    public void setSlowQueryLog(@Nullable SlowQueryLog slowQueryLog) {
+        TimingCollector current = getTimingCollector();
+        this.slowQueryLog = slowQueryLog;
+        chainTimingCollectors(current);
+    }
+
+    @Override
+    public void setTimingCollector(TimingCollector timingCollector) {
+        // keep recording statement timings and slow statements, chaining the given collector
+        chainTimingCollectors(timingCollector);
+    }
+
+    @Override
+    public TimingCollector getTimingCollector() {
+        if (slowQueryLog != null) {
+            return collectorOrNop(slowQueryLog.getDelegate());
+        }
+        if (statementTimingCollector != null) {
+            return collectorOrNop(statementTimingCollector.getDelegate());
+        }
+        return super.getTimingCollector();
+    }
+
+    private void chainTimingCollectors(@Nullable TimingCollector timingCollector) {
+        TimingCollector chain = timingCollector;
+        if (slowQueryLog != null) {
+            slowQueryLog.setDelegate(chain);
+            chain = slowQueryLog;
+        }
+        if (statementTimingCollector != null) {
+            statementTimingCollector.setDelegate(chain);
+            chain = statementTimingCollector;
+        }
+        super.setTimingCollector(chain);
+    }
+
+    @Nonnull
+    private static TimingCollector collectorOrNop(@Nullable TimingCollector timingCollector) {
+        return timingCollector != null ? timingCollector : TimingCollector.NOP_TIMING_COLLECTOR;
+    }
+
+    /**
+     * Executes the given work binding a single handle of this DBI to the current thread. Handles
+     * obtained from this DBI by the same thread meanwhile, including those behind {@code withHandle()},
+     * {@code inTransaction()} and SqlObjects, share it. The handle is opened when first needed and
+     * closed once the work completes; a unit of work started within another one joins it.
+     */
+    public <R> R inUnitOfWork(@Nonnull Callable<R> work) throws Exception {
+        requireNonNull(work, "Argument 'work' must not be null");
+        if (unitOfWork.get() != null) {
+            return work.call();
+        }
+
+        UnitOfWork current = new UnitOfWork();
+        unitOfWork.set(current);
+        try {
+            return work.call();
+        } finally {
+            unitOfWork.remove();
+            if (current.handle != null) {
+                current.handle.close();
+            }
+        }
+    }
+
+    public boolean isInUnitOfWork() {
+        return unitOfWork.get() != null;
+    }
+
+    /**
+     * Number of handles opened by units of work.
+     */
+    public long getUnitOfWorkOpens() {
+        return unitOfWorkOpens.sum();
+    }
+
+    /**
+     * Number of times a unit of work's handle was handed out instead of opening a new one.
+     */
+    public long getUnitOfWorkJoins() {
+        return unitOfWorkJoins.sum();
+    }
+
     @Override
     public Handle open() {
-        Handle handle = super.open();
+        UnitOfWork current = unitOfWork.get();
+        if (current == null) {
+            return openHandle();
+        }
+
+        if (current.handle == null) {
+            current.handle = (LinkedHandle) openHandle();
+            unitOfWorkOpens.increment();
+        } else {
+            unitOfWorkJoins.increment();
+        }
+        return new JoinedHandle(current.handle);
+    }
+
+    @Nonnull
+    private Handle openHandle() {
+        long start = System.nanoTime();
+        acquisitionStatistics.started();
+        Handle handle;
+        try {
+            handle = super.open();
+        } catch (RuntimeException | Error e) {
+            acquisitionStatistics.failed(e);
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        acquisitionStatistics.acquired(elapsed);
+        JdbiMetrics m = metrics;
+        if (m != null) {
+            m.handleOpened(datasourceName, elapsed);
+        }
         increaseHandleCount();
         return wrap(handle);
     }
 
+    // the following methods obtain their handles from open() so that every handle is recorded
+
+    @Override
+    public <ReturnType> ReturnType withHandle(HandleCallback<ReturnType> callback) throws CallbackFailedException {
+        Handle handle = open();
+        try {
+            return callback.withHandle(handle);
+        } catch (Exception e) {
+            throw new CallbackFailedException(e);
+        } finally {
+            handle.close();
+        }
+    }
+
+    @Override
+    public <ReturnType> ReturnType inTransaction(TransactionCallback<ReturnType> callback) throws CallbackFailedException {
+        Handle handle = open();
+        try {
+            return handle.inTransaction(callback);
+        } finally {
+            handle.close();
+        }
+    }
+
+    @Override
+    public <ReturnType> ReturnType inTransaction(TransactionIsolationLevel isolation, TransactionCallback<ReturnType> callback) throws CallbackFailedException {
+        Handle handle = open();
+        try {
+            return handle.inTransaction(isolation, callback);
+        } finally {
+            handle.close();
+        }
+    }
+
+    @Override
+    public <SqlObjectType> SqlObjectType open(Class<SqlObjectType> sqlObjectType) {
+        return cached(sqlObjectType, SqlObjectBuilder.open(this, sqlObjectType));
+    }
+
+    @Override
+    public <SqlObjectType> SqlObjectType onDemand(Class<SqlObjectType> sqlObjectType) {
+        return cached(sqlObjectType, SqlObjectBuilder.onDemand(this, sqlObjectType));
+    }
+
+    @Override
+    public void close(Object sqlObject) {
+        super.close(QueryResultCache.unwrap(sqlObject));
+    }
+
+    @Nonnull
+    <SqlObjectType> SqlObjectType cached(@Nonnull Class<SqlObjectType> sqlObjectType, @Nonnull SqlObjectType sqlObject) {
+        QueryResultCache cache = queryResultCache;
+        return cache != null ? cache.wrap(sqlObjectType, sqlObject) : sqlObject;
+    }
+
+    void handleClosed(@Nullable Object leakToken, long openedAt) {
+        decreaseHandleCount();
+        JdbiMetrics m = metrics;
+        if (m != null) {
+            m.handleClosed(datasourceName, System.nanoTime() - openedAt);
+        }
+        HandleLeakDetector detector = leakDetector;
+        if (detector != null && leakToken != null) {
+            detector.untrack(leakToken);
+        }
+    }
+
+    private static final class UnitOfWork {
+        private LinkedHandle handle;
+    }
+
     @Nonnull
     private Handle wrap(@Nonnull Handle handle) {
-        return handle instanceof LinkedHandle ? handle : new LinkedHandle(handle, this);
+        if (handle instanceof LinkedHandle) {
+            return handle;
+        }
+
+        LinkedHandle linkedHandle = new LinkedHandle(handle, this);
+        HandleLeakDetector detector = leakDetector;
+        if (detector != null) {
+            linkedHandle.setLeakToken(detector.track(linkedHandle));
+        }
+        return linkedHandle;
     }
 }
@@ -0,0 +1,77 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outcome of transactions executed with a {@code RetryPolicy} on a single datasource. Wasted time
+ * adds up the duration of failed attempts that were retried and the backoff before retrying them.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class RetryStatistics {
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+    private final LongAdder wastedNanos = new LongAdder();
+
+    public void retried(long wastedNanos) {
+        retries.increment();
+        this.wastedNanos.add(wastedNanos);
+    }
+
+    /**
+     * A transaction succeeded after being retried at least once.
+     */
+    public void recovered() {
+        recovered.increment();
+    }
+
+    /**
+     * A transaction kept failing with retryable errors until it ran out of attempts.
+     */
+    public void exhausted() {
+        exhausted.increment();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getRecovered() {
+        return recovered.sum();
+    }
+
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+
+    public long getWastedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(wastedNanos.sum());
+    }
+
+    public void reset() {
+        retries.reset();
+        recovered.reset();
+        exhausted.reset();
+        wastedNanos.reset();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.exceptions.CallbackFailedException;
+import org.skife.jdbi.v2.tweak.HandleCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Sends read-only work to the replica with the fewest open handles, everything else to the primary.
+ * Replicas are datasources on their own right, resolved by name the first time they are needed; a
+ * replica that cannot be resolved is skipped and not resolved again until the retry interval elapses.
+ * Replicas whose circuit breaker rejects calls are skipped as well. Read-only work goes to the primary
+ * when no replica is available.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class RoutingDBI extends DBIDecorator {
+    public static final long DEFAULT_RETRY_INTERVAL = 5000L;
+    private static final Logger LOG = LoggerFactory.getLogger(RoutingDBI.class);
+
+    private final String name;
+    private final List<String> replicaNames;
+    private final Map<String, Replica> replicas;
+    private final Function<String, DBI> resolver;
+    private final long retryIntervalNanos;
+    private final RoutingStatistics statistics = new RoutingStatistics();
+
+    public RoutingDBI(@Nonnull String name, @Nonnull DBIDecorator primary, @Nonnull List<String> replicaNames, @Nonnull Function<String, DBI> resolver) {
+        this(name, primary, replicaNames, resolver, DEFAULT_RETRY_INTERVAL);
+    }
+
+    /**
+     * @param retryIntervalMillis how long a replica that could not be resolved is skipped before resolving it again.
+     */
+    public RoutingDBI(@Nonnull String name, @Nonnull DBIDecorator primary, @Nonnull List<String> replicaNames, @Nonnull Function<String, DBI> resolver, long retryIntervalMillis) {
+        super(primary.getDataSource(), primary);
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+        this.replicaNames = Collections.unmodifiableList(new ArrayList<>(requireNonNull(replicaNames, "Argument 'replicaNames' must not be null")));
+        this.resolver = requireNonNull(resolver, "Argument 'resolver' must not be null");
+        this.retryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, retryIntervalMillis));
+
+        Map<String, Replica> map = new LinkedHashMap<>();
+        for (String replicaName : this.replicaNames) {
+            map.put(replicaName, new Replica());
+        }
+        this.replicas = Collections.unmodifiableMap(map);
+
+        RecordingDBI recordingDBI = unwrap(primary, RecordingDBI.class);
+        if (recordingDBI != null) {
+            recordingDBI.setRoutingStatistics(statistics);
+        }
+    }
+
+    @Nonnull
+    public DBI getPrimary() {
+        return getDelegate();
+    }
+
+    @Nonnull
+    public List<String> getReplicaNames() {
+        return replicaNames;
+    }
+
+    @Nonnull
+    public RoutingStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Chooses the target for read-only work.
+     */
+    @Nonnull
+    public DBI readOnly() {
+        if (replicaNames.isEmpty()) {
+            statistics.fellBack();
+            return getPrimary();
+        }
+
+        DBI target = null;
+        String targetName = null;
+        int fewest = Integer.MAX_VALUE;
+        // start at a random replica so that ties are spread evenly
+        int offset = ThreadLocalRandom.current().nextInt(replicaNames.size());
+        for (int i = 0; i < replicaNames.size(); i++) {
+            String replicaName = replicaNames.get((offset + i) % replicaNames.size());
+            DBI replica = resolve(replicaName);
+            if (replica == null) {
+                continue;
+            }
+            RecordingDBI recordingDBI = unwrap(replica, RecordingDBI.class);
+            CircuitBreaker breaker = recordingDBI != null ? recordingDBI.getCircuitBreaker() : null;
+            if (breaker != null && breaker.isRejecting()) {
+                // a replica that is down has no open handles, it would attract every call otherwise
+                continue;
+            }
+            int handles = recordingDBI != null ? recordingDBI.getHandleCount() : 0;
+            if (handles < fewest) {
+                fewest = handles;
+                target = replica;
+                targetName = replicaName;
+            }
+        }
+
+        if (target == null) {
+            statistics.fellBack();
+            return getPrimary();
+        }
+        statistics.routed(targetName);
+        return target;
+    }
+
+    @Nonnull
+    public Handle openReadOnly() {
+        return readOnly().open();
+    }
+
+    public <ReturnType> ReturnType withReadOnlyHandle(@Nonnull HandleCallback<ReturnType> callback) throws CallbackFailedException {
+        return readOnly().withHandle(callback);
+    }
+
+    public <ReturnType> ReturnType inReadOnlyTransaction(@Nonnull TransactionCallback<ReturnType> callback) throws CallbackFailedException {
+        return readOnly().inTransaction(callback);
+    }
+
+    private DBI resolve(@Nonnull String replicaName) {
+        Replica replica = replicas.get(replicaName);
+        if (!replica.available.get()) {
+            // resolving may wait for a whole pool initialization, a single caller retries once the interval elapses
+            long retryAt = replica.retryAt.get();
+            long now = System.nanoTime();
+            if (now - retryAt < 0L || !replica.retryAt.compareAndSet(retryAt, now + retryIntervalNanos)) {
+                return null;
+            }
+        }
+
+        try {
+            DBI dbi = resolver.apply(replicaName);
+            if (replica.available.compareAndSet(false, true)) {
+                LOG.info("Replica '{}' of datasource '{}' is available again", replicaName, name);
+            }
+            return dbi;
+        } catch (RuntimeException e) {
+            replica.retryAt.set(System.nanoTime() + retryIntervalNanos);
+            if (replica.available.compareAndSet(true, false)) {
+                LOG.warn("Replica '{}' of datasource '{}' is not available, retrying every {}ms", replicaName, name, TimeUnit.NANOSECONDS.toMillis(retryIntervalNanos), e);
+            } else {
+                LOG.debug("Replica '{}' of datasource '{}' is still not available", replicaName, name, e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Resolution state of a single replica.
+     */
+    private static final class Replica {
+        private final AtomicBoolean available = new AtomicBoolean(true);
+        private final AtomicLong retryAt = new AtomicLong();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of read-only requests routed to each target of a {@code RoutingDBI}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class RoutingStatistics {
+    private final ConcurrentMap<String, LongAdder> routes = new ConcurrentHashMap<>();
+    private final LongAdder fallbacks = new LongAdder();
+
+    public void routed(@Nonnull String target) {
+        LongAdder counter = routes.get(target);
+        if (counter == null) {
+            LongAdder candidate = new LongAdder();
+            counter = routes.putIfAbsent(target, candidate);
+            if (counter == null) {
+                counter = candidate;
+            }
+        }
+        counter.increment();
+    }
+
+    /**
+     * A read-only request was sent to the primary as no replica was available.
+     */
+    public void fellBack() {
+        fallbacks.increment();
+    }
+
+    @Nonnull
+    public Map<String, Long> getRoutes() {
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        for (Map.Entry<String, LongAdder> entry : routes.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        return snapshot;
+    }
+
+    public long getFallbacks() {
+        return fallbacks.sum();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Consistent hash ring mapping shard keys to the datasources of a shard group. Every datasource is
+ * placed on the ring at as many points (virtual nodes) as it is given, a key belongs to the first
+ * point found clockwise from its hash. Adding or removing a datasource only moves the keys of its
+ * own points, and datasources with more points receive proportionally more keys.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class ShardRing {
+    private final String shardGroup;
+    private final List<String> datasourceNames;
+    private final long[] points;
+    private final String[] owners;
+
+    ShardRing(@Nonnull String shardGroup, @Nonnull Map<String, Integer> virtualNodes) {
+        this.shardGroup = requireNonNull(shardGroup, "Argument 'shardGroup' must not be null");
+        requireNonNull(virtualNodes, "Argument 'virtualNodes' must not be null");
+        if (virtualNodes.isEmpty()) {
+            throw new IllegalArgumentException("Shard group '" + shardGroup + "' has no datasources");
+        }
+
+        // sorted by hash; on the unlikely collision the first datasource in name order keeps the point
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (Map.Entry<String, Integer> entry : new TreeMap<>(virtualNodes).entrySet()) {
+            for (int i = 0; i < Math.max(1, entry.getValue()); i++) {
+                Long point = hash(entry.getKey() + "#" + i);
+                if (!ring.containsKey(point)) {
+                    ring.put(point, entry.getKey());
+                }
+            }
+        }
+
+        points = new long[ring.size()];
+        owners = new String[ring.size()];
+        int i = 0;
+        for (Map.Entry<Long, String> entry : ring.entrySet()) {
+            points[i] = entry.getKey();
+            owners[i++] = entry.getValue();
+        }
+        datasourceNames = Collections.unmodifiableList(new ArrayList<>(new TreeMap<>(virtualNodes).keySet()));
+    }
+
+    @Nonnull
+    String getShardGroup() {
+        return shardGroup;
+    }
+
+    @Nonnull
+    List<String> getDatasourceNames() {
+        return datasourceNames;
+    }
+
+    @Nonnull
+    String resolve(@Nonnull Object shardKey) {
+        requireNonNull(shardKey, "Argument 'shardKey' must not be null");
+        int index = Arrays.binarySearch(points, hash(String.valueOf(shardKey)));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * 64-bit FNV-1a followed by the MurmurHash3 finalizer, which spreads similar keys such as
+     * sequential tenant ids across the whole ring.
+     */
+    private static long hash(@Nonnull String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb3fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Guarantees that at most one computation per key is in flight at any given time. Concurrent
+ * callers for the same key wait for the outcome of the computation already in progress while
+ * callers for other keys proceed unhindered.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class SingleFlight<T> {
+    private final ConcurrentMap<String, Flight<T>> flights = new ConcurrentHashMap<>();
+
+    @Nonnull
+    public T execute(@Nonnull String key, @Nonnull Supplier<T> supplier) {
+        requireNonBlank(key, "Argument 'key' must not be blank");
+        requireNonNull(supplier, "Argument 'supplier' must not be null");
+
+        Flight<T> flight = new Flight<>();
+        Flight<T> inFlight = flights.putIfAbsent(key, flight);
+        if (inFlight != null) {
+            return inFlight.await(key);
+        }
+
+        try {
+            T value = requireNonNull(supplier.get(), "Computation for '" + key + "' returned null");
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    private static final class Flight<T> extends CompletableFuture<T> {
+        private final Thread owner = Thread.currentThread();
+
+        @Nonnull
+        private T await(@Nonnull String key) {
+            if (owner == Thread.currentThread()) {
+                throw new IllegalStateException("Recursive computation detected for '" + key + "'");
+            }
+
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.codehaus.griffon.runtime.jdbi.monitor.SlowQueryInfo;
+import org.skife.jdbi.v2.Binding;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TimingCollector;
+import org.skife.jdbi.v2.tweak.RewrittenStatement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reports statements of a single datasource that take longer than a threshold. Slow statements are
+ * placed in a bounded buffer and logged by a dedicated writer thread, started with the first slow
+ * statement, so the thread that executed the statement never blocks on logging; statements that find
+ * the buffer full are dropped and counted. Buffered statements are snapshots that do not reference the
+ * {@code StatementContext}, which belongs to the statement and is reused or discarded once it completes.
+ * <p>
+ * Bound values are rendered for a fraction of slow statements given by the bind sample rate, as they
+ * may contain sensitive data. When an explain prefix such as {@code EXPLAIN } is given the writer thread
+ * also captures the plan of slow queries, binding the same values on a connection of its own. A plan
+ * is captured at most once per statement and {@value #EXPLAIN_INTERVAL_SECONDS} seconds.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class SlowQueryLog implements TimingCollector {
+    private static final Logger LOG = LoggerFactory.getLogger(SlowQueryLog.class);
+    private static final int MAX_BINDINGS_LENGTH = 1024;
+    private static final int MAX_RECENT = 100;
+    private static final int MAX_EXPLAINED = 256;
+    private static final long EXPLAIN_INTERVAL_SECONDS = 60;
+
+    private final String datasourceName;
+    private final DBIDecorator dbi;
+    private final long thresholdNanos;
+    private final double bindSampleRate;
+    private final String explainPrefix;
+    private final BlockingQueue<Entry> buffer;
+    private final Deque<SlowQueryInfo> recent = new ArrayDeque<>();
+    private final Map<String, Long> explained = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_EXPLAINED;
+        }
+    };
+    private final LongAdder slowQueries = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean running = true;
+    private volatile TimingCollector delegate;
+
+    /**
+     * @param thresholdMillis statements taking at least this long are reported.
+     * @param bindSampleRate  fraction of slow statements whose bound values are reported, from 0 to 1.
+     * @param explainPrefix   prefix turning a query into a request for its plan; {@code null} disables plans.
+     * @param bufferSize      maximum number of slow statements waiting to be written.
+     */
+    public SlowQueryLog(@Nonnull String datasourceName, @Nonnull DBIDecorator dbi, long thresholdMillis, double bindSampleRate, @Nullable String explainPrefix, int bufferSize) {
+        this.datasourceName = requireNonNull(datasourceName, "Argument 'datasourceName' must not be null");
+        this.dbi = requireNonNull(dbi, "Argument 'dbi' must not be null");
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, thresholdMillis));
+        this.bindSampleRate = Math.max(0d, Math.min(1d, bindSampleRate));
+        this.explainPrefix = explainPrefix != null && !explainPrefix.trim().isEmpty() ? explainPrefix.trim() + " " : null;
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "jdbi-slow-query-" + datasourceName);
+        writer.setDaemon(true);
+    }
+
+    @Nullable
+    public TimingCollector getDelegate() {
+        return delegate;
+    }
+
+    public void setDelegate(@Nullable TimingCollector delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void collect(long elapsedTime, StatementContext ctx) {
+        if (elapsedTime >= thresholdNanos && running) {
+            slowQueries.increment();
+            if (!buffer.offer(snapshot(elapsedTime, ctx))) {
+                dropped.increment();
+            }
+            if (started.compareAndSet(false, true)) {
+                writer.start();
+            }
+        }
+
+        TimingCollector collector = delegate;
+        if (collector != null) {
+            collector.collect(elapsedTime, ctx);
+        }
+    }
+
+    /**
+     * Number of statements that took longer than the threshold, including dropped ones.
+     */
+    public long getSlowQueries() {
+        return slowQueries.sum();
+    }
+
+    /**
+     * Number of slow statements that were not logged because the buffer was full.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * The most recently logged slow statements, newest first.
+     */
+    @Nonnull
+    public SlowQueryInfo[] getRecentSlowQueries() {
+        synchronized (recent) {
+            return recent.toArray(new SlowQueryInfo[recent.size()]);
+        }
+    }
+
+    public void reset() {
+        slowQueries.reset();
+        dropped.reset();
+        synchronized (recent) {
+            recent.clear();
+        }
+    }
+
+    /**
+     * Stops accepting slow statements and waits for the writer thread to log the pending ones.
+     */
+    public void close() {
+        running = false;
+        if (!started.get()) {
+            return;
+        }
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer.interrupt();
+    }
+
+    private boolean sampleBindings() {
+        return bindSampleRate > 0d && (bindSampleRate >= 1d || ThreadLocalRandom.current().nextDouble() < bindSampleRate);
+    }
+
+    @Nonnull
+    private Entry snapshot(long elapsedTime, @Nonnull StatementContext ctx) {
+        String sql = ctx.getRewrittenSql() != null ? ctx.getRewrittenSql() : ctx.getRawSql();
+        String bindings = sampleBindings() ? renderBindings(ctx.getBinding()) : null;
+        // the binding is kept only for statements that may be explained
+        boolean explainable = isQuery(sql);
+        return new Entry(elapsedTime, StatementTimingCollector.nameOf(ctx), sql, bindings,
+            explainable ? (ctx.getLocatedSql() != null ? ctx.getLocatedSql() : ctx.getRawSql()) : null,
+            explainable ? ctx.getBinding() : null);
+    }
+
+    private void drain() {
+        while (running || !buffer.isEmpty()) {
+            try {
+                Entry entry = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (entry != null) {
+                    write(entry);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOG.warn("Could not log slow statement on datasource '" + datasourceName + "'", e);
+            }
+        }
+    }
+
+    private void write(@Nonnull Entry entry) {
+        String name = entry.name;
+        String sql = entry.sql;
+        String bindings = entry.bindings;
+        String plan = entry.locatedSql != null && shouldExplain(name) ? explain(entry.locatedSql, entry.binding) : null;
+        double elapsed = entry.elapsedNanos / 1_000_000d;
+
+        SlowQueryInfo info = new SlowQueryInfo(entry.timestamp, name, sql, elapsed, bindings, plan);
+        synchronized (recent) {
+            recent.addFirst(info);
+            if (recent.size() > MAX_RECENT) {
+                recent.removeLast();
+            }
+        }
+
+        StringBuilder message = new StringBuilder("Slow statement on datasource '")
+            .append(datasourceName).append("' took ").append(String.format(Locale.ROOT, "%.3f", elapsed)).append("ms: ").append(sql);
+        if (bindings != null) {
+            message.append("\n  bindings: ").append(bindings);
+        }
+        if (plan != null) {
+            message.append("\n  plan:\n").append(plan);
+        }
+        LOG.warn(message.toString());
+    }
+
+    @Nullable
+    private static String renderBindings(@Nullable Binding binding) {
+        if (binding == null) {
+            return null;
+        }
+        String text = binding.toString();
+        return text.length() > MAX_BINDINGS_LENGTH ? text.substring(0, MAX_BINDINGS_LENGTH) + "..." : text;
+    }
+
+    private boolean isQuery(@Nullable String sql) {
+        if (explainPrefix == null || sql == null) {
+            return false;
+        }
+        // only queries are explained, some databases execute the statement being explained
+        String statement = sql.trim().toLowerCase(Locale.ROOT);
+        return statement.startsWith("select") || statement.startsWith("with");
+    }
+
+    private boolean shouldExplain(@Nonnull String name) {
+        long now = System.nanoTime();
+        Long last = explained.get(name);
+        if (last != null && now - last < TimeUnit.SECONDS.toNanos(EXPLAIN_INTERVAL_SECONDS)) {
+            return false;
+        }
+        explained.put(name, now);
+        return true;
+    }
+
+    @Nullable
+    private String explain(@Nonnull String sql, @Nullable Binding binding) {
+        try (Connection connection = dbi.getDataSource().getConnection()) {
+            // the context of the statement is gone, rewriters only use it to report errors
+            RewrittenStatement rewritten = dbi.getStatementRewriter().rewrite(sql, binding, null);
+            try (PreparedStatement statement = connection.prepareStatement(explainPrefix + rewritten.getSql())) {
+                rewritten.bind(binding, statement);
+                try (ResultSet rs = statement.executeQuery()) {
+                    StringBuilder plan = new StringBuilder();
+                    int columns = rs.getMetaData().getColumnCount();
+                    while (rs.next()) {
+                        plan.append("    ");
+                        for (int i = 1; i <= columns; i++) {
+                            if (i > 1) {
+                                plan.append(" | ");
+                            }
+                            plan.append(rs.getString(i));
+                        }
+                        plan.append('\n');
+                    }
+                    return plan.toString();
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            LOG.debug("Could not explain slow statement on datasource '" + datasourceName + "'", e);
+            return null;
+        }
+    }
+
+    private static final class Entry {
+        private final long timestamp = System.currentTimeMillis();
+        private final long elapsedNanos;
+        private final String name;
+        private final String sql;
+        private final String bindings;
+        private final String locatedSql;
+        private final Binding binding;
+
+        private Entry(long elapsedNanos, @Nonnull String name, @Nullable String sql, @Nullable String bindings, @Nullable String locatedSql, @Nullable Binding binding) {
+            this.elapsedNanos = elapsedNanos;
+            this.name = name;
+            this.sql = sql;
+            this.bindings = bindings;
+            this.locatedSql = locatedSql;
+            this.binding = binding;
+        }
+    }
+}
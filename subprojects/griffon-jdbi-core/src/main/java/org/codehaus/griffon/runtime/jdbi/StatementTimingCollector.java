@@ -0,0 +1,157 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.jdbi.JdbiMetrics;
+import org.codehaus.griffon.runtime.jdbi.monitor.LatencyHistogram;
+import org.codehaus.griffon.runtime.jdbi.monitor.LatencyStatistics;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.TimingCollector;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps a {@code LatencyHistogram} per statement. Statements issued by SqlObjects are keyed
+ * by their method and named {@code Type.method}; any other statement is keyed by its raw SQL.
+ * Once {@code maxStatements} distinct statements have been seen further ones are aggregated
+ * under {@value #OTHER_STATEMENTS}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class StatementTimingCollector implements TimingCollector {
+    public static final String OTHER_STATEMENTS = "<other>";
+
+    private final ConcurrentMap<Object, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final LatencyHistogram others = new LatencyHistogram(OTHER_STATEMENTS);
+    private final int maxStatements;
+    private volatile TimingCollector delegate;
+    private String datasourceName;
+    private volatile JdbiMetrics metrics;
+
+    public StatementTimingCollector(int maxStatements) {
+        this.maxStatements = maxStatements;
+    }
+
+    @Nullable
+    public TimingCollector getDelegate() {
+        return delegate;
+    }
+
+    public void setDelegate(@Nullable TimingCollector delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Forwards every timing to the given metrics, named after the statement's histogram.
+     */
+    public void setMetrics(@Nonnull String datasourceName, @Nullable JdbiMetrics metrics) {
+        this.datasourceName = datasourceName;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void collect(long elapsedTime, StatementContext ctx) {
+        LatencyHistogram histogram = histogramFor(ctx);
+        histogram.recordNanos(elapsedTime);
+
+        JdbiMetrics m = metrics;
+        if (m != null) {
+            m.statementExecuted(datasourceName, histogram.getName(), elapsedTime);
+        }
+
+        TimingCollector collector = delegate;
+        if (collector != null) {
+            collector.collect(elapsedTime, ctx);
+        }
+    }
+
+    @Nonnull
+    public LatencyStatistics[] getStatistics() {
+        List<LatencyStatistics> statistics = new ArrayList<>(histograms.size() + 1);
+        for (LatencyHistogram histogram : histograms.values()) {
+            statistics.add(histogram.snapshot());
+        }
+        if (others.getCount() > 0) {
+            statistics.add(others.snapshot());
+        }
+        Collections.sort(statistics, new Comparator<LatencyStatistics>() {
+            @Override
+            public int compare(LatencyStatistics a, LatencyStatistics b) {
+                return Double.compare(b.getP99(), a.getP99());
+            }
+        });
+        return statistics.toArray(new LatencyStatistics[statistics.size()]);
+    }
+
+    @Nullable
+    public LatencyStatistics getStatistics(@Nonnull String name) {
+        if (OTHER_STATEMENTS.equals(name)) {
+            return others.snapshot();
+        }
+        for (LatencyHistogram histogram : histograms.values()) {
+            if (histogram.getName().equals(name)) {
+                return histogram.snapshot();
+            }
+        }
+        return null;
+    }
+
+    public void reset() {
+        histograms.clear();
+        others.reset();
+    }
+
+    @Nonnull
+    private LatencyHistogram histogramFor(@Nonnull StatementContext ctx) {
+        Object key = ctx.getSqlObjectMethod() != null ? ctx.getSqlObjectMethod() : ctx.getRawSql();
+        if (key == null) {
+            return others;
+        }
+
+        LatencyHistogram histogram = histograms.get(key);
+        if (histogram != null) {
+            return histogram;
+        }
+        if (histograms.size() >= maxStatements) {
+            return others;
+        }
+
+        histogram = new LatencyHistogram(nameOf(ctx));
+        LatencyHistogram existing = histograms.putIfAbsent(key, histogram);
+        return existing != null ? existing : histogram;
+    }
+
+    @Nonnull
+    static String nameOf(@Nonnull StatementContext ctx) {
+        Method method = ctx.getSqlObjectMethod();
+        if (method != null) {
+            Class<?> type = ctx.getSqlObjectType() != null ? ctx.getSqlObjectType() : method.getDeclaringClass();
+            return type.getSimpleName() + "." + method.getName();
+        }
+        return ctx.getRawSql();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache with per entry expiration following the W-TinyLFU admission policy: new entries
+ * land in a small LRU window; entries leaving the window are admitted into the main LRU region only
+ * if they have been requested more often than the entry they would displace, as estimated by a
+ * count-min sketch whose counters are halved periodically so that old popularity fades away.
+ * This keeps one-off queries from flushing frequently used results.
+ * <p>
+ * Access is serialized, which is fine for caching results of database queries.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class TinyLfuCache<K, V> {
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final long ttlNanos;
+    private final QueryCacheStatistics statistics;
+    private final FrequencySketch sketch;
+    private final LinkedHashMap<K, Entry<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+    private long generation;
+
+    TinyLfuCache(int maxEntries, long ttlMillis, @Nonnull QueryCacheStatistics statistics) {
+        int capacity = Math.max(1, maxEntries);
+        this.windowCapacity = Math.max(1, capacity / 100);
+        this.mainCapacity = Math.max(1, capacity - windowCapacity);
+        this.ttlNanos = ttlMillis > 0 ? ttlMillis * 1_000_000L : Long.MAX_VALUE;
+        this.statistics = statistics;
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    /**
+     * Looks up a key; {@code found[0]} tells whether the returned value, which may be {@code null}, was cached.
+     */
+    @Nullable
+    synchronized V get(@Nonnull K key, @Nonnull boolean[] found) {
+        sketch.increment(key);
+        Entry<V> entry = window.get(key);
+        Map<K, Entry<V>> region = window;
+        if (entry == null) {
+            entry = main.get(key);
+            region = main;
+        }
+
+        if (entry != null && entry.expiresAt - System.nanoTime() <= 0) {
+            region.remove(key);
+            statistics.expiration();
+            entry = null;
+        }
+
+        if (entry == null) {
+            statistics.miss();
+            found[0] = false;
+            return null;
+        }
+        statistics.hit();
+        found[0] = true;
+        return entry.value;
+    }
+
+    /**
+     * Changes every time the cache is cleared. Values computed while the cache was being cleared
+     * may be stale; {@code put()} discards them.
+     */
+    synchronized long generation() {
+        return generation;
+    }
+
+    synchronized void put(@Nonnull K key, @Nullable V value, long expectedGeneration) {
+        if (expectedGeneration != generation) {
+            return;
+        }
+        long expiresAt = ttlNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + ttlNanos;
+        Entry<V> entry = new Entry<>(value, expiresAt);
+        if (main.containsKey(key)) {
+            main.put(key, entry);
+            return;
+        }
+
+        window.put(key, entry);
+        if (window.size() > windowCapacity) {
+            Iterator<Map.Entry<K, Entry<V>>> it = window.entrySet().iterator();
+            Map.Entry<K, Entry<V>> candidate = it.next();
+            it.remove();
+            admit(candidate.getKey(), candidate.getValue());
+        }
+    }
+
+    synchronized void clear() {
+        int size = window.size() + main.size();
+        window.clear();
+        main.clear();
+        generation++;
+        statistics.invalidation(size);
+    }
+
+    synchronized int size() {
+        return window.size() + main.size();
+    }
+
+    private void admit(@Nonnull K key, @Nonnull Entry<V> entry) {
+        if (main.size() < mainCapacity) {
+            main.put(key, entry);
+            return;
+        }
+
+        Iterator<Map.Entry<K, Entry<V>>> it = main.entrySet().iterator();
+        Map.Entry<K, Entry<V>> victim = it.next();
+        if (sketch.frequency(key) > sketch.frequency(victim.getKey())) {
+            it.remove();
+            main.put(key, entry);
+        }
+        // either the victim or the candidate leaves the cache
+        statistics.eviction();
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Count-min sketch with four rows of saturating counters. Once the number of recorded accesses
+     * reaches ten times the capacity of the cache, every counter is halved.
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0xb3f7c7bd, 0x3cd5cb45, 0x6fa4e3d1};
+
+        private final int[] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        private FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+            this.table = new int[width * DEPTH];
+            this.mask = width - 1;
+            this.sampleSize = capacity * 10;
+        }
+
+        private void increment(@Nonnull Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < DEPTH; i++) {
+                int index = indexOf(hash, i);
+                if (table[index] < MAX_COUNT) {
+                    table[index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private int frequency(@Nonnull Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, table[indexOf(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] >>>= 1;
+            }
+            additions >>>= 1;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+            h ^= h >>> 16;
+            return row * (mask + 1) + (h & mask);
+        }
+
+        private static int spread(int hash) {
+            hash ^= hash >>> 17;
+            hash *= 0xed5ad4bb;
+            hash ^= hash >>> 11;
+            return hash;
+        }
+    }
+}
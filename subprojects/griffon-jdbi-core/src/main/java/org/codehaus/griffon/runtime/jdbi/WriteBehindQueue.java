@@ -0,0 +1,359 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.jdbi.JdbiCallback;
+import griffon.plugins.jdbi.JdbiHandler;
+import griffon.plugins.jdbi.exceptions.CircuitBreakerOpenException;
+import griffon.plugins.jdbi.exceptions.ConcurrencyLimitExceededException;
+import griffon.plugins.jdbi.exceptions.RuntimeJdbiException;
+import griffon.plugins.jdbi.exceptions.WriteBehindClosedException;
+import griffon.plugins.jdbi.exceptions.WriteBehindOverflowException;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Statements waiting to be written to a single datasource, and the thread that writes them. Producers
+ * wait up to the offer timeout while the queue is full, counting the statements being written. Pending
+ * statements are held in insertion order, keyed by SQL and key so that a statement may replace a pending
+ * one; the writer takes all of them when at least a batch is pending, when the flush interval elapses or
+ * when a flush is requested, and writes them in a single transaction, in order, one {@code PreparedBatch}
+ * per run of consecutive statements with the same SQL.
+ * <p>
+ * Statements whose write fails because the datasource is unavailable, rejected by its circuit breaker or
+ * its concurrency limit are queued again ahead of newer ones, unless replaced meanwhile, and retried once
+ * the flush interval elapses. Statements whose write fails otherwise are discarded.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+class WriteBehindQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindQueue.class);
+
+    private final String datasourceName;
+    private final JdbiHandler jdbiHandler;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long offerTimeoutNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition ready = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final Thread writer;
+    private final WriteBehindStatistics statistics = new WriteBehindStatistics();
+
+    // guarded by lock
+    private Map<Object, Write> pending = new LinkedHashMap<>();
+    private int writing;
+    private long flushRequested;
+    private long flushCompleted;
+    private boolean closed;
+
+    WriteBehindQueue(@Nonnull String datasourceName, @Nonnull JdbiHandler jdbiHandler, int capacity, int batchSize, long flushIntervalMillis, long offerTimeoutMillis) {
+        this.datasourceName = requireNonNull(datasourceName, "Argument 'datasourceName' must not be null");
+        this.jdbiHandler = requireNonNull(jdbiHandler, "Argument 'jdbiHandler' must not be null");
+        this.capacity = Math.max(1, capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, flushIntervalMillis));
+        this.offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, offerTimeoutMillis));
+
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "jdbi-write-behind-" + datasourceName);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    void offer(@Nonnull String sql, @Nullable Object key, @Nonnull Map<String, ?> params) {
+        Object id = key != null ? new WriteKey(sql, key) : new Object();
+        // callers may reuse their map once the statement is queued
+        Map<String, ?> copy = new LinkedHashMap<String, Object>(params);
+        lock.lock();
+        try {
+            long remaining = offerTimeoutNanos;
+            while (true) {
+                if (closed) {
+                    throw new WriteBehindClosedException(datasourceName);
+                }
+                Write existing = key != null ? pending.get(id) : null;
+                if (existing != null) {
+                    existing.params = copy;
+                    return;
+                }
+                if (pending.size() + writing < capacity) {
+                    break;
+                }
+                if (remaining <= 0L) {
+                    throw new WriteBehindOverflowException(datasourceName, capacity);
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+
+            pending.put(id, new Write(sql, copy));
+            if (pending.size() >= batchSize) {
+                ready.signal();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeJdbiException(datasourceName, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void flush() {
+        lock.lock();
+        try {
+            long requested = ++flushRequested;
+            ready.signal();
+            while (flushCompleted < requested && writer.isAlive()) {
+                flushed.await(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Nonnull
+    WriteBehindStatistics getStatistics() {
+        return statistics;
+    }
+
+    int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size() + writing;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting statements and waits up to the given time for pending ones to be written.
+     */
+    void close(long timeoutMillis) {
+        lock.lock();
+        try {
+            closed = true;
+            ready.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            writer.join(Math.max(1L, timeoutMillis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            int lost = getPendingCount();
+            LOG.warn("Write-behind queue of datasource '{}' did not drain within {}ms, {} statements are lost", datasourceName, timeoutMillis, lost);
+            statistics.lost(lost);
+            writer.interrupt();
+        }
+    }
+
+    private void drain() {
+        boolean retrying = false;
+        while (true) {
+            Map<Object, Write> writes;
+            long requested;
+            lock.lock();
+            try {
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                // after a failure wait the whole interval, the datasource is unlikely to recover any sooner
+                while (retrying || (!closed && pending.size() < batchSize && flushRequested == flushCompleted)) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0L) {
+                        break;
+                    }
+                    ready.awaitNanos(remaining);
+                }
+                if (closed && pending.isEmpty()) {
+                    flushCompleted = flushRequested;
+                    flushed.signalAll();
+                    return;
+                }
+
+                writes = pending;
+                pending = new LinkedHashMap<>();
+                writing = writes.size();
+                requested = flushRequested;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            boolean requeue = !writes.isEmpty() && !write(writes);
+
+            lock.lock();
+            try {
+                if (requeue) {
+                    // statements replaced while being written keep their newer parameters
+                    for (Map.Entry<Object, Write> entry : pending.entrySet()) {
+                        writes.remove(entry.getKey());
+                        writes.put(entry.getKey(), entry.getValue());
+                    }
+                    pending = writes;
+                }
+                retrying = requeue;
+                writing = 0;
+                flushCompleted = requested;
+                flushed.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes the given statements.
+     *
+     * @return {@code false} if they should be written again.
+     */
+    private boolean write(@Nonnull Map<Object, Write> writes) {
+        final List<Write> statements = new ArrayList<>(writes.values());
+
+        try {
+            jdbiHandler.withJdbi(datasourceName, new JdbiCallback<Void>() {
+                @Override
+                public Void handle(@Nonnull String datasourceName, @Nonnull DBI dbi) {
+                    final RecordingDBI recordingDBI = DBIDecorator.unwrap(dbi, RecordingDBI.class);
+                    return dbi.inTransaction(new TransactionCallback<Void>() {
+                        @Override
+                        public Void inTransaction(Handle handle, TransactionStatus status) {
+                            // only consecutive statements share a batch, otherwise they would be reordered
+                            String sql = null;
+                            PreparedBatch batch = null;
+                            for (Write write : statements) {
+                                if (!write.sql.equals(sql)) {
+                                    if (batch != null && batch.size() > 0) {
+                                        execute(batch, recordingDBI);
+                                    }
+                                    sql = write.sql;
+                                    batch = handle.prepareBatch(sql);
+                                }
+                                batch.add(write.params);
+                                if (batch.size() >= batchSize) {
+                                    execute(batch, recordingDBI);
+                                }
+                            }
+                            if (batch != null && batch.size() > 0) {
+                                execute(batch, recordingDBI);
+                            }
+                            return null;
+                        }
+                    });
+                }
+            });
+            statistics.written(statements.size());
+            return true;
+        } catch (RuntimeException e) {
+            if (isTransient(e)) {
+                LOG.warn("Could not write {} statements behind on datasource '{}', retrying in {}ms. {}", statements.size(), datasourceName,
+                    TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos), e.toString());
+                statistics.requeued(statements.size());
+                return false;
+            }
+            LOG.error("Could not write " + statements.size() + " statements behind on datasource '" + datasourceName + "', they are lost", e);
+            statistics.failed(statements.size());
+            return true;
+        }
+    }
+
+    private static boolean isTransient(@Nonnull Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof CircuitBreakerOpenException || t instanceof ConcurrencyLimitExceededException) {
+                return true;
+            }
+        }
+        return CircuitBreaker.isDatasourceFailure(failure);
+    }
+
+    private static void execute(@Nonnull PreparedBatch batch, @Nullable RecordingDBI recordingDBI) {
+        int size = batch.size();
+        batch.execute();
+        if (recordingDBI != null) {
+            recordingDBI.batchExecuted(size);
+        }
+    }
+
+    private static final class Write {
+        private final String sql;
+        private volatile Map<String, ?> params;
+
+        private Write(@Nonnull String sql, @Nonnull Map<String, ?> params) {
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+
+    private static final class WriteKey {
+        private final String sql;
+        private final Object key;
+
+        private WriteKey(@Nonnull String sql, @Nonnull Object key) {
+            this.sql = sql;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof WriteKey)) {
+                return false;
+            }
+            WriteKey that = (WriteKey) o;
+            return sql.equals(that.sql) && key.equals(that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sql.hashCode() + key.hashCode();
+        }
+    }
+}
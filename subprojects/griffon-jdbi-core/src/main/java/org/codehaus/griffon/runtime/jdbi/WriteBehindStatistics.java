@@ -0,0 +1,80 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outcome of the statements written behind on a single datasource.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class WriteBehindStatistics {
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final LongAdder requeued = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+
+    void written(int count) {
+        written.add(count);
+    }
+
+    void requeued(int count) {
+        failedFlushes.increment();
+        requeued.add(count);
+    }
+
+    void failed(int count) {
+        failedFlushes.increment();
+        lost.add(count);
+    }
+
+    void lost(int count) {
+        lost.add(count);
+    }
+
+    /**
+     * Number of statements written.
+     */
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * Number of attempts to write queued statements that failed.
+     */
+    public long getFailedFlushes() {
+        return failedFlushes.sum();
+    }
+
+    /**
+     * Number of statements queued again after a transient failure.
+     */
+    public long getRequeued() {
+        return requeued.sum();
+    }
+
+    /**
+     * Number of statements discarded, either because writing them failed for good or because the queue
+     * did not drain in time when closed.
+     */
+    public long getLost() {
+        return lost.sum();
+    }
+}
@@ -19,11 +19,27 @@ package org.codehaus.griffon.runtime.jdbi.monitor;
 
 import griffon.annotations.core.Nonnull;
 import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.jdbi.CachingStatementBuilderFactory;
+import org.codehaus.griffon.runtime.jdbi.CachingStatementRewriter;
+import org.codehaus.griffon.runtime.jdbi.CircuitBreaker;
+import org.codehaus.griffon.runtime.jdbi.ConcurrencyLimiter;
+import org.codehaus.griffon.runtime.jdbi.HandleLeakDetector;
+import org.codehaus.griffon.runtime.jdbi.HealthChecker;
+import org.codehaus.griffon.runtime.jdbi.QueryCacheStatistics;
+import org.codehaus.griffon.runtime.jdbi.QueryResultCache;
 import org.codehaus.griffon.runtime.jdbi.RecordingDBI;
+import org.codehaus.griffon.runtime.jdbi.RoutingStatistics;
+import org.codehaus.griffon.runtime.jdbi.SlowQueryLog;
+import org.codehaus.griffon.runtime.jdbi.StatementCacheStatistics;
+import org.codehaus.griffon.runtime.jdbi.StatementTimingCollector;
 import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+import org.skife.jdbi.v2.tweak.StatementBuilderFactory;
+import org.skife.jdbi.v2.tweak.StatementRewriter;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
+import java.util.Collections;
+import java.util.Map;
 
 import static java.util.Objects.requireNonNull;
 
@@ -52,9 +68,367 @@ public class DBIMonitor extends AbstractMBeanRegistration implements DBIMonitorM
         super.postDeregister();
     }
 
-
     @Override
     public int getHandleCount() {
         return delegate.getHandleCount();
     }
+
+    @Override
+    public long getUnitOfWorkOpens() {
+        return delegate.getUnitOfWorkOpens();
+    }
+
+    @Override
+    public long getUnitOfWorkJoins() {
+        return delegate.getUnitOfWorkJoins();
+    }
+
+    @Override
+    public LatencyStatistics getAcquisitionStatistics() {
+        return delegate.getAcquisitionStatistics().getLatencies();
+    }
+
+    @Override
+    public int getAcquisitionWaiting() {
+        return delegate.getAcquisitionStatistics().getWaiting();
+    }
+
+    @Override
+    public long getAcquisitionTimeouts() {
+        return delegate.getAcquisitionStatistics().getTimeouts();
+    }
+
+    @Override
+    public long getAcquisitionFailures() {
+        return delegate.getAcquisitionStatistics().getFailures();
+    }
+
+    @Override
+    public void resetAcquisitionStatistics() {
+        delegate.getAcquisitionStatistics().reset();
+    }
+
+    @Override
+    public long getSuspectedHandleLeaks() {
+        HandleLeakDetector detector = delegate.getLeakDetector();
+        return detector != null ? detector.getSuspectedLeaks() : 0L;
+    }
+
+    @Override
+    public long getHandleLeaks() {
+        HandleLeakDetector detector = delegate.getLeakDetector();
+        return detector != null ? detector.getLeaks() : 0L;
+    }
+
+    @Override
+    public OpenHandleInfo[] findOldestHandles(int max) {
+        HandleLeakDetector detector = delegate.getLeakDetector();
+        return detector != null ? detector.findOldestHandles(max) : new OpenHandleInfo[0];
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        ConcurrencyLimiter limiter = delegate.getConcurrencyLimiter();
+        return limiter != null ? limiter.getLimit() : 0;
+    }
+
+    @Override
+    public int getConcurrencyInFlight() {
+        ConcurrencyLimiter limiter = delegate.getConcurrencyLimiter();
+        return limiter != null ? limiter.getInFlight() : 0;
+    }
+
+    @Override
+    public int getConcurrencyQueued() {
+        ConcurrencyLimiter limiter = delegate.getConcurrencyLimiter();
+        return limiter != null ? limiter.getQueued() : 0;
+    }
+
+    @Override
+    public long getConcurrencyRejections() {
+        ConcurrencyLimiter limiter = delegate.getConcurrencyLimiter();
+        return limiter != null ? limiter.getRejections() : 0L;
+    }
+
+    @Override
+    public LatencyStatistics getHealthCheckStatistics() {
+        HealthChecker checker = delegate.getHealthChecker();
+        return checker != null ? checker.getLatencies() : null;
+    }
+
+    @Override
+    public long getHealthChecks() {
+        HealthChecker checker = delegate.getHealthChecker();
+        return checker != null ? checker.getChecks() : 0L;
+    }
+
+    @Override
+    public long getHealthCheckFailures() {
+        HealthChecker checker = delegate.getHealthChecker();
+        return checker != null ? checker.getFailures() : 0L;
+    }
+
+    @Override
+    public long getHealthCheckEvictions() {
+        HealthChecker checker = delegate.getHealthChecker();
+        return checker != null ? checker.getEvictions() : 0L;
+    }
+
+    @Override
+    public long getHealthCheckQueryFailures() {
+        HealthChecker checker = delegate.getHealthChecker();
+        return checker != null ? checker.getQueryFailures() : 0L;
+    }
+
+    @Override
+    public long getLastHealthCheck() {
+        HealthChecker checker = delegate.getHealthChecker();
+        return checker != null ? checker.getLastCheck() : 0L;
+    }
+
+    @Override
+    public boolean isHealthy() {
+        HealthChecker checker = delegate.getHealthChecker();
+        return checker == null || checker.isHealthy();
+    }
+
+    @Override
+    public boolean runHealthCheck() {
+        HealthChecker checker = delegate.getHealthChecker();
+        return checker == null || checker.check();
+    }
+
+    @Override
+    public String getCircuitBreakerState() {
+        CircuitBreaker breaker = delegate.getCircuitBreaker();
+        return breaker != null ? breaker.getState().name() : null;
+    }
+
+    @Override
+    public double getCircuitBreakerFailureRate() {
+        CircuitBreaker breaker = delegate.getCircuitBreaker();
+        return breaker != null ? breaker.getFailureRate() : 0d;
+    }
+
+    @Override
+    public double getCircuitBreakerSlowCallRate() {
+        CircuitBreaker breaker = delegate.getCircuitBreaker();
+        return breaker != null ? breaker.getSlowCallRate() : 0d;
+    }
+
+    @Override
+    public long getCircuitBreakerRejections() {
+        CircuitBreaker breaker = delegate.getCircuitBreaker();
+        return breaker != null ? breaker.getRejections() : 0L;
+    }
+
+    @Override
+    public long getTransactionRetries() {
+        return delegate.getRetryStatistics().getRetries();
+    }
+
+    @Override
+    public long getTransactionsRecovered() {
+        return delegate.getRetryStatistics().getRecovered();
+    }
+
+    @Override
+    public long getTransactionRetriesExhausted() {
+        return delegate.getRetryStatistics().getExhausted();
+    }
+
+    @Override
+    public long getTransactionRetryWastedTime() {
+        return delegate.getRetryStatistics().getWastedMillis();
+    }
+
+    @Override
+    public void resetTransactionRetryStatistics() {
+        delegate.getRetryStatistics().reset();
+    }
+
+    @Override
+    public long getSlowQueryCount() {
+        SlowQueryLog log = delegate.getSlowQueryLog();
+        return log != null ? log.getSlowQueries() : 0L;
+    }
+
+    @Override
+    public long getSlowQueriesDropped() {
+        SlowQueryLog log = delegate.getSlowQueryLog();
+        return log != null ? log.getDropped() : 0L;
+    }
+
+    @Override
+    public SlowQueryInfo[] getRecentSlowQueries() {
+        SlowQueryLog log = delegate.getSlowQueryLog();
+        return log != null ? log.getRecentSlowQueries() : new SlowQueryInfo[0];
+    }
+
+    @Override
+    public void resetSlowQueries() {
+        SlowQueryLog log = delegate.getSlowQueryLog();
+        if (log != null) {
+            log.reset();
+        }
+    }
+
+    @Override
+    public LatencyStatistics[] getStatementStatistics() {
+        StatementTimingCollector collector = delegate.getStatementTimingCollector();
+        return collector != null ? collector.getStatistics() : new LatencyStatistics[0];
+    }
+
+    @Override
+    public LatencyStatistics findStatementStatistics(String statementName) {
+        StatementTimingCollector collector = delegate.getStatementTimingCollector();
+        return collector != null ? collector.getStatistics(statementName) : null;
+    }
+
+    @Override
+    public void resetStatementStatistics() {
+        StatementTimingCollector collector = delegate.getStatementTimingCollector();
+        if (collector != null) {
+            collector.reset();
+        }
+    }
+
+    @Override
+    public long getStatementCacheHits() {
+        StatementCacheStatistics statistics = getStatementCacheStatistics();
+        return statistics != null ? statistics.getHits() : 0L;
+    }
+
+    @Override
+    public long getStatementCacheMisses() {
+        StatementCacheStatistics statistics = getStatementCacheStatistics();
+        return statistics != null ? statistics.getMisses() : 0L;
+    }
+
+    @Override
+    public long getStatementCacheEvictions() {
+        StatementCacheStatistics statistics = getStatementCacheStatistics();
+        return statistics != null ? statistics.getEvictions() : 0L;
+    }
+
+    @Override
+    public double getStatementCacheHitRatio() {
+        StatementCacheStatistics statistics = getStatementCacheStatistics();
+        return statistics != null ? statistics.getHitRatio() : 0d;
+    }
+
+    @Override
+    public long getStatementRewriterCacheHits() {
+        CachingStatementRewriter rewriter = getCachingStatementRewriter();
+        return rewriter != null ? rewriter.getHits() : 0L;
+    }
+
+    @Override
+    public long getStatementRewriterCacheMisses() {
+        CachingStatementRewriter rewriter = getCachingStatementRewriter();
+        return rewriter != null ? rewriter.getMisses() : 0L;
+    }
+
+    @Override
+    public double getStatementRewriterCacheHitRatio() {
+        CachingStatementRewriter rewriter = getCachingStatementRewriter();
+        return rewriter != null ? rewriter.getHitRatio() : 0d;
+    }
+
+    @Override
+    public long getBulkRowsWritten() {
+        return delegate.getBulkWriteStatistics().getRows();
+    }
+
+    @Override
+    public long getBulkBatchesExecuted() {
+        return delegate.getBulkWriteStatistics().getBatches();
+    }
+
+    @Override
+    public double getBulkLastRowsPerSecond() {
+        return delegate.getBulkWriteStatistics().getLastRowsPerSecond();
+    }
+
+    @Override
+    public double getBulkAverageRowsPerSecond() {
+        return delegate.getBulkWriteStatistics().getAverageRowsPerSecond();
+    }
+
+    @Override
+    public Map<String, Long> getReadOnlyRoutes() {
+        RoutingStatistics statistics = delegate.getRoutingStatistics();
+        return statistics != null ? statistics.getRoutes() : Collections.<String, Long>emptyMap();
+    }
+
+    @Override
+    public long getReadOnlyFallbacks() {
+        RoutingStatistics statistics = delegate.getRoutingStatistics();
+        return statistics != null ? statistics.getFallbacks() : 0L;
+    }
+
+    @Override
+    public int getQueryCacheSize() {
+        QueryResultCache cache = delegate.getQueryResultCache();
+        return cache != null ? cache.getSize() : 0;
+    }
+
+    @Override
+    public long getQueryCacheHits() {
+        QueryCacheStatistics statistics = getQueryCacheStatistics();
+        return statistics != null ? statistics.getHits() : 0L;
+    }
+
+    @Override
+    public long getQueryCacheMisses() {
+        QueryCacheStatistics statistics = getQueryCacheStatistics();
+        return statistics != null ? statistics.getMisses() : 0L;
+    }
+
+    @Override
+    public long getQueryCacheEvictions() {
+        QueryCacheStatistics statistics = getQueryCacheStatistics();
+        return statistics != null ? statistics.getEvictions() : 0L;
+    }
+
+    @Override
+    public long getQueryCacheExpirations() {
+        QueryCacheStatistics statistics = getQueryCacheStatistics();
+        return statistics != null ? statistics.getExpirations() : 0L;
+    }
+
+    @Override
+    public long getQueryCacheInvalidations() {
+        QueryCacheStatistics statistics = getQueryCacheStatistics();
+        return statistics != null ? statistics.getInvalidations() : 0L;
+    }
+
+    @Override
+    public double getQueryCacheHitRatio() {
+        QueryCacheStatistics statistics = getQueryCacheStatistics();
+        return statistics != null ? statistics.getHitRatio() : 0d;
+    }
+
+    @Override
+    public void clearQueryCache() {
+        QueryResultCache cache = delegate.getQueryResultCache();
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    private QueryCacheStatistics getQueryCacheStatistics() {
+        QueryResultCache cache = delegate.getQueryResultCache();
+        return cache != null ? cache.getStatistics() : null;
+    }
+
+    private CachingStatementRewriter getCachingStatementRewriter() {
+        StatementRewriter rewriter = delegate.getStatementRewriter();
+        return rewriter instanceof CachingStatementRewriter ? (CachingStatementRewriter) rewriter : null;
+    }
+
+    private StatementCacheStatistics getStatementCacheStatistics() {
+        StatementBuilderFactory factory = delegate.getStatementBuilderFactory();
+        return factory instanceof CachingStatementBuilderFactory ? ((CachingStatementBuilderFactory) factory).getStatistics() : null;
+    }
 }
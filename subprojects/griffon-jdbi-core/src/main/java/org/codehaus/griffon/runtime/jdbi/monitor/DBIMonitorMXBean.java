@@ -17,10 +17,130 @@
  */
 package org.codehaus.griffon.runtime.jdbi.monitor;
 
+import java.util.Map;
+
 /**
  * @author Andres Almiray
  * @since 1.1.0
  */
 public interface DBIMonitorMXBean {
     int getHandleCount();
+
+    long getUnitOfWorkOpens();
+
+    long getUnitOfWorkJoins();
+
+    LatencyStatistics getAcquisitionStatistics();
+
+    int getAcquisitionWaiting();
+
+    long getAcquisitionTimeouts();
+
+    long getAcquisitionFailures();
+
+    void resetAcquisitionStatistics();
+
+    long getSuspectedHandleLeaks();
+
+    long getHandleLeaks();
+
+    OpenHandleInfo[] findOldestHandles(int max);
+
+    int getConcurrencyLimit();
+
+    int getConcurrencyInFlight();
+
+    int getConcurrencyQueued();
+
+    long getConcurrencyRejections();
+
+    LatencyStatistics getHealthCheckStatistics();
+
+    long getHealthChecks();
+
+    long getHealthCheckFailures();
+
+    long getHealthCheckEvictions();
+
+    long getHealthCheckQueryFailures();
+
+    long getLastHealthCheck();
+
+    boolean isHealthy();
+
+    boolean runHealthCheck();
+
+    String getCircuitBreakerState();
+
+    double getCircuitBreakerFailureRate();
+
+    double getCircuitBreakerSlowCallRate();
+
+    long getCircuitBreakerRejections();
+
+    long getTransactionRetries();
+
+    long getTransactionsRecovered();
+
+    long getTransactionRetriesExhausted();
+
+    long getTransactionRetryWastedTime();
+
+    void resetTransactionRetryStatistics();
+
+    long getSlowQueryCount();
+
+    long getSlowQueriesDropped();
+
+    SlowQueryInfo[] getRecentSlowQueries();
+
+    void resetSlowQueries();
+
+    LatencyStatistics[] getStatementStatistics();
+
+    LatencyStatistics findStatementStatistics(String statementName);
+
+    void resetStatementStatistics();
+
+    long getStatementCacheHits();
+
+    long getStatementCacheMisses();
+
+    long getStatementCacheEvictions();
+
+    double getStatementCacheHitRatio();
+
+    long getStatementRewriterCacheHits();
+
+    long getStatementRewriterCacheMisses();
+
+    double getStatementRewriterCacheHitRatio();
+
+    long getBulkRowsWritten();
+
+    long getBulkBatchesExecuted();
+
+    double getBulkLastRowsPerSecond();
+
+    double getBulkAverageRowsPerSecond();
+
+    Map<String, Long> getReadOnlyRoutes();
+
+    long getReadOnlyFallbacks();
+
+    int getQueryCacheSize();
+
+    long getQueryCacheHits();
+
+    long getQueryCacheMisses();
+
+    long getQueryCacheEvictions();
+
+    long getQueryCacheExpirations();
+
+    long getQueryCacheInvalidations();
+
+    double getQueryCacheHitRatio();
+
+    void clearQueryCache();
 }
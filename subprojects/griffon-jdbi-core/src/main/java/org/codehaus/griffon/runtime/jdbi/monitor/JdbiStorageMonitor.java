@@ -20,6 +20,7 @@ package org.codehaus.griffon.runtime.jdbi.monitor;
 import griffon.annotations.core.Nonnull;
 import griffon.core.env.Metadata;
 import griffon.plugins.jdbi.JdbiStorage;
+import org.codehaus.griffon.runtime.jdbi.DefaultJdbiStorage;
 import org.codehaus.griffon.runtime.monitor.AbstractObjectStorageMonitor;
 import org.skife.jdbi.v2.DBI;
 
@@ -28,8 +29,26 @@ import org.skife.jdbi.v2.DBI;
  * @since 1.1.0
  */
 public class JdbiStorageMonitor extends AbstractObjectStorageMonitor<DBI> implements JdbiStorageMonitorMXBean {
+    private final JdbiStorage storage;
+
     public JdbiStorageMonitor(@Nonnull Metadata metadata, @Nonnull JdbiStorage delegate) {
         super(metadata, delegate);
+        this.storage = delegate;
+    }
+
+    @Override
+    public long getEvictions() {
+        return storage instanceof DefaultJdbiStorage ? ((DefaultJdbiStorage) storage).getEvictions() : 0L;
+    }
+
+    @Override
+    public long getRecreations() {
+        return storage instanceof DefaultJdbiStorage ? ((DefaultJdbiStorage) storage).getRecreations() : 0L;
+    }
+
+    @Override
+    public int evictIdle() {
+        return storage instanceof DefaultJdbiStorage ? ((DefaultJdbiStorage) storage).evictIdle() : 0;
     }
 
     @Override
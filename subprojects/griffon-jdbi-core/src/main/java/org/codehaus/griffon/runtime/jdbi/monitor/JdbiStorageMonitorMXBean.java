@@ -24,4 +24,9 @@ import org.codehaus.griffon.runtime.monitor.ObjectStorageMonitorMXBean;
  * @since 1.1.0
  */
 public interface JdbiStorageMonitorMXBean extends ObjectStorageMonitorMXBean {
+    long getEvictions();
+
+    long getRecreations();
+
+    int evictIdle();
 }
@@ -0,0 +1,147 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi.monitor;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Lock-free latency histogram using log-linear buckets (16 sub-buckets per power of two),
+ * in the spirit of HdrHistogram. Values are tracked with microsecond resolution and a
+ * relative error below 7%. Recording a value never allocates.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(@Nonnull String name) {
+        this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+    }
+
+    @Nonnull
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000L);
+    }
+
+    public void recordMicros(long micros) {
+        long value = micros < 0 ? 0 : (micros > MAX_VALUE ? MAX_VALUE : micros);
+        buckets.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Computes a point-in-time view of this histogram. Concurrent updates may or may not be
+     * reflected, which is acceptable for monitoring purposes.
+     */
+    @Nonnull
+    public LatencyStatistics snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long samples = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            samples += counts[i];
+        }
+
+        return new LatencyStatistics(name,
+            samples,
+            samples > 0 ? toMillis(total.get()) / samples : 0d,
+            toMillis(percentile(counts, samples, 0.50d)),
+            toMillis(percentile(counts, samples, 0.95d)),
+            toMillis(percentile(counts, samples, 0.99d)),
+            toMillis(max.get()));
+    }
+
+    private static long percentile(long[] counts, long samples, double quantile) {
+        if (samples == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * samples));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return valueOf(i);
+            }
+        }
+        return valueOf(counts.length - 1);
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & SUB_BUCKET_MASK;
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long valueOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = index & SUB_BUCKET_MASK;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lowest = (long) (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowest + width / 2;
+    }
+
+    private static double toMillis(double micros) {
+        return micros / 1000d;
+    }
+}
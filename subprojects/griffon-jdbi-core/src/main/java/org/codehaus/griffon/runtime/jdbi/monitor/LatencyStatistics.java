@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi.monitor;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Immutable view of a {@code LatencyHistogram}. All times are expressed in milliseconds.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class LatencyStatistics {
+    private final String name;
+    private final long count;
+    private final double mean;
+    private final double p50;
+    private final double p95;
+    private final double p99;
+    private final double max;
+
+    @ConstructorProperties({"name", "count", "mean", "p50", "p95", "p99", "max"})
+    public LatencyStatistics(String name, long count, double mean, double p50, double p95, double p99, double max) {
+        this.name = name;
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP95() {
+        return p95;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return name + "[count=" + count + ", mean=" + mean + "ms, p50=" + p50 + "ms, p95=" + p95 +
+            "ms, p99=" + p99 + "ms, max=" + max + "ms]";
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi.monitor;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Immutable view of a handle that has not been closed yet. The age is expressed in milliseconds.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class OpenHandleInfo {
+    private final long id;
+    private final long age;
+    private final String thread;
+    private final String openSite;
+
+    @ConstructorProperties({"id", "age", "thread", "openSite"})
+    public OpenHandleInfo(long id, long age, String thread, String openSite) {
+        this.id = id;
+        this.age = age;
+        this.thread = thread;
+        this.openSite = openSite;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getAge() {
+        return age;
+    }
+
+    /**
+     * Name of the thread that opened the handle.
+     */
+    public String getThread() {
+        return thread;
+    }
+
+    /**
+     * Stack trace of the call to {@code open()}, or {@code null} if the handle was not sampled.
+     */
+    public String getOpenSite() {
+        return openSite;
+    }
+
+    @Override
+    public String toString() {
+        return "handle #" + id + "[age=" + age + "ms, thread=" + thread + "]";
+    }
+}
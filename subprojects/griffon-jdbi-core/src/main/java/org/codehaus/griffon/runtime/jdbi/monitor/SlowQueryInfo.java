@@ -0,0 +1,90 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi.monitor;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Immutable view of a statement that took longer than the slow query threshold. The elapsed time is
+ * expressed in milliseconds.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class SlowQueryInfo {
+    private final long timestamp;
+    private final String name;
+    private final String sql;
+    private final double elapsed;
+    private final String bindings;
+    private final String plan;
+
+    @ConstructorProperties({"timestamp", "name", "sql", "elapsed", "bindings", "plan"})
+    public SlowQueryInfo(long timestamp, String name, String sql, double elapsed, String bindings, String plan) {
+        this.timestamp = timestamp;
+        this.name = name;
+        this.sql = sql;
+        this.elapsed = elapsed;
+        this.bindings = bindings;
+        this.plan = plan;
+    }
+
+    /**
+     * Time at which the statement completed, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * {@code Type.method} for statements issued by SqlObjects, the raw SQL otherwise.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The SQL sent to the database.
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    public double getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Values bound to the statement, or {@code null} if the statement was not sampled.
+     */
+    public String getBindings() {
+        return bindings;
+    }
+
+    /**
+     * Output of the database's {@code EXPLAIN}, or {@code null} if no plan was captured.
+     */
+    public String getPlan() {
+        return plan;
+    }
+
+    @Override
+    public String toString() {
+        return name + "[elapsed=" + elapsed + "ms]";
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi.monitor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.core.env.Metadata;
+import griffon.plugins.jdbi.JdbiWriteBehind;
+import org.codehaus.griffon.runtime.jdbi.WriteBehindStatistics;
+import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class WriteBehindMonitor extends AbstractMBeanRegistration implements WriteBehindMonitorMXBean {
+    private final JdbiWriteBehind writeBehind;
+    private final WriteBehindStatistics statistics;
+    private final String name;
+
+    public WriteBehindMonitor(@Nonnull Metadata metadata, @Nonnull JdbiWriteBehind writeBehind, @Nonnull WriteBehindStatistics statistics, @Nonnull String name) {
+        super(metadata);
+        this.writeBehind = requireNonNull(writeBehind, "Argument 'writeBehind' must not be null");
+        this.statistics = requireNonNull(statistics, "Argument 'statistics' must not be null");
+        this.name = name;
+    }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        return new ObjectName("griffon.plugins.jdbi:type=WriteBehind,application=" + metadata.getApplicationName() + ",name=" + this.name);
+    }
+
+    @Override
+    public int getPendingCount() {
+        return writeBehind.getPendingCount(name);
+    }
+
+    @Override
+    public long getWritten() {
+        return statistics.getWritten();
+    }
+
+    @Override
+    public long getFailedFlushes() {
+        return statistics.getFailedFlushes();
+    }
+
+    @Override
+    public long getRequeued() {
+        return statistics.getRequeued();
+    }
+
+    @Override
+    public long getLost() {
+        return statistics.getLost();
+    }
+
+    @Override
+    public void flush() {
+        writeBehind.flush(name);
+    }
+}
@@ -27,15 +27,51 @@ import griffon.plugins.jdbi.events.JdbiConnectEndEvent
 import griffon.plugins.jdbi.events.JdbiConnectStartEvent
 import griffon.plugins.jdbi.events.JdbiDisconnectEndEvent
 import griffon.plugins.jdbi.events.JdbiDisconnectStartEvent
+import griffon.plugins.jdbi.exceptions.CircuitBreakerOpenException
+import griffon.plugins.jdbi.exceptions.ConcurrencyLimitExceededException
 import griffon.plugins.jdbi.exceptions.RuntimeJdbiException
 import griffon.test.core.GriffonUnitRule
+import org.codehaus.griffon.runtime.jdbi.CircuitBreaker
+import org.codehaus.griffon.runtime.jdbi.ConcurrencyLimiter
+import org.codehaus.griffon.runtime.jdbi.ConnectionAcquisitionStatistics
+import org.codehaus.griffon.runtime.jdbi.DBIDecorator
+import org.codehaus.griffon.runtime.jdbi.DefaultJdbiStorage
+import org.codehaus.griffon.runtime.jdbi.HealthChecker
+import org.codehaus.griffon.runtime.jdbi.JdbiAddon
+import org.codehaus.griffon.runtime.jdbi.QueryCacheStatistics
+import org.codehaus.griffon.runtime.jdbi.RecordingDBI
+import org.codehaus.griffon.runtime.jdbi.RetryStatistics
+import org.codehaus.griffon.runtime.jdbi.RoutingDBI
+import org.codehaus.griffon.runtime.jdbi.SlowQueryLog
+import org.codehaus.griffon.runtime.jdbi.StatementTimingCollector
+import org.codehaus.griffon.runtime.jdbi.monitor.OpenHandleInfo
+import org.codehaus.griffon.runtime.jdbi.monitor.SlowQueryInfo
 import org.junit.Rule
 import org.skife.jdbi.v2.DBI
+import org.skife.jdbi.v2.Handle
+import org.skife.jdbi.v2.TransactionIsolationLevel
 import spock.lang.Specification
 import spock.lang.Unroll
 
 import javax.application.event.EventHandler
 import javax.inject.Inject
+import javax.sql.DataSource
+import java.sql.Connection
+import java.sql.SQLException
+import java.sql.SQLTransactionRollbackException
+import java.sql.Statement
+import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.function.Consumer
+import java.util.stream.Collectors
+import java.util.stream.Stream
 
 @Unroll
 class JdbiSpec extends Specification {
@@ -52,6 +88,15 @@ class JdbiSpec extends Specification {
     @Inject
     private GriffonApplication application
 
+    @Inject
+    private JdbiWriteBehind jdbiWriteBehind
+
+    @Inject
+    private JdbiStorage jdbiStorage
+
+    @Inject
+    private JdbiFactory jdbiFactory
+
     void 'Open and close default jdbi'() {
         given:
         List eventNames = [
@@ -109,6 +154,32 @@ class JdbiSpec extends Specification {
         bootstrap.destroyWitness
     }
 
+    void 'Concurrent first calls create exactly one DBI per datasource'() {
+        given:
+        List<String> names = ['default', 'internal', 'people']
+        int callsPerName = 16
+        CountDownLatch start = new CountDownLatch(1)
+        ExecutorService executor = Executors.newFixedThreadPool(names.size() * callsPerName)
+
+        when:
+        List<Future<DBI>> futures = (0..<(names.size() * callsPerName)).collect { int i ->
+            String name = names[i % names.size()]
+            executor.submit({
+                start.await()
+                jdbiHandler.withJdbi(name) { String datasourceName, DBI dbi -> dbi }
+            } as Callable<DBI>)
+        }
+        start.countDown()
+        List<DBI> dbis = futures.collect { it.get(30, TimeUnit.SECONDS) }
+
+        then:
+        names.every { bootstrap.initCounts[it]?.get() == 1 }
+        (dbis as Set).size() == names.size()
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
     void 'Can connect to #name DBI'() {
         expect:
         jdbiHandler.withJdbi(name) { String datasourceName, DBI dbi ->
@@ -173,9 +244,1149 @@ class JdbiSpec extends Specification {
         thrown(RuntimeJdbiException)
     }
 
+    void 'Execute callback asynchronously on #name DBI'() {
+        when:
+        List result = jdbiHandler.withJdbiAsync(name) { String datasourceName, DBI dbi ->
+            [datasourceName, Thread.currentThread().name]
+        }.get(10, TimeUnit.SECONDS)
+
+        then:
+        result[0] == name
+        result[1].startsWith('jdbi-' + name)
+
+        where:
+        name      | _
+        'default' | _
+        'people'  | _
+    }
+
+    void 'A runtime SQLException is thrown within asynchronous DBI handling'() {
+        when:
+        jdbiHandler.withJdbiAsync { String datasourceName, DBI dbi ->
+            PersonDAO dao = dbi.open(PersonDAO)
+            dao.create(0, null, null)
+        }.get(10, TimeUnit.SECONDS)
+
+        then:
+        ExecutionException e = thrown(ExecutionException)
+        e.cause instanceof RuntimeJdbiException
+    }
+
+    void 'Bulk insert #rows rows on people table with parallelism #parallelism'() {
+        given:
+        int base = 1000 * parallelism
+        Iterator data = (base..<(base + rows)).collect { [id: it, name: 'name' + it, lastname: 'lastname' + it] }.iterator()
+        BulkInsertOptions options = BulkInsertOptions.defaults()
+            .withBatchSize(16)
+            .withCommitInterval(2)
+            .withParallelism(parallelism)
+
+        when:
+        long inserted = jdbiHandler.withBulkInsert('people', 'INSERT INTO people (id, name, lastname) VALUES (:id, :name, :lastname)', data, options)
+        int count = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle ->
+                handle.createQuery('SELECT COUNT(*) FROM people WHERE id >= :lower AND id < :upper')
+                    .bind('lower', base)
+                    .bind('upper', base + rows)
+                    .mapTo(Integer)
+                    .first()
+            }
+        }
+
+        then:
+        inserted == rows
+        count == rows
+
+        where:
+        rows | parallelism
+        100  | 1
+        100  | 3
+    }
+
+    void 'A failing bulk insert reports the datasource'() {
+        given:
+        Iterator data = [[id: 1, name: null, lastname: null]].iterator()
+
+        when:
+        jdbiHandler.withBulkInsert('INSERT INTO people (id, name, lastname) VALUES (:id, :name, :lastname)', data, BulkInsertOptions.defaults())
+
+        then:
+        RuntimeJdbiException e = thrown(RuntimeJdbiException)
+        e.message.contains('default')
+    }
+
+    void 'Stream rows from people table and release the handle'() {
+        given:
+        Iterator data = (2000..<2050).collect { [id: it, name: 'name' + it, lastname: 'lastname' + it] }.iterator()
+        jdbiHandler.withBulkInsert('people', 'INSERT INTO people (id, name, lastname) VALUES (:id, :name, :lastname)', data, BulkInsertOptions.defaults())
+
+        when:
+        List ids = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            Stream stream = JdbiStreams.stream(dbi, 10, 'SELECT id FROM people WHERE id >= ? AND id < ? ORDER BY id', 2000, 2050)
+            try {
+                stream.map { it.id }.collect(Collectors.toList())
+            } finally {
+                stream.close()
+            }
+        }
+        int handles = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            DBIDecorator.unwrap(dbi, RecordingDBI).handleCount
+        }
+        long count = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            JdbiStreams.forEach(dbi, 10, 'SELECT * FROM people WHERE id >= ?', {} as Consumer, 2000)
+        }
+
+        then:
+        ids == (2000..<2050).toList()
+        handles == 0
+        count == 50
+    }
+
+    void 'Streams from a datasource without auto-commit release their handle'() {
+        when:
+        boolean inTransaction = jdbiHandler.withJdbi('manual') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle -> handle.isInTransaction() }
+        }
+        List ids = jdbiHandler.withJdbi('manual') { String datasourceName, DBI dbi ->
+            Stream stream = JdbiStreams.stream(dbi, 10, 'SELECT X AS id FROM SYSTEM_RANGE(1, 5)')
+            try {
+                stream.map { it.id }.collect(Collectors.toList())
+            } finally {
+                stream.close()
+            }
+        }
+        long count = jdbiHandler.withJdbi('manual') { String datasourceName, DBI dbi ->
+            JdbiStreams.forEach(dbi, 10, 'SELECT X FROM SYSTEM_RANGE(1, 5)', {} as Consumer)
+        }
+        int handles = jdbiHandler.withJdbi('manual') { String datasourceName, DBI dbi ->
+            DBIDecorator.unwrap(dbi, RecordingDBI).handleCount
+        }
+
+        then:
+        inTransaction
+        ids == [1L, 2L, 3L, 4L, 5L]
+        count == 5
+        handles == 0
+    }
+
+    void 'Compact rows match the rows of the default mapper'() {
+        given:
+        Iterator data = (3000..<3010).collect { [id: it, name: 'name' + it, lastname: 'lastname' + it] }.iterator()
+        jdbiHandler.withBulkInsert('people', 'INSERT INTO people (id, name, lastname) VALUES (:id, :name, :lastname)', data, BulkInsertOptions.defaults())
+        String sql = 'SELECT id, name, lastname, CAST(NULL AS INTEGER) AS age FROM people WHERE id >= 3000 ORDER BY id'
+
+        when:
+        List<Map> expected = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle -> handle.createQuery(sql).list() }
+        }
+        List<Map> actual = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle -> handle.createQuery(sql).map(CompactRowMapper.INSTANCE).list() }
+        }
+
+        then:
+        actual == expected
+        actual[0].ID == 3000
+        actual[0].containsKey('age')
+        actual[0].age == null
+
+        when:
+        actual[0].put('name', 'Duke')
+
+        then:
+        thrown(UnsupportedOperationException)
+    }
+
+    void 'Handles of a datasource with compact_rows select compact rows'() {
+        given:
+        String sql = 'SELECT id, name, lastname FROM people WHERE id = ?'
+        jdbiHandler.withJdbi('compact') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle ->
+                handle.execute('CREATE TABLE IF NOT EXISTS people (id INTEGER NOT NULL PRIMARY KEY, name VARCHAR(30) NOT NULL, lastname VARCHAR(30) NOT NULL)')
+                handle.execute('MERGE INTO people (id, name, lastname) VALUES (?, ?, ?)', 6300, 'Duke', 'Java')
+            }
+        }
+        jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle -> handle.execute('MERGE INTO people (id, name, lastname) VALUES (?, ?, ?)', 6300, 'Duke', 'Java') }
+        }
+
+        when:
+        List<Map> compact = jdbiHandler.withJdbi('compact') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle -> handle.select(sql, 6300) }
+        }
+        List<Map> plain = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle -> handle.select(sql, 6300) }
+        }
+
+        then:
+        compact == plain
+        compact[0].ID == 6300
+        compact[0].name == 'Duke'
+        !(compact[0] instanceof HashMap)
+        plain[0] instanceof HashMap
+
+        when:
+        compact[0].put('name', 'Jack')
+
+        then:
+        thrown(UnsupportedOperationException)
+    }
+
+    void 'Read-only work is routed to replicas'() {
+        when:
+        DBI replica = jdbiHandler.withJdbi('internal') { String datasourceName, DBI dbi -> dbi }
+        DBI primary = jdbiHandler.withJdbi('replicated') { String datasourceName, DBI dbi -> dbi }
+        DBI readOnly = jdbiHandler.withJdbiReadOnly('replicated') { String datasourceName, DBI dbi -> dbi }
+        DBI unrouted = jdbiHandler.withJdbiReadOnly('people') { String datasourceName, DBI dbi -> dbi }
+        RecordingDBI recordingDBI = DBIDecorator.unwrap(primary, RecordingDBI)
+
+        then:
+        primary instanceof RoutingDBI
+        readOnly.is(replica)
+        unrouted.is(jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi -> dbi })
+        recordingDBI.routingStatistics.routes == [internal: 1L]
+    }
+
+    void 'Results of cached queries are invalidated by writes'() {
+        when:
+        List counts = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            PersonDAO dao = dbi.onDemand(PersonDAO)
+            List result = [dao.countFrom(4000), dao.countFrom(4000)]
+            dao.create(4000, 'Duke', 'Java')
+            result << dao.countFrom(4000)
+            dbi.withHandle { handle -> handle.update('INSERT INTO people (id, name, lastname) VALUES (?, ?, ?)', 4001, 'Tux', 'Linux') }
+            result << dao.countFrom(4000)
+            result
+        }
+        QueryCacheStatistics statistics = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            DBIDecorator.unwrap(dbi, RecordingDBI).queryResultCache.statistics
+        }
+
+        then:
+        counts == [0, 0, 1, 2]
+        statistics.hits == 1
+        statistics.misses == 3
+        statistics.invalidations == 2
+    }
+
+    void 'Results of cached queries are invalidated by writes through #path'() {
+        given:
+        String sql = 'INSERT INTO people (id, name, lastname) VALUES (:id, :name, :lastname)'
+        Map row = [id: id, name: 'name', lastname: 'lastname']
+        int before = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi -> dbi.onDemand(PersonDAO).countFrom(id) }
+
+        when:
+        switch (path) {
+            case 'createStatement':
+                jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+                    dbi.withHandle { Handle handle -> handle.createStatement(sql).bindFromMap(row).execute() }
+                }
+                break
+            case 'prepareBatch':
+                jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+                    dbi.withHandle { Handle handle -> handle.prepareBatch(sql).add(row).execute() }
+                }
+                break
+            case 'attach':
+                jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+                    dbi.inTransaction { Handle handle, status -> handle.attach(PersonDAO).create(id, 'name', 'lastname') }
+                }
+                break
+            case 'withBulkInsert':
+                jdbiHandler.withBulkInsert('people', sql, [row].iterator(), BulkInsertOptions.defaults())
+                break
+            case 'write-behind':
+                jdbiWriteBehind.enqueue('people', sql, row)
+                jdbiWriteBehind.flush('people')
+                break
+        }
+        int after = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi -> dbi.onDemand(PersonDAO).countFrom(id) }
+
+        then:
+        before == 0
+        after == 1
+
+        where:
+        path              | id
+        'createStatement' | 8700
+        'prepareBatch'    | 8710
+        'attach'          | 8720
+        'withBulkInsert'  | 8730
+        'write-behind'    | 8740
+    }
+
+    void 'Results read within a transaction are not cached'() {
+        when:
+        int inside = jdbiHandler.withJdbiUnitOfWork('people') { String datasourceName, DBI dbi ->
+            PersonDAO dao = dbi.onDemand(PersonDAO)
+            dbi.withHandle { Handle handle ->
+                handle.begin()
+                handle.insert('INSERT INTO people (id, name, lastname) VALUES (?, ?, ?)', 8600, 'name', 'lastname')
+                int count = dao.countFrom(8600)
+                handle.rollback()
+                count
+            }
+        }
+        int after = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            dbi.onDemand(PersonDAO).countFrom(8600)
+        }
+
+        then:
+        inside == 1
+        after == 0
+    }
+
+    void 'Results cached by other threads during a transaction are invalidated on commit'() {
+        given:
+        ExecutorService executor = Executors.newSingleThreadExecutor()
+
+        when:
+        List counts = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            PersonDAO dao = dbi.onDemand(PersonDAO)
+            List result = [dao.countFrom(8500)]
+            dbi.inTransaction { Handle handle, status ->
+                handle.insert('INSERT INTO people (id, name, lastname) VALUES (?, ?, ?)', 8500, 'name', 'lastname')
+                // another thread reads, and caches, the committed state before this transaction commits
+                result << executor.submit({ dao.countFrom(8500) } as Callable<Integer>).get(30, TimeUnit.SECONDS)
+            }
+            result << dao.countFrom(8500)
+            result
+        }
+
+        then:
+        counts == [0, 0, 1]
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    void 'Open handles are listed oldest first'() {
+        when:
+        List<OpenHandleInfo> handles = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            Handle first = dbi.open()
+            Thread.sleep(5)
+            Handle second = dbi.open()
+            try {
+                DBIDecorator.unwrap(dbi, RecordingDBI).leakDetector.findOldestHandles(10).toList()
+            } finally {
+                second.close()
+                first.close()
+            }
+        }
+        int remaining = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            DBIDecorator.unwrap(dbi, RecordingDBI).leakDetector.openHandles
+        }
+
+        then:
+        handles.size() == 2
+        handles[0].age >= handles[1].age
+        handles[0].thread == Thread.currentThread().name
+        remaining == 0
+    }
+
+    void 'Connection acquisition is timed'() {
+        when:
+        ConnectionAcquisitionStatistics statistics = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle -> handle.select('SELECT 1') }
+            DBIDecorator.unwrap(dbi, RecordingDBI).acquisitionStatistics
+        }
+
+        then:
+        statistics.latencies.count >= 1
+        statistics.waiting == 0
+        statistics.timeouts == 0
+    }
+
+    void 'Measurements are reported to JdbiMetrics'() {
+        when:
+        jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            dbi.inTransaction { handle, status -> handle.update('INSERT INTO people (id, name, lastname) VALUES (?, ?, ?)', 5000, 'Duke', 'Java') }
+            try {
+                dbi.inTransaction { handle, status -> handle.update('INSERT INTO people (id, name, lastname) VALUES (?, ?, ?)', 5000, 'Duke', 'Java') }
+            } catch (Exception ignored) {
+                // duplicate key
+            }
+        }
+        jdbiHandler.withBulkInsert('people', 'INSERT INTO people (id, name, lastname) VALUES (:id, :name, :lastname)',
+            [[id: 5001, name: 'Tux', lastname: 'Linux']].iterator(), BulkInsertOptions.defaults())
+        List<String> events = metrics.events.findAll { it.contains(':people') }
+
+        then:
+        events.count { it == 'opened:people' } == 3
+        events.count { it == 'closed:people' } == 3
+        events.contains('statement:people:INSERT INTO people (id, name, lastname) VALUES (?, ?, ?)')
+        events.contains('transaction:people:commit')
+        events.contains('transaction:people:rollback')
+        events.contains('batch:people:1')
+    }
+
+    void 'Statement timings are collected per statement executed through a DBI'() {
+        when:
+        Map result = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            StatementTimingCollector timings = DBIDecorator.unwrap(dbi, RecordingDBI).statementTimingCollector
+            timings.reset()
+            3.times {
+                dbi.withHandle { handle -> handle.createQuery('SELECT COUNT(*) FROM people').mapTo(Integer).first() }
+            }
+            dbi.withHandle { handle -> handle.attach(PersonDAO).findById(1) }
+            [query: timings.getStatistics('SELECT COUNT(*) FROM people'),
+             sqlObject: timings.getStatistics('PersonDAO.findById'),
+             all: timings.statistics]
+        }
+
+        then:
+        result.query.count == 3
+        result.query.max >= result.query.p50
+        result.sqlObject.count == 1
+        result.all*.name.containsAll(['SELECT COUNT(*) FROM people', 'PersonDAO.findById'])
+    }
+
+    void 'Statements beyond the maximum tracked are timed together'() {
+        when:
+        Map result = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            RecordingDBI recordingDBI = DBIDecorator.unwrap(dbi, RecordingDBI)
+            StatementTimingCollector original = recordingDBI.statementTimingCollector
+            StatementTimingCollector timings = new StatementTimingCollector(1)
+            recordingDBI.statementTimingCollector = timings
+            try {
+                dbi.withHandle { handle ->
+                    handle.createQuery('SELECT COUNT(*) FROM people').mapTo(Integer).first()
+                    handle.createQuery('SELECT MAX(id) FROM people').mapTo(Integer).first()
+                    handle.createQuery('SELECT MIN(id) FROM people').mapTo(Integer).first()
+                }
+                [tracked: timings.getStatistics('SELECT COUNT(*) FROM people'),
+                 others: timings.getStatistics(StatementTimingCollector.OTHER_STATEMENTS),
+                 all: timings.statistics]
+            } finally {
+                recordingDBI.statementTimingCollector = original
+            }
+        }
+
+        then:
+        result.tracked.count == 1
+        result.others.count == 2
+        result.all.length == 2
+    }
+
+    void 'Datasources are connected on startup with a parallelism of #parallelism'() {
+        given:
+        JdbiAddon addon = (JdbiAddon) application.addonManager.findAddon('jdbi')
+        List<String> names = ['tenants1', 'tenants2', 'ephemeral']
+        boolean disconnected = names.every { jdbiStorage.get(it) == null }
+
+        when:
+        addon.connect(names, parallelism)
+
+        then:
+        disconnected
+        names.every { jdbiStorage.get(it) != null }
+
+        where:
+        parallelism << [1, 3]
+    }
+
+    void 'A datasource failing to connect fails a parallel startup as it fails a sequential one'() {
+        given:
+        JdbiAddon addon = (JdbiAddon) application.addonManager.findAddon('jdbi')
+
+        when:
+        addon.connect(['tenants1', 'unknown'], 1)
+
+        then:
+        RuntimeException sequential = thrown()
+
+        when:
+        addon.connect(['tenants1', 'unknown', 'tenants2'], 3)
+
+        then:
+        RuntimeException parallel = thrown()
+        parallel.class == sequential.class
+        parallel.message == sequential.message
+        jdbiStorage.get('tenants2') != null
+    }
+
+    void 'Transactions failing with retryable errors are retried'() {
+        given:
+        int attempts = 0
+        RetryStatistics statistics = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            DBIDecorator.unwrap(dbi, RecordingDBI).retryStatistics
+        }
+        statistics.reset()
+
+        when:
+        Integer count = jdbiHandler.withJdbiTransaction('people', TransactionIsolationLevel.SERIALIZABLE, { handle, status ->
+            if (++attempts < 3) {
+                throw new SQLException('Deadlock detected', '40001')
+            }
+            handle.createQuery('SELECT COUNT(*) FROM people').mapTo(Integer).first()
+        }, RetryPolicy.defaults().withInitialBackoff(1L))
+
+        then:
+        count != null
+        attempts == 3
+        statistics.retries == 2
+        statistics.recovered == 1
+        statistics.exhausted == 0
+    }
+
+    void 'Transactions failing with non retryable errors are not retried'() {
+        given:
+        int attempts = 0
+
+        when:
+        jdbiHandler.withJdbiTransaction('people', { handle, status ->
+            attempts++
+            throw new SQLException('Syntax error', '42000')
+        }, RetryPolicy.defaults())
+
+        then:
+        thrown(RuntimeJdbiException)
+        attempts == 1
+    }
+
+    void 'Only serialization failures and deadlocks are retryable by default'() {
+        expect:
+        RetryPolicy.defaults().isRetryable(failure) == retryable
+
+        where:
+        failure                                                              || retryable
+        new SQLException('Serialization failure', '40001')                   || true
+        new SQLException('Deadlock detected', '40P01')                       || true
+        new RuntimeException(new SQLException('Deadlock detected', '40001')) || true
+        new SQLException('Integrity constraint violation', '40002')          || false
+        new SQLTransactionRollbackException('Constraint', '40002')           || false
+        new SQLTransactionRollbackException('Rolled back')                   || true
+        new SQLException('Deadlock detected', '61000', 60)                   || true
+        new SQLException('Syntax error', '42000')                            || false
+    }
+
+    void 'Retryable SQLStates may be replaced'() {
+        given:
+        RetryPolicy policy = RetryPolicy.defaults().withRetryableSqlStates('40002')
+
+        expect:
+        policy.isRetryable(new SQLException('Integrity constraint violation', '40002'))
+        !policy.isRetryable(new SQLException('Serialization failure', '40001'))
+    }
+
+    void 'Callers over the concurrency limit are rejected'() {
+        given:
+        RecordingDBI recordingDBI = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            DBIDecorator.unwrap(dbi, RecordingDBI)
+        }
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter('people', false, 1, 1, 0L, 0L)
+        recordingDBI.concurrencyLimiter = limiter
+        ExecutorService executor = Executors.newSingleThreadExecutor()
+
+        when:
+        Throwable rejection = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            // the thread holding the slot may enter again
+            jdbiHandler.withJdbi('people') { String n, DBI d -> null }
+            try {
+                executor.submit({ jdbiHandler.withJdbi('people') { String n, DBI d -> null } } as Callable).get()
+                null
+            } catch (ExecutionException e) {
+                e.cause
+            }
+        }
+
+        then:
+        rejection instanceof ConcurrencyLimitExceededException
+        ((ConcurrencyLimitExceededException) rejection).limit == 1
+        limiter.rejections == 1
+        limiter.inFlight == 0
+
+        cleanup:
+        recordingDBI?.concurrencyLimiter = null
+        executor.shutdownNow()
+    }
+
+    void 'A thread takes a fresh concurrency slot once it released its last one'() {
+        given:
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter('people', false, 1, 1, 0L, 0L)
+
+        when:
+        long outer = limiter.acquire()
+        long inner = limiter.acquire()
+        limiter.release(inner)
+        int held = limiter.inFlight
+        limiter.release(outer)
+        int released = limiter.inFlight
+        long again = limiter.acquire()
+        int reacquired = limiter.inFlight
+        limiter.release(again)
+
+        then:
+        held == 1
+        released == 0
+        reacquired == 1
+        limiter.inFlight == 0
+    }
+
+    void 'Circuit breaker opens on datasource failures and closes after a successful probe'() {
+        given:
+        RecordingDBI recordingDBI = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            DBIDecorator.unwrap(dbi, RecordingDBI)
+        }
+        List<String> transitions = []
+        CircuitBreaker breaker = new CircuitBreaker('people', recordingDBI, 50d, 100d, 10000L, 2, 2, 200L, 1,
+            { CircuitState previous, CircuitState state -> transitions << "${previous}->${state}".toString() } as CircuitBreaker.Listener)
+        recordingDBI.circuitBreaker = breaker
+        int calls = 0
+
+        when:
+        2.times {
+            try {
+                jdbiHandler.withJdbi('people') { String n, DBI d -> calls++; throw new SQLException('Connection refused', '08001') }
+            } catch (RuntimeJdbiException ignored) {
+                // expected
+            }
+        }
+        jdbiHandler.withJdbi('people') { String n, DBI d -> calls++ }
+
+        then:
+        thrown(CircuitBreakerOpenException)
+        calls == 2
+        breaker.state == CircuitState.OPEN
+        breaker.rejections == 1
+
+        when:
+        Thread.sleep(300)
+        jdbiHandler.withJdbi('people') { String n, DBI d -> calls++ }
+
+        then:
+        calls == 3
+        breaker.state == CircuitState.CLOSED
+        transitions == ['CLOSED->OPEN', 'OPEN->HALF_OPEN', 'HALF_OPEN->CLOSED']
+
+        cleanup:
+        recordingDBI?.circuitBreaker = null
+    }
+
+    void 'Health checks validate warm connections'() {
+        given:
+        RecordingDBI recordingDBI = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            DBIDecorator.unwrap(dbi, RecordingDBI)
+        }
+        HealthChecker healthy = new HealthChecker('people', recordingDBI.dataSource, 3, 1, null)
+
+        expect:
+        healthy.check()
+        healthy.checks == 1
+        healthy.latencies.count == 3
+        healthy.failures == 0
+        healthy.lastCheck > 0
+    }
+
+    void 'Failing health check queries do not evict connections'() {
+        given:
+        RecordingDBI recordingDBI = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            DBIDecorator.unwrap(dbi, RecordingDBI)
+        }
+        HealthChecker checker = new HealthChecker('people', recordingDBI.dataSource, 1, 1, 'SELECT * FROM nowhere')
+
+        expect:
+        !checker.check()
+        !checker.healthy
+        checker.queryFailures == 1
+        checker.failures == 0
+        checker.evictions == 0
+    }
+
+    void 'Health checks close broken connections of pools that cannot evict them'() {
+        given:
+        Connection connection = Mock(Connection)
+        DataSource dataSource = Stub(DataSource) {
+            getConnection() >> connection
+        }
+        HealthChecker checker = new HealthChecker('people', dataSource, 1, 1, 'SELECT 1')
+
+        when:
+        boolean result = checker.check()
+
+        then:
+        1 * connection.isValid(1) >> valid
+        _ * connection.createStatement() >> Stub(Statement) {
+            execute(_) >> { throw new SQLException('Connection reset', '08S01') }
+        }
+        1 * connection.close()
+        !result
+        checker.failures == 1
+        checker.queryFailures == 0
+        checker.evictions == 0
+
+        where:
+        valid << [false, true]
+    }
+
+    void 'Nested calls within a unit of work share a single handle'() {
+        given:
+        RecordingDBI recordingDBI = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            DBIDecorator.unwrap(dbi, RecordingDBI)
+        }
+        long opens = recordingDBI.unitOfWorkOpens
+        long joins = recordingDBI.unitOfWorkJoins
+
+        when:
+        List connections = jdbiHandler.withJdbiUnitOfWork('people') { String datasourceName, DBI dbi ->
+            [dbi.withHandle { handle -> handle.connection },
+             jdbiHandler.withJdbi('people') { String n, DBI d -> d.inTransaction { handle, status -> handle.connection } },
+             jdbiHandler.withJdbiUnitOfWork('people') { String n, DBI d -> d.withHandle { handle -> handle.connection } }]
+        }
+
+        then:
+        connections.unique().size() == 1
+        recordingDBI.unitOfWorkOpens == opens + 1
+        recordingDBI.unitOfWorkJoins == joins + 2
+        recordingDBI.handleCount == 0
+        !recordingDBI.inUnitOfWork
+    }
+
+    void 'Writes made while streaming within a unit of work are not rolled back'() {
+        given:
+        Iterator data = (7000..<7003).collect { [id: it, name: 'name' + it, lastname: 'lastname' + it] }.iterator()
+        jdbiHandler.withBulkInsert('people', 'INSERT INTO people (id, name, lastname) VALUES (:id, :name, :lastname)', data, BulkInsertOptions.defaults())
+
+        when:
+        jdbiHandler.withJdbiUnitOfWork('people') { String datasourceName, DBI dbi ->
+            JdbiStreams.forEach(dbi, 10, 'SELECT id FROM people WHERE id >= ? AND id < ? ORDER BY id', { Map row ->
+                dbi.withHandle { handle ->
+                    handle.insert('INSERT INTO people (id, name, lastname) VALUES (?, ?, ?)', row.id + 100, 'copy', 'copy')
+                }
+            } as Consumer, 7000, 7003)
+        }
+        int count = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle ->
+                handle.createQuery('SELECT COUNT(*) FROM people WHERE id >= 7100 AND id < 7103').mapTo(Integer).first()
+            }
+        }
+
+        then:
+        count == 3
+    }
+
+    void 'A transaction opened within a unit of work spans nested transactions'() {
+        when:
+        jdbiHandler.withJdbiUnitOfWork('people') { String datasourceName, DBI dbi ->
+            dbi.withHandle { Handle handle ->
+                handle.begin()
+                dbi.inTransaction { Handle nested, status ->
+                    nested.insert('INSERT INTO people (id, name, lastname) VALUES (?, ?, ?)', 7200, 'name', 'lastname')
+                }
+                handle.rollback()
+            }
+        }
+        int count = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle ->
+                handle.createQuery('SELECT COUNT(*) FROM people WHERE id = 7200').mapTo(Integer).first()
+            }
+        }
+
+        then:
+        count == 0
+    }
+
+    void 'A bulk insert within a unit of work joins its transaction'() {
+        given:
+        Iterator data = (7300..<7303).collect { [id: it, name: 'name' + it, lastname: 'lastname' + it] }.iterator()
+
+        when:
+        long inserted = jdbiHandler.withJdbiUnitOfWork('people') { String datasourceName, DBI dbi ->
+            dbi.withHandle { Handle handle ->
+                handle.begin()
+                handle.insert('INSERT INTO people (id, name, lastname) VALUES (?, ?, ?)', 7310, 'name', 'lastname')
+                long rows = jdbiHandler.withBulkInsert('people', 'INSERT INTO people (id, name, lastname) VALUES (:id, :name, :lastname)', data,
+                    BulkInsertOptions.defaults().withBatchSize(1).withCommitInterval(1))
+                boolean inTransaction = handle.isInTransaction()
+                handle.rollback()
+                inTransaction ? rows : -1L
+            }
+        }
+        int count = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle ->
+                handle.createQuery('SELECT COUNT(*) FROM people WHERE id >= 7300 AND id <= 7310').mapTo(Integer).first()
+            }
+        }
+
+        then:
+        inserted == 3
+        count == 0
+    }
+
+    void 'Slow statements are logged with bindings and plan'() {
+        when:
+        SlowQueryInfo[] slowQueries = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            RecordingDBI recordingDBI = DBIDecorator.unwrap(dbi, RecordingDBI)
+            SlowQueryLog log = new SlowQueryLog(datasourceName, recordingDBI, 0L, 1d, 'EXPLAIN', 16)
+            recordingDBI.slowQueryLog = log
+            try {
+                dbi.withHandle { handle -> handle.createQuery('SELECT name FROM people WHERE id = :id').bind('id', 1).list() }
+                for (int i = 0; i < 50 && !log.recentSlowQueries; i++) {
+                    Thread.sleep(100)
+                }
+                log.recentSlowQueries
+            } finally {
+                recordingDBI.slowQueryLog = null
+                log.close()
+            }
+        }
+
+        then:
+        slowQueries.length == 1
+        slowQueries[0].sql == 'SELECT name FROM people WHERE id = ?'
+        slowQueries[0].bindings.contains('id')
+        slowQueries[0].plan
+    }
+
+    void 'The slow query writer starts with the first slow statement'() {
+        when:
+        Map result = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            RecordingDBI recordingDBI = DBIDecorator.unwrap(dbi, RecordingDBI)
+            SlowQueryLog log = new SlowQueryLog('lazy', recordingDBI, 0L, 0d, null, 16)
+            boolean before = Thread.allStackTraces.keySet().any { it.name == 'jdbi-slow-query-lazy' }
+            recordingDBI.slowQueryLog = log
+            try {
+                dbi.withHandle { handle -> handle.createQuery('SELECT name FROM people WHERE id = :id').bind('id', 1).list() }
+                boolean after = Thread.allStackTraces.keySet().any { it.name == 'jdbi-slow-query-lazy' }
+                for (int i = 0; i < 50 && !log.recentSlowQueries; i++) {
+                    Thread.sleep(100)
+                }
+                [before: before, after: after, slowQueries: log.recentSlowQueries]
+            } finally {
+                recordingDBI.slowQueryLog = null
+                log.close()
+            }
+        }
+
+        then:
+        !result.before
+        result.after
+        result.slowQueries.length == 1
+        result.slowQueries[0].sql == 'SELECT name FROM people WHERE id = ?'
+        result.slowQueries[0].bindings == null
+        result.slowQueries[0].plan == null
+    }
+
+    void 'SqlObject updates are executed as batches within a scope'() {
+        when:
+        Map result = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            SqlObjectBatch batch = SqlObjectBatch.open(dbi, 2)
+            try {
+                PersonDAO dao = batch.attach(PersonDAO)
+                (6000..<6005).each { int id -> dao.create(id, 'name' + id, 'lastname' + id) }
+                int pending = batch.pendingCount
+                Person person = dao.findById(6004)
+                [pending: pending, person: person]
+            } finally {
+                batch.close()
+            }
+        }
+
+        then:
+        result.pending == 1
+        result.person.name == 'name6004'
+    }
+
+    void 'Closing a SqlObject batch executes pending updates'() {
+        when:
+        SqlObjectBatch scope = null
+        jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            scope = SqlObjectBatch.open(dbi)
+            try {
+                PersonDAO dao = scope.attach(PersonDAO)
+                (6100..<6103).each { int id -> dao.create(id, 'name' + id, 'lastname' + id) }
+                dao.close()
+                assert scope.pendingCount == 3
+            } finally {
+                scope.close()
+            }
+        }
+        int count = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle ->
+                handle.createQuery('SELECT COUNT(*) FROM people WHERE id >= 6100 AND id < 6103').mapTo(Integer).first()
+            }
+        }
+
+        then:
+        scope.updateCounts == [1, 1, 1] as int[]
+        count == 3
+    }
+
+    void 'SqlObject batches execute calls in call order'() {
+        when:
+        Map result = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            SqlObjectBatch batch = SqlObjectBatch.open(dbi)
+            try {
+                PersonBatchDAO dao = batch.attach(PersonBatchDAO)
+                dao.create(6200, 'name6200', 'lastname6200')
+                // the row does not exist yet when renamed
+                dao.rename(6201, 'renamed')
+                dao.create(6201, 'name6201', 'lastname6201')
+                dao.rename(6200, 'renamed')
+                int[] counts = batch.flush()
+                String first = batch.handle.createQuery('SELECT name FROM people WHERE id = 6200').mapTo(String).first()
+                String second = batch.handle.createQuery('SELECT name FROM people WHERE id = 6201').mapTo(String).first()
+                [counts: counts, first: first, second: second]
+            } finally {
+                batch.close()
+            }
+        }
+
+        then:
+        result.counts == [1, 0, 1, 1] as int[]
+        result.first == 'renamed'
+        result.second == 'name6201'
+    }
+
+    void 'Customized SqlObject methods are not batched'() {
+        when:
+        Map result = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle -> handle.execute('CREATE TABLE IF NOT EXISTS batch_keys (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(30))') }
+            SqlObjectBatch batch = SqlObjectBatch.open(dbi)
+            try {
+                PersonBatchDAO dao = batch.attach(PersonBatchDAO)
+                dao.create(6210, 'name6210', 'lastname6210')
+                int pending = batch.pendingCount
+                dao.createWithTimeout(6211, 'name6211', 'lastname6211')
+                int afterTimeout = batch.pendingCount
+                int key = dao.createKey('name6212')
+                int afterKey = batch.pendingCount
+                int count = batch.handle.createQuery('SELECT COUNT(*) FROM people WHERE id >= 6210 AND id < 6212').mapTo(Integer).first()
+                [pending: pending, afterTimeout: afterTimeout, key: key, afterKey: afterKey, count: count, updateCounts: batch.updateCounts]
+            } finally {
+                batch.close()
+            }
+        }
+
+        then:
+        result.pending == 1
+        result.afterTimeout == 0
+        result.afterKey == 0
+        result.key > 0
+        result.count == 2
+        result.updateCounts == [1] as int[]
+    }
+
+    void 'Methods of SqlObjects with a statement locator are not batched'() {
+        when:
+        Map result = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            SqlObjectBatch batch = SqlObjectBatch.open(dbi)
+            try {
+                LocatedPersonDAO dao = batch.attach(LocatedPersonDAO)
+                dao.insertPerson(6220, 'name6220', 'lastname6220')
+                int pending = batch.pendingCount
+                String name = batch.handle.createQuery('SELECT name FROM people WHERE id = 6220').mapTo(String).first()
+                [pending: pending, name: name]
+            } finally {
+                batch.close()
+            }
+        }
+
+        then:
+        result.pending == 0
+        result.name == 'name6220'
+    }
+
+    void 'Blank SqlObject statements in a batch are resolved by the locator of its handle'() {
+        when:
+        Map result = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            SqlObjectBatch batch = SqlObjectBatch.open(dbi)
+            try {
+                batch.handle.statementLocator = new LocatedPersonDAO.PersonStatementLocator()
+                PersonBatchDAO dao = batch.attach(PersonBatchDAO)
+                dao.insertPerson(6230, 'name6230', 'lastname6230')
+                int pending = batch.pendingCount
+                batch.flush()
+                String name = batch.handle.createQuery('SELECT name FROM people WHERE id = 6230').mapTo(String).first()
+                [pending: pending, name: name]
+            } finally {
+                batch.close()
+            }
+        }
+
+        then:
+        result.pending == 1
+        result.name == 'name6230'
+    }
+
+    void 'Idle DBIs are evicted and created again when needed'() {
+        given:
+        DefaultJdbiStorage storage = (DefaultJdbiStorage) jdbiStorage
+        DBI first = jdbiHandler.withJdbi('ephemeral') { String datasourceName, DBI dbi -> dbi }
+        long evictions = storage.evictions
+        long recreations = storage.recreations
+
+        when:
+        int busy = jdbiHandler.withJdbi('ephemeral') { String datasourceName, DBI dbi ->
+            Thread.sleep(200)
+            storage.evictIdle()
+        }
+        Thread.sleep(200)
+        storage.evictIdle()
+        boolean gone = storage.get('ephemeral') == null
+        DBI second = jdbiHandler.withJdbi('ephemeral') { String datasourceName, DBI dbi -> dbi }
+
+        then:
+        busy == 0
+        gone
+        !first.is(second)
+        storage.evictions == evictions + 1
+        storage.recreations == recreations + 1
+        jdbiHandler.withJdbi('ephemeral') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle -> handle.createQuery('SELECT 1').mapTo(Integer).first() }
+        } == 1
+    }
+
+    void 'Callers racing with an eviction wait until the evicted DBI is removed'() {
+        given:
+        DBI first = jdbiHandler.withJdbi('ephemeral') { String datasourceName, DBI dbi -> dbi }
+        RecordingDBI recordingDBI = DBIDecorator.unwrap(first, RecordingDBI)
+        ExecutorService executor = Executors.newSingleThreadExecutor()
+        Thread.sleep(200)
+
+        when:
+        boolean retired = recordingDBI.retire(100)
+        Future<DBI> next = executor.submit({ jdbiHandler.withJdbi('ephemeral') { String n, DBI d -> d } } as Callable<DBI>)
+        Thread.sleep(100)
+        boolean waiting = !next.done
+        jdbiFactory.destroy('ephemeral', first)
+        jdbiStorage.remove('ephemeral')
+        recordingDBI.removed()
+        DBI second = next.get(5, TimeUnit.SECONDS)
+
+        then:
+        retired
+        waiting
+        !first.is(second)
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    void 'Shard keys map consistently to the datasources of a shard group'() {
+        when:
+        Map<Integer, String> shards = (1..100).collectEntries { int tenant ->
+            [(tenant): jdbiHandler.withJdbiShard('tenants', tenant) { String datasourceName, DBI dbi -> datasourceName }]
+        }
+        List<String> again = (1..100).collect { int tenant ->
+            jdbiHandler.withJdbiShard('tenants', tenant) { String datasourceName, DBI dbi -> datasourceName }
+        }
+
+        then:
+        shards.values() as List == again
+        shards.values() as Set == ['tenants1', 'tenants2'] as Set
+    }
+
+    void 'Scatter-gather queries every datasource of a shard group'() {
+        when:
+        Stream<List<String>> stream = jdbiHandler.withJdbiShards('tenants') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle -> handle.createQuery('SELECT 1').mapTo(Integer).list() }.collect { datasourceName }
+        }
+        List<String> names
+        try {
+            names = stream.flatMap { List<String> rows -> rows.stream() }.collect(Collectors.toList())
+        } finally {
+            stream.close()
+        }
+
+        then:
+        names.sort() == ['tenants1', 'tenants2']
+    }
+
+    void 'A failing shard fails the scatter-gather stream and closing it cancels the remaining shards'() {
+        given:
+        CountDownLatch busy = new CountDownLatch(1)
+        // tenants2 runs a single task at a time
+        CompletableFuture blocker = jdbiHandler.withJdbiAsync('tenants2') { String datasourceName, DBI dbi ->
+            busy.await(5, TimeUnit.SECONDS)
+        }
+        AtomicBoolean ran = new AtomicBoolean()
+
+        when:
+        Stream<String> stream = jdbiHandler.withJdbiShards('tenants') { String datasourceName, DBI dbi ->
+            if (datasourceName == 'tenants1') {
+                throw new IllegalStateException('boom')
+            }
+            ran.set(true)
+            datasourceName
+        }
+        Throwable failure = null
+        try {
+            stream.collect(Collectors.toList())
+        } catch (RuntimeJdbiException e) {
+            failure = e
+        } finally {
+            stream.close()
+        }
+        busy.countDown()
+        blocker.get(5, TimeUnit.SECONDS)
+        Thread.sleep(200)
+
+        then:
+        failure.cause instanceof IllegalStateException
+        !ran.get()
+    }
+
+    void 'An unknown shard group is rejected'() {
+        when:
+        jdbiHandler.withJdbiShard('unknown', 1) { String datasourceName, DBI dbi -> datasourceName }
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    void 'Queued statements with the same key are coalesced and written behind'() {
+        given:
+        String sql = 'INSERT INTO people (id, name, lastname) VALUES (:id, :name, :lastname)'
+
+        when:
+        jdbiWriteBehind.enqueue('people', sql, 5000, [id: 5000, name: 'first', lastname: 'lastname'])
+        jdbiWriteBehind.enqueue('people', sql, 5001, [id: 5001, name: 'name', lastname: 'lastname'])
+        jdbiWriteBehind.enqueue('people', sql, 5000, [id: 5000, name: 'second', lastname: 'lastname'])
+        jdbiWriteBehind.enqueue('people', sql, [id: 5002, name: 'name', lastname: 'lastname'])
+        jdbiWriteBehind.flush('people')
+        List names = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle ->
+                handle.createQuery('SELECT name FROM people WHERE id >= 5000 AND id < 5003 ORDER BY id')
+                    .mapTo(String)
+                    .list()
+            }
+        }
+
+        then:
+        names == ['second', 'name', 'name']
+        jdbiWriteBehind.getPendingCount('people') == 0
+    }
+
+    void 'Draining write-behind queues writes pending statements and rejects new ones'() {
+        given:
+        String sql = 'INSERT INTO people (id, name, lastname) VALUES (:id, :name, :lastname)'
+
+        when:
+        jdbiWriteBehind.enqueue('people', sql, [id: 5100, name: 'name', lastname: 'lastname'])
+        jdbiWriteBehind.enqueue('people', sql, [id: 5101, name: 'name', lastname: 'lastname'])
+        jdbiWriteBehind.drain()
+        int count = jdbiHandler.withJdbi('people') { String datasourceName, DBI dbi ->
+            dbi.withHandle { handle ->
+                handle.createQuery('SELECT COUNT(*) FROM people WHERE id >= 5100 AND id < 5102').mapTo(Integer).first()
+            }
+        }
+
+        then:
+        count == 2
+
+        when:
+        jdbiWriteBehind.enqueue('people', sql, [id: 5102, name: 'name', lastname: 'lastname'])
+
+        then:
+        thrown(RuntimeJdbiException)
+    }
+
     @BindTo(JdbiBootstrap)
     private TestJdbiBootstrap bootstrap = new TestJdbiBootstrap()
 
+    @BindTo(JdbiMetrics)
+    private TestJdbiMetrics metrics = new TestJdbiMetrics()
+
     private class TestEventHandler {
         List<String> events = []
 
@@ -0,0 +1,42 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jdbi;
+
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.sqlobject.customizers.QueryTimeout;
+
+public interface PersonBatchDAO {
+    @SqlUpdate("insert into people (id, name, lastname) values (:id, :name, :lastname)")
+    void create(@Bind("id") int id, @Bind("name") String name, @Bind("lastname") String lastname);
+
+    @SqlUpdate("update people set name = :name where id = :id")
+    int rename(@Bind("id") int id, @Bind("name") String name);
+
+    @QueryTimeout(5)
+    @SqlUpdate("insert into people (id, name, lastname) values (:id, :name, :lastname)")
+    void createWithTimeout(@Bind("id") int id, @Bind("name") String name, @Bind("lastname") String lastname);
+
+    @GetGeneratedKeys
+    @SqlUpdate("insert into batch_keys (name) values (:name)")
+    int createKey(@Bind("name") String name);
+
+    @SqlUpdate
+    void insertPerson(@Bind("id") int id, @Bind("name") String name, @Bind("lastname") String lastname);
+}
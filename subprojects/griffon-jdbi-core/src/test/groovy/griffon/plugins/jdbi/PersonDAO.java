@@ -32,6 +32,10 @@ public interface PersonDAO {
     @SqlQuery("select id, name, lastname from people where id = :id")
     Person findById(@Bind("id") int id);
 
+    @CachedQuery(tables = "people")
+    @SqlQuery("select count(*) from people where id >= :lower")
+    int countFrom(@Bind("lower") int lower);
+
     @SqlUpdate("insert into people (id, name, lastname) values (:id, :name, :lastname)")
     void create(@Bind("id") int id, @Bind("name") String name, @Bind("lastname") String lastname);
 
@@ -20,13 +20,19 @@ package griffon.plugins.jdbi
 import griffon.annotations.core.Nonnull
 import org.skife.jdbi.v2.DBI
 
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.atomic.AtomicInteger
+
 class TestJdbiBootstrap implements JdbiBootstrap {
     boolean initWitness
     boolean destroyWitness
+    final ConcurrentMap<String, AtomicInteger> initCounts = new ConcurrentHashMap<>()
 
     @Override
     void init(@Nonnull String datasourceName, @Nonnull DBI dbi) {
         initWitness = true
+        initCounts.computeIfAbsent(datasourceName, { String key -> new AtomicInteger() }).incrementAndGet()
     }
 
     @Override
@@ -0,0 +1,51 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.jdbi
+
+import griffon.annotations.core.Nonnull
+
+import java.util.concurrent.ConcurrentLinkedQueue
+
+class TestJdbiMetrics implements JdbiMetrics {
+    final Queue<String> events = new ConcurrentLinkedQueue<>()
+
+    @Override
+    void handleOpened(@Nonnull String datasourceName, long acquisitionNanos) {
+        events << "opened:${datasourceName}".toString()
+    }
+
+    @Override
+    void handleClosed(@Nonnull String datasourceName, long heldNanos) {
+        events << "closed:${datasourceName}".toString()
+    }
+
+    @Override
+    void statementExecuted(@Nonnull String datasourceName, @Nonnull String statementName, long elapsedNanos) {
+        events << "statement:${datasourceName}:${statementName}".toString()
+    }
+
+    @Override
+    void transactionCompleted(@Nonnull String datasourceName, boolean committed, long elapsedNanos) {
+        events << "transaction:${datasourceName}:${committed ? 'commit' : 'rollback'}".toString()
+    }
+
+    @Override
+    void batchExecuted(@Nonnull String datasourceName, int size) {
+        events << "batch:${datasourceName}:${size}".toString()
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi
+
+import org.skife.jdbi.v2.StatementContext
+import spock.lang.Specification
+
+import java.sql.Connection
+import java.sql.DriverManager
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+
+class CachingStatementBuilderSpec extends Specification {
+    private static final String SQL = 'SELECT 1'
+
+    private Connection connection = DriverManager.getConnection('jdbc:h2:mem:statement-cache')
+    private StatementCacheStatistics statistics = new StatementCacheStatistics()
+    private CachingStatementBuilder builder = new CachingStatementBuilder(2, statistics)
+
+    void cleanup() {
+        builder.close(connection)
+        connection.close()
+    }
+
+    void 'Statements are prepared once and reused once closed'() {
+        when:
+        PreparedStatement first = builder.create(connection, SQL, Stub(StatementContext))
+        builder.close(connection, SQL, first)
+        PreparedStatement second = builder.create(connection, SQL, Stub(StatementContext))
+
+        then:
+        first.is(second)
+        !second.closed
+        statistics.misses == 1
+        statistics.hits == 1
+    }
+
+    void 'Statements still in use are not handed out again'() {
+        when:
+        PreparedStatement outer = builder.create(connection, SQL, Stub(StatementContext))
+        PreparedStatement inner = builder.create(connection, SQL, Stub(StatementContext))
+        builder.close(connection, SQL, inner)
+        builder.close(connection, SQL, outer)
+        PreparedStatement next = builder.create(connection, SQL, Stub(StatementContext))
+
+        then:
+        !outer.is(inner)
+        inner.closed
+        !outer.closed
+        next.is(outer)
+        statistics.misses == 2
+        statistics.hits == 1
+    }
+
+    void 'Customizations are undone before a statement is reused'() {
+        given:
+        PreparedStatement statement = builder.create(connection, SQL, Stub(StatementContext))
+        int fetchSize = statement.fetchSize
+        int maxRows = statement.maxRows
+        int queryTimeout = statement.queryTimeout
+
+        when:
+        statement.fetchSize = 100
+        statement.maxRows = 5
+        statement.queryTimeout = 30
+        builder.close(connection, SQL, statement)
+        statement = builder.create(connection, SQL, Stub(StatementContext))
+
+        then:
+        statement.fetchSize == fetchSize
+        statement.maxRows == maxRows
+        statement.queryTimeout == queryTimeout
+    }
+
+    void 'Statements returning generated keys or updatable results are not cached'() {
+        given:
+        StatementContext ctx = Stub(StatementContext) {
+            isReturningGeneratedKeys() >> generatedKeys
+            isConcurrentUpdatable() >> updatable
+        }
+
+        when:
+        PreparedStatement first = builder.create(connection, SQL, ctx)
+        builder.close(connection, SQL, first)
+        PreparedStatement second = builder.create(connection, SQL, ctx)
+        builder.close(connection, SQL, second)
+
+        then:
+        !first.is(second)
+        first.closed
+        statistics.misses == 0
+        statistics.hits == 0
+        !updatable || second.resultSetConcurrency == ResultSet.CONCUR_UPDATABLE
+
+        where:
+        generatedKeys | updatable
+        true          | false
+        false         | true
+    }
+
+    void 'Evicted statements are closed once no longer in use'() {
+        when:
+        PreparedStatement inUse = builder.create(connection, 'SELECT 1', Stub(StatementContext))
+        PreparedStatement idle = builder.create(connection, 'SELECT 2', Stub(StatementContext))
+        builder.close(connection, 'SELECT 2', idle)
+        builder.create(connection, 'SELECT 3', Stub(StatementContext))
+        builder.create(connection, 'SELECT 4', Stub(StatementContext))
+
+        then:
+        statistics.evictions == 2
+        idle.closed
+        !inUse.closed
+
+        when:
+        builder.close(connection, 'SELECT 1', inUse)
+
+        then:
+        inUse.closed
+    }
+}
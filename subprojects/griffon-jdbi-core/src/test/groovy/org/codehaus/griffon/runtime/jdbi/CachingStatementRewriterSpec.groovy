@@ -0,0 +1,80 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi
+
+import org.skife.jdbi.v2.exceptions.UnableToExecuteStatementException
+import org.skife.jdbi.v2.tweak.RewrittenStatement
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.sql.PreparedStatement
+
+@Unroll
+class CachingStatementRewriterSpec extends Specification {
+    void 'Parsing "#input" results in "#sql" with #params'() {
+        when:
+        CachingStatementRewriter.ParsedStatement statement = CachingStatementRewriter.parse(input)
+
+        then:
+        statement.sql == sql
+        statement.params as List == params
+
+        where:
+        input                                                  || sql                                            | params
+        'select * from people'                                 || 'select * from people'                         | []
+        'select * from people where id = :id'                  || 'select * from people where id = ?'            | ['id']
+        'insert into people values (:id, :name, :lastname)'    || 'insert into people values (?, ?, ?)'          | ['id', 'name', 'lastname']
+        'select * from people where id = ?'                    || 'select * from people where id = ?'            | ['*']
+        "select ':id' from people where name = :name"          || "select ':id' from people where name = ?"      | ['name']
+        "select 'it\\'s :id' from people"                      || "select 'it\\'s :id' from people"              | []
+        'select ":id" from people'                             || 'select ":id" from people'                     | []
+        'select \\:id from people'                             || 'select :id from people'                       | []
+        'select * from people where id = :p.id'                || 'select * from people where id = ?'            | ['p.id']
+        'select id::text from people where id = :id'           || 'select id::text from people where id = ?'     | ['id']
+        'select :id::text from people'                         || 'select ?::text from people'                   | ['id']
+        'select * from people where id = :id and name = ?'     || 'select * from people where id = ? and name = ?' | ['id', '*']
+    }
+
+    void 'Statements mixing named and positional parameters cannot be bound'() {
+        given:
+        RewrittenStatement statement = new CachingStatementRewriter(2).rewrite('select * from people where id = ? and name = :name', null, null)
+
+        when:
+        statement.bind(null, Stub(PreparedStatement))
+
+        then:
+        UnableToExecuteStatementException e = thrown()
+        e.message.startsWith('Cannot mix named and positional parameters')
+    }
+
+    void 'Parsed statements are cached'() {
+        given:
+        CachingStatementRewriter rewriter = new CachingStatementRewriter(2)
+
+        when:
+        rewriter.rewrite('select * from people where id = :id', null, null)
+        rewriter.rewrite('select * from people where id = :id', null, null)
+        rewriter.rewrite('select * from people where name = :name', null, null)
+        rewriter.rewrite('select * from people where lastname = :lastname', null, null)
+
+        then:
+        rewriter.hits == 1
+        rewriter.misses == 3
+        rewriter.size == 2
+    }
+}
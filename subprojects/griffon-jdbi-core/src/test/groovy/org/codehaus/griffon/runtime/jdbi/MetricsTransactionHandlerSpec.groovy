@@ -0,0 +1,101 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi
+
+import griffon.plugins.jdbi.JdbiMetrics
+import org.skife.jdbi.v2.Handle
+import org.skife.jdbi.v2.tweak.TransactionHandler
+import spock.lang.Specification
+
+class MetricsTransactionHandlerSpec extends Specification {
+    private Map<Handle, Integer> depths = new IdentityHashMap<>()
+    private TransactionHandler delegate = Stub(TransactionHandler) {
+        begin(_) >> { Handle handle -> depths[handle] = (depths[handle] ?: 0) + 1 }
+        commit(_) >> { Handle handle -> depths[handle] = depths[handle] - 1 }
+        rollback(_) >> { Handle handle -> depths.remove(handle) }
+        isInTransaction(_) >> { Handle handle -> (depths[handle] ?: 0) > 0 }
+    }
+    private JdbiMetrics metrics = Mock(JdbiMetrics)
+    private MetricsTransactionHandler handler = new MetricsTransactionHandler(delegate, 'people', metrics)
+
+    void 'Only outermost transactions are reported'() {
+        given:
+        Handle handle = Stub(Handle)
+
+        when:
+        handler.begin(handle)
+        handler.begin(handle)
+        handler.commit(handle)
+
+        then:
+        0 * metrics.transactionCompleted(*_)
+
+        when:
+        handler.commit(handle)
+
+        then:
+        1 * metrics.transactionCompleted('people', true, _)
+    }
+
+    void 'Interleaved transactions of different handles are reported separately'() {
+        given:
+        Handle first = Stub(Handle)
+        Handle second = Stub(Handle)
+
+        when:
+        handler.begin(first)
+        Thread.sleep(50)
+        handler.begin(second)
+        handler.commit(first)
+
+        then:
+        1 * metrics.transactionCompleted('people', true, { it >= 50_000_000L })
+
+        when:
+        handler.rollback(second)
+
+        then:
+        1 * metrics.transactionCompleted('people', false, { it < 50_000_000L })
+    }
+
+    void 'A failed commit is reported once as rolled back'() {
+        given:
+        Handle handle = Stub(Handle)
+        boolean open = false
+        TransactionHandler failing = Stub(TransactionHandler) {
+            begin(_) >> { open = true }
+            isInTransaction(_) >> { open }
+            commit(_) >> { throw new IllegalStateException('commit failed') }
+        }
+        MetricsTransactionHandler handler = new MetricsTransactionHandler(failing, 'people', metrics)
+
+        when:
+        handler.begin(handle)
+        handler.commit(handle)
+
+        then:
+        thrown(IllegalStateException)
+        1 * metrics.transactionCompleted('people', false, _)
+
+        when:
+        handler.rollback(handle)
+
+        then:
+        0 * metrics.transactionCompleted(*_)
+    }
+}
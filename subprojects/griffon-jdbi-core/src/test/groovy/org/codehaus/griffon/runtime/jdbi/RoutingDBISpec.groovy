@@ -0,0 +1,100 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi
+
+import org.skife.jdbi.v2.DBI
+import spock.lang.Specification
+
+import javax.sql.DataSource
+import java.sql.SQLException
+import java.util.function.Function
+
+class RoutingDBISpec extends Specification {
+    private RecordingDBI primary = recordingDBI()
+    private Map<String, Integer> resolutions = [:].withDefault { 0 }
+
+    void 'A replica that cannot be resolved is not resolved again until the retry interval elapses'() {
+        given:
+        RoutingDBI dbi = new RoutingDBI('primary', primary, ['broken'], resolver([:]), 100L)
+
+        when:
+        List<DBI> targets = (1..3).collect { dbi.readOnly() }
+
+        then:
+        targets.every { it.is(primary) }
+        resolutions.broken == 1
+        dbi.statistics.fallbacks == 3
+
+        when:
+        Thread.sleep(200L)
+        dbi.readOnly()
+
+        then:
+        resolutions.broken == 2
+    }
+
+    void 'A replica that recovers is routed to again'() {
+        given:
+        RecordingDBI replica = recordingDBI()
+        Map<String, DBI> available = [:]
+        RoutingDBI dbi = new RoutingDBI('primary', primary, ['replica'], resolver(available), 0L)
+
+        when:
+        DBI first = dbi.readOnly()
+        available.replica = replica
+        DBI second = dbi.readOnly()
+
+        then:
+        first.is(primary)
+        second.is(replica)
+    }
+
+    void 'Replicas whose circuit breaker is open are skipped'() {
+        given:
+        RecordingDBI down = recordingDBI()
+        CircuitBreaker breaker = new CircuitBreaker('down', down, 50d, 100d, 10000L, 1, 1, 60000L, 1, null)
+        down.circuitBreaker = breaker
+        breaker.onError(0L, new SQLException('Connection refused', '08001'))
+        RecordingDBI up = recordingDBI()
+        up.increaseHandleCount()
+        RoutingDBI dbi = new RoutingDBI('primary', primary, ['down', 'up'], resolver([down: down, up: up]))
+
+        when:
+        List<DBI> targets = (1..10).collect { dbi.readOnly() }
+
+        then:
+        breaker.rejecting
+        targets.every { it.is(up) }
+    }
+
+    private Function<String, DBI> resolver(Map<String, DBI> replicas) {
+        return { String replicaName ->
+            resolutions[replicaName]++
+            DBI replica = replicas[replicaName]
+            if (replica == null) {
+                throw new IllegalStateException("Datasource '${replicaName}' cannot be connected")
+            }
+            replica
+        } as Function<String, DBI>
+    }
+
+    private RecordingDBI recordingDBI() {
+        DataSource dataSource = Stub(DataSource)
+        new RecordingDBI(dataSource, new DBI(dataSource))
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi
+
+import griffon.plugins.jdbi.JdbiCallback
+import griffon.plugins.jdbi.JdbiHandler
+import griffon.plugins.jdbi.exceptions.CircuitBreakerOpenException
+import griffon.plugins.jdbi.exceptions.WriteBehindClosedException
+import griffon.plugins.jdbi.exceptions.WriteBehindOverflowException
+import org.skife.jdbi.v2.DBI
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class WriteBehindQueueSpec extends Specification {
+    private static final String INSERT = 'INSERT INTO entries (id, name) VALUES (:id, :name)'
+
+    private DBI dbi = new DBI('jdbc:h2:mem:write-behind;DB_CLOSE_DELAY=-1')
+    private CountDownLatch entered = new CountDownLatch(1)
+    private CountDownLatch release = new CountDownLatch(0)
+    private List<RuntimeException> failures = []
+    private JdbiHandler jdbiHandler = Stub(JdbiHandler) {
+        withJdbi(_ as String, _ as JdbiCallback) >> { String datasourceName, JdbiCallback callback ->
+            entered.countDown()
+            release.await(5, TimeUnit.SECONDS)
+            if (failures) {
+                throw failures.remove(0)
+            }
+            callback.handle(datasourceName, dbi)
+        }
+    }
+
+    void setup() {
+        dbi.withHandle { handle -> handle.execute('CREATE TABLE entries (id INTEGER NOT NULL PRIMARY KEY, name VARCHAR(30))') }
+    }
+
+    void cleanup() {
+        dbi.withHandle { handle -> handle.execute('DROP TABLE entries') }
+    }
+
+    void 'Statements are written in order, batching consecutive statements with the same SQL'() {
+        given:
+        WriteBehindQueue queue = new WriteBehindQueue('entries', jdbiHandler, 10, 100, 60000L, 0L)
+
+        when:
+        queue.offer(INSERT, null, [id: 1, name: 'one'])
+        queue.offer('UPDATE entries SET name = :name', null, [name: 'updated'])
+        queue.offer(INSERT, null, [id: 2, name: 'two'])
+        queue.flush()
+        queue.close(1000L)
+
+        then:
+        names() == ['updated', 'two']
+    }
+
+    void 'Parameters are copied when statements are queued'() {
+        given:
+        WriteBehindQueue queue = new WriteBehindQueue('entries', jdbiHandler, 10, 100, 60000L, 0L)
+        Map<String, Object> params = [id: 1, name: 'one']
+
+        when:
+        queue.offer(INSERT, null, params)
+        params.id = 2
+        params.name = 'two'
+        queue.offer(INSERT, null, params)
+        queue.flush()
+        queue.close(1000L)
+
+        then:
+        names() == ['one', 'two']
+    }
+
+    void 'Statements being written count against the capacity of the queue'() {
+        given:
+        release = new CountDownLatch(1)
+        WriteBehindQueue queue = new WriteBehindQueue('entries', jdbiHandler, 2, 100, 60000L, 50L)
+        queue.offer(INSERT, null, [id: 1, name: 'one'])
+        queue.offer(INSERT, null, [id: 2, name: 'two'])
+        Thread flusher = Thread.start { queue.flush() }
+        entered.await(5, TimeUnit.SECONDS)
+
+        when:
+        queue.offer(INSERT, null, [id: 3, name: 'three'])
+
+        then:
+        WriteBehindOverflowException e = thrown()
+        e.capacity == 2
+        queue.pendingCount == 2
+
+        when:
+        release.countDown()
+        flusher.join(5000L)
+        queue.offer(INSERT, null, [id: 3, name: 'three'])
+        queue.close(1000L)
+
+        then:
+        names() == ['one', 'two', 'three']
+    }
+
+    void 'Statements are written once the flush interval elapses'() {
+        given:
+        WriteBehindQueue queue = new WriteBehindQueue('entries', jdbiHandler, 10, 100, 50L, 0L)
+
+        when:
+        queue.offer(INSERT, null, [id: 1, name: 'one'])
+        for (int i = 0; i < 50 && !names(); i++) {
+            Thread.sleep(100)
+        }
+
+        then:
+        names() == ['one']
+        queue.pendingCount == 0
+
+        cleanup:
+        queue.close(1000L)
+    }
+
+    void 'Closing a queue writes pending statements and rejects new ones'() {
+        given:
+        WriteBehindQueue queue = new WriteBehindQueue('entries', jdbiHandler, 10, 100, 60000L, 0L)
+
+        when:
+        queue.offer(INSERT, null, [id: 1, name: 'one'])
+        queue.offer(INSERT, null, [id: 2, name: 'two'])
+        queue.close(5000L)
+
+        then:
+        names() == ['one', 'two']
+        queue.pendingCount == 0
+
+        when:
+        queue.offer(INSERT, null, [id: 3, name: 'three'])
+
+        then:
+        thrown(WriteBehindClosedException)
+    }
+
+    void 'Statements are queued again when the datasource is unavailable'() {
+        given:
+        failures << new CircuitBreakerOpenException('entries')
+        WriteBehindQueue queue = new WriteBehindQueue('entries', jdbiHandler, 10, 100, 50L, 0L)
+
+        when:
+        queue.offer(INSERT, 1, [id: 1, name: 'one'])
+        queue.offer(INSERT, 2, [id: 2, name: 'two'])
+        queue.flush()
+        int pending = queue.pendingCount
+        queue.offer(INSERT, 1, [id: 1, name: 'uno'])
+        queue.flush()
+        queue.close(1000L)
+
+        then:
+        pending == 2
+        names() == ['uno', 'two']
+        queue.statistics.failedFlushes == 1
+        queue.statistics.requeued == 2
+        queue.statistics.written == 2
+        queue.statistics.lost == 0
+    }
+
+    void 'Statements failing for other reasons are counted as lost'() {
+        given:
+        failures << new IllegalStateException('boom')
+        WriteBehindQueue queue = new WriteBehindQueue('entries', jdbiHandler, 10, 100, 60000L, 0L)
+
+        when:
+        queue.offer(INSERT, null, [id: 1, name: 'one'])
+        queue.flush()
+        queue.close(1000L)
+
+        then:
+        !names()
+        queue.pendingCount == 0
+        queue.statistics.failedFlushes == 1
+        queue.statistics.requeued == 0
+        queue.statistics.lost == 1
+    }
+
+    private List<String> names() {
+        dbi.withHandle { handle -> handle.createQuery('SELECT name FROM entries ORDER BY id').mapTo(String).list() }
+    }
+}
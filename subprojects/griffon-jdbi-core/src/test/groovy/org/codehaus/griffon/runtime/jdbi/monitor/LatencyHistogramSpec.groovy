@@ -0,0 +1,125 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi.monitor
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+@Unroll
+class LatencyHistogramSpec extends Specification {
+    void 'An empty histogram reports zeroes'() {
+        when:
+        LatencyStatistics statistics = new LatencyHistogram('empty').snapshot()
+
+        then:
+        statistics.name == 'empty'
+        statistics.count == 0
+        statistics.mean == 0d
+        statistics.p50 == 0d
+        statistics.p95 == 0d
+        statistics.p99 == 0d
+        statistics.max == 0d
+    }
+
+    void 'Values below 16 microseconds are tracked exactly'() {
+        given:
+        LatencyHistogram histogram = new LatencyHistogram('small')
+
+        when:
+        (1..10).each { histogram.recordMicros(it) }
+        LatencyStatistics statistics = histogram.snapshot()
+
+        then:
+        statistics.count == 10
+        Math.abs(statistics.mean - 0.0055d) < 1e-9d
+        statistics.p50 == 0.005d
+        statistics.p95 == 0.01d
+        statistics.p99 == 0.01d
+        statistics.max == 0.01d
+    }
+
+    void 'A value of #micros microseconds is reported within 7% as #expected'() {
+        given:
+        LatencyHistogram histogram = new LatencyHistogram('single')
+
+        when:
+        histogram.recordMicros(micros)
+        LatencyStatistics statistics = histogram.snapshot()
+
+        then:
+        statistics.p50 == expected / 1000d
+        Math.abs(expected - micros) / micros < 0.07d
+        statistics.max == micros / 1000d
+
+        where:
+        micros  || expected
+        16      || 16
+        31      || 31
+        32      || 33
+        100     || 102
+        1000    || 1008
+        123456  || 124928
+    }
+
+    void 'Percentiles are computed from the rank of each quantile'() {
+        given:
+        LatencyHistogram histogram = new LatencyHistogram('percentiles')
+
+        when:
+        (1..100).each { histogram.recordMicros(it * 1000L) }
+        LatencyStatistics statistics = histogram.snapshot()
+
+        then:
+        statistics.count == 100
+        statistics.mean == 50.5d
+        Math.abs(statistics.p50 - 50d) / 50d < 0.07d
+        Math.abs(statistics.p95 - 95d) / 95d < 0.07d
+        Math.abs(statistics.p99 - 99d) / 99d < 0.07d
+        statistics.p50 <= statistics.p95
+        statistics.p95 <= statistics.p99
+        statistics.max == 100d
+    }
+
+    void 'Nanoseconds are truncated to microseconds and negative values count as zero'() {
+        given:
+        LatencyHistogram histogram = new LatencyHistogram('conversions')
+
+        when:
+        histogram.recordNanos(5_999L)
+        histogram.recordMicros(-3L)
+        LatencyStatistics statistics = histogram.snapshot()
+
+        then:
+        statistics.count == 2
+        statistics.max == 0.005d
+        statistics.p50 == 0d
+    }
+
+    void 'Resetting a histogram discards every value'() {
+        given:
+        LatencyHistogram histogram = new LatencyHistogram('reset')
+        histogram.recordMicros(1000L)
+
+        when:
+        histogram.reset()
+
+        then:
+        histogram.count == 0
+        histogram.snapshot().max == 0d
+    }
+}
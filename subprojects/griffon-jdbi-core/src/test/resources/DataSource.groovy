@@ -62,4 +62,55 @@ dataSources {
         dbCreate = 'create'
         url = 'jdbc:h2:mem:${application_name}-people'
     }
+    replicated {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:mem:${application_name}-replicated'
+        replicas = ['internal']
+    }
+    tenants1 {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:mem:${application_name}-tenants1'
+        shard_group = 'tenants'
+    }
+    tenants2 {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:mem:${application_name}-tenants2'
+        shard_group = 'tenants'
+        async_pool_size = 1
+    }
+    ephemeral {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:mem:${application_name}-ephemeral'
+        dbi_idle_timeout = 100
+    }
+    compact {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:mem:${application_name}-compact'
+        compact_rows = true
+    }
+    manual {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        schema = false
+        url = 'jdbc:h2:mem:${application_name}-manual'
+        pool {
+            autoCommit = false
+        }
+    }
 }
\ No newline at end of file
@@ -38,10 +38,27 @@ public interface JdbiAwareConstants extends BaseConstants {
     String JDBI_HANDLER_TYPE = "griffon.plugins.jdbi.JdbiHandler";
     String JDBI_CALLBACK_TYPE = "griffon.plugins.jdbi.JdbiCallback";
     String RUNTIME_JDBI_EXCEPTION_TYPE = "griffon.plugins.jdbi.exceptions.RuntimeJdbiException";
+    String COMPLETABLE_FUTURE_TYPE = "java.util.concurrent.CompletableFuture";
+    String EXECUTOR_TYPE = "java.util.concurrent.Executor";
+    String ITERATOR_TYPE = "java.util.Iterator";
+    String BULK_INSERT_OPTIONS_TYPE = "griffon.plugins.jdbi.BulkInsertOptions";
+    String PRIMITIVE_LONG_TYPE = "long";
+    String TRANSACTION_CALLBACK_TYPE = "org.skife.jdbi.v2.TransactionCallback";
+    String TRANSACTION_ISOLATION_LEVEL_TYPE = "org.skife.jdbi.v2.TransactionIsolationLevel";
+    String RETRY_POLICY_TYPE = "griffon.plugins.jdbi.RetryPolicy";
+    String STREAM_TYPE = "java.util.stream.Stream";
+    String OBJECT_TYPE = "java.lang.Object";
     String JDBI_HANDLER_PROPERTY = "jdbiHandler";
     String JDBI_HANDLER_FIELD_NAME = "this$" + JDBI_HANDLER_PROPERTY;
 
     String METHOD_WITH_JDBI = "withJdbi";
+    String METHOD_WITH_JDBI_READ_ONLY = "withJdbiReadOnly";
+    String METHOD_WITH_JDBI_UNIT_OF_WORK = "withJdbiUnitOfWork";
+    String METHOD_WITH_JDBI_ASYNC = "withJdbiAsync";
+    String METHOD_WITH_JDBI_SHARD = "withJdbiShard";
+    String METHOD_WITH_JDBI_SHARDS = "withJdbiShards";
+    String METHOD_WITH_JDBI_TRANSACTION = "withJdbiTransaction";
+    String METHOD_WITH_BULK_INSERT = "withBulkInsert";
     String METHOD_CLOSE_JDBI = "closeJdbi";
     String DATASOURCE_NAME = "datasourceName";
     String CALLBACK = "callback";
@@ -74,6 +91,152 @@ public interface JdbiAwareConstants extends BaseConstants {
                 annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
                 annotatedType(annotations(ANNOTATION_NONNULL), JDBI_CALLBACK_TYPE, R)),
             throwing(type(RUNTIME_JDBI_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_READ_ONLY,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), JDBI_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_JDBI_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_READ_ONLY,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JDBI_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_JDBI_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_UNIT_OF_WORK,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), JDBI_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_JDBI_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_UNIT_OF_WORK,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JDBI_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_JDBI_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_JDBI_ASYNC,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), JDBI_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_JDBI_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_JDBI_ASYNC,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JDBI_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_JDBI_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(COMPLETABLE_FUTURE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_JDBI_ASYNC,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JDBI_CALLBACK_TYPE, R),
+                annotatedType(annotations(ANNOTATION_NONNULL), EXECUTOR_TYPE)),
+            throwing(type(RUNTIME_JDBI_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_SHARD,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), OBJECT_TYPE),
+                annotatedType(annotations(ANNOTATION_NONNULL), JDBI_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_JDBI_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(STREAM_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_JDBI_SHARDS,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JDBI_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_JDBI_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_TRANSACTION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), TRANSACTION_CALLBACK_TYPE, R),
+                annotatedType(annotations(ANNOTATION_NONNULL), RETRY_POLICY_TYPE)),
+            throwing(type(RUNTIME_JDBI_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_TRANSACTION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), TRANSACTION_CALLBACK_TYPE, R),
+                annotatedType(annotations(ANNOTATION_NONNULL), RETRY_POLICY_TYPE)),
+            throwing(type(RUNTIME_JDBI_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_JDBI_TRANSACTION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), TRANSACTION_ISOLATION_LEVEL_TYPE),
+                annotatedType(annotations(ANNOTATION_NONNULL), TRANSACTION_CALLBACK_TYPE, R),
+                annotatedType(annotations(ANNOTATION_NONNULL), RETRY_POLICY_TYPE)),
+            throwing(type(RUNTIME_JDBI_EXCEPTION_TYPE))
+        ),
+
+        method(
+            type(PRIMITIVE_LONG_TYPE),
+            typeParams(R),
+            METHOD_WITH_BULK_INSERT,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), ITERATOR_TYPE, R),
+                annotatedType(annotations(ANNOTATION_NONNULL), BULK_INSERT_OPTIONS_TYPE)),
+            throwing(type(RUNTIME_JDBI_EXCEPTION_TYPE))
+        ),
+        method(
+            type(PRIMITIVE_LONG_TYPE),
+            typeParams(R),
+            METHOD_WITH_BULK_INSERT,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), ITERATOR_TYPE, R),
+                annotatedType(annotations(ANNOTATION_NONNULL), BULK_INSERT_OPTIONS_TYPE)),
+            throwing(type(RUNTIME_JDBI_EXCEPTION_TYPE))
         )
     };
 }
@@ -55,11 +55,19 @@ class JdbiAwareASTTransformationSpec extends Specification {
 
         when:
         def bean = shell.evaluate('''
+        import griffon.plugins.jdbi.BulkInsertOptions
         import griffon.plugins.jdbi.JdbiCallback
         import griffon.plugins.jdbi.exceptions.RuntimeJdbiException
         import griffon.plugins.jdbi.JdbiHandler
+        import griffon.plugins.jdbi.RetryPolicy
+        import org.skife.jdbi.v2.TransactionCallback
+        import org.skife.jdbi.v2.TransactionIsolationLevel
 
         import griffon.annotations.core.Nonnull
+        import java.util.concurrent.CompletableFuture
+        import java.util.concurrent.Executor
+        import java.util.stream.Stream
+
         @griffon.transform.jdbi.JdbiAware
         class JdbiHandlerBean implements JdbiHandler {
             @Override
@@ -71,6 +79,62 @@ class JdbiAwareASTTransformationSpec extends Specification {
                 return null
             }
             @Override
+            <R> R withJdbiReadOnly(@Nonnull JdbiCallback<R> callback) throws RuntimeJdbiException {
+                return null
+            }
+            @Override
+            <R> R withJdbiReadOnly(@Nonnull String datasourceName, @Nonnull JdbiCallback<R> callback) throws RuntimeJdbiException {
+                return null
+            }
+            @Override
+            <R> R withJdbiUnitOfWork(@Nonnull JdbiCallback<R> callback) throws RuntimeJdbiException {
+                return null
+            }
+            @Override
+            <R> R withJdbiUnitOfWork(@Nonnull String datasourceName, @Nonnull JdbiCallback<R> callback) throws RuntimeJdbiException {
+                return null
+            }
+            @Override
+            <R> CompletableFuture<R> withJdbiAsync(@Nonnull JdbiCallback<R> callback) throws RuntimeJdbiException {
+                return null
+            }
+            @Override
+            <R> CompletableFuture<R> withJdbiAsync(@Nonnull String datasourceName, @Nonnull JdbiCallback<R> callback) throws RuntimeJdbiException {
+                return null
+            }
+            @Override
+            <R> CompletableFuture<R> withJdbiAsync(@Nonnull String datasourceName, @Nonnull JdbiCallback<R> callback, @Nonnull Executor executor) throws RuntimeJdbiException {
+                return null
+            }
+            @Override
+            <R> R withJdbiShard(@Nonnull String shardGroup, @Nonnull Object shardKey, @Nonnull JdbiCallback<R> callback) throws RuntimeJdbiException {
+                return null
+            }
+            @Override
+            <R> Stream<R> withJdbiShards(@Nonnull String shardGroup, @Nonnull JdbiCallback<R> callback) throws RuntimeJdbiException {
+                return null
+            }
+            @Override
+            <R> R withJdbiTransaction(@Nonnull TransactionCallback<R> callback, @Nonnull RetryPolicy retryPolicy) throws RuntimeJdbiException {
+                return null
+            }
+            @Override
+            <R> R withJdbiTransaction(@Nonnull String datasourceName, @Nonnull TransactionCallback<R> callback, @Nonnull RetryPolicy retryPolicy) throws RuntimeJdbiException {
+                return null
+            }
+            @Override
+            <R> R withJdbiTransaction(@Nonnull String datasourceName, @Nonnull TransactionIsolationLevel isolation, @Nonnull TransactionCallback<R> callback, @Nonnull RetryPolicy retryPolicy) throws RuntimeJdbiException {
+                return null
+            }
+            @Override
+            <R> long withBulkInsert(@Nonnull String sql, @Nonnull Iterator<R> rows, @Nonnull BulkInsertOptions options) throws RuntimeJdbiException {
+                return 0L
+            }
+            @Override
+            <R> long withBulkInsert(@Nonnull String datasourceName, @Nonnull String sql, @Nonnull Iterator<R> rows, @Nonnull BulkInsertOptions options) throws RuntimeJdbiException {
+                return 0L
+            }
+            @Override
             void closeJdbi(){}
             @Override
             void closeJdbi(@Nonnull String datasourceName){}
@@ -0,0 +1,165 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi.micrometer;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.jdbi.JdbiMetrics;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import javax.inject.Inject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Publishes JDBI measurements as Micrometer meters tagged with the datasource name. Meters are
+ * registered the first time they are needed and cached afterwards, so that recording a measurement
+ * involves a map lookup and the meter itself.
+ * <p>
+ * The following meters are published
+ * <ul>
+ * <li>{@code jdbi.handles.acquisition} (timer): time spent obtaining a connection.</li>
+ * <li>{@code jdbi.handles.usage} (timer): time a handle was held.</li>
+ * <li>{@code jdbi.handles.open} (gauge): number of open handles.</li>
+ * <li>{@code jdbi.statements} (timer): statement latency, tagged with the statement name.</li>
+ * <li>{@code jdbi.transactions} (timer): transaction duration, tagged with the outcome.</li>
+ * <li>{@code jdbi.batches.size} (distribution summary): rows per JDBC batch.</li>
+ * </ul>
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class MicrometerJdbiMetrics implements JdbiMetrics {
+    private final MeterRegistry registry;
+    private final ConcurrentMap<String, DatasourceMeters> meters = new ConcurrentHashMap<>();
+
+    /**
+     * Publishes meters to Micrometer's global registry.
+     */
+    @Inject
+    public MicrometerJdbiMetrics() {
+        this(Metrics.globalRegistry);
+    }
+
+    public MicrometerJdbiMetrics(@Nonnull MeterRegistry registry) {
+        this.registry = requireNonNull(registry, "Argument 'registry' must not be null");
+    }
+
+    @Override
+    public void handleOpened(@Nonnull String datasourceName, long acquisitionNanos) {
+        DatasourceMeters m = metersFor(datasourceName);
+        m.acquisition.record(acquisitionNanos, TimeUnit.NANOSECONDS);
+        m.openHandles.incrementAndGet();
+    }
+
+    @Override
+    public void handleClosed(@Nonnull String datasourceName, long heldNanos) {
+        DatasourceMeters m = metersFor(datasourceName);
+        m.usage.record(heldNanos, TimeUnit.NANOSECONDS);
+        m.openHandles.decrementAndGet();
+    }
+
+    @Override
+    public void statementExecuted(@Nonnull String datasourceName, @Nonnull String statementName, long elapsedNanos) {
+        metersFor(datasourceName).statement(statementName).record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void transactionCompleted(@Nonnull String datasourceName, boolean committed, long elapsedNanos) {
+        DatasourceMeters m = metersFor(datasourceName);
+        (committed ? m.commits : m.rollbacks).record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void batchExecuted(@Nonnull String datasourceName, int size) {
+        metersFor(datasourceName).batchSizes.record(size);
+    }
+
+    @Nonnull
+    private DatasourceMeters metersFor(@Nonnull String datasourceName) {
+        DatasourceMeters m = meters.get(datasourceName);
+        if (m == null) {
+            DatasourceMeters candidate = new DatasourceMeters(registry, datasourceName);
+            m = meters.putIfAbsent(datasourceName, candidate);
+            if (m == null) {
+                m = candidate;
+            }
+        }
+        return m;
+    }
+
+    private static final class DatasourceMeters {
+        private final MeterRegistry registry;
+        private final Tags tags;
+        private final Timer acquisition;
+        private final Timer usage;
+        private final Timer commits;
+        private final Timer rollbacks;
+        private final DistributionSummary batchSizes;
+        private final AtomicInteger openHandles;
+        private final ConcurrentMap<String, Timer> statements = new ConcurrentHashMap<>();
+
+        private DatasourceMeters(@Nonnull MeterRegistry registry, @Nonnull String datasourceName) {
+            this.registry = registry;
+            this.tags = Tags.of("datasource", datasourceName);
+            acquisition = Timer.builder("jdbi.handles.acquisition")
+                .description("Time spent obtaining a connection")
+                .tags(tags)
+                .register(registry);
+            usage = Timer.builder("jdbi.handles.usage")
+                .description("Time a handle was held")
+                .tags(tags)
+                .register(registry);
+            commits = Timer.builder("jdbi.transactions")
+                .description("Transaction duration")
+                .tags(tags.and("outcome", "commit"))
+                .register(registry);
+            rollbacks = Timer.builder("jdbi.transactions")
+                .description("Transaction duration")
+                .tags(tags.and("outcome", "rollback"))
+                .register(registry);
+            batchSizes = DistributionSummary.builder("jdbi.batches.size")
+                .description("Rows per JDBC batch")
+                .baseUnit("rows")
+                .tags(tags)
+                .register(registry);
+            openHandles = registry.gauge("jdbi.handles.open", tags, new AtomicInteger());
+        }
+
+        @Nonnull
+        private Timer statement(@Nonnull String statementName) {
+            Timer timer = statements.get(statementName);
+            if (timer == null) {
+                // registering the same meter twice yields the same instance
+                timer = Timer.builder("jdbi.statements")
+                    .description("Statement latency")
+                    .tags(tags.and("statement", statementName))
+                    .register(registry);
+                statements.putIfAbsent(statementName, timer);
+            }
+            return timer;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.jdbi.micrometer
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class MicrometerJdbiMetricsSpec extends Specification {
+    private SimpleMeterRegistry registry = new SimpleMeterRegistry()
+    private MicrometerJdbiMetrics metrics = new MicrometerJdbiMetrics(registry)
+
+    void 'Connection acquisition is timed per datasource'() {
+        when:
+        metrics.handleOpened('people', TimeUnit.MILLISECONDS.toNanos(5))
+        metrics.handleOpened('people', TimeUnit.MILLISECONDS.toNanos(15))
+        metrics.handleOpened('internal', TimeUnit.MILLISECONDS.toNanos(1))
+
+        then:
+        registry.get('jdbi.handles.acquisition').tag('datasource', 'people').timer().count() == 2
+        registry.get('jdbi.handles.acquisition').tag('datasource', 'people').timer().totalTime(TimeUnit.MILLISECONDS) == 20d
+        registry.get('jdbi.handles.acquisition').tag('datasource', 'internal').timer().count() == 1
+    }
+
+    void 'Handle usage is timed when handles are closed'() {
+        when:
+        metrics.handleOpened('people', 0L)
+        metrics.handleClosed('people', TimeUnit.MILLISECONDS.toNanos(30))
+
+        then:
+        registry.get('jdbi.handles.usage').tag('datasource', 'people').timer().count() == 1
+        registry.get('jdbi.handles.usage').tag('datasource', 'people').timer().totalTime(TimeUnit.MILLISECONDS) == 30d
+    }
+
+    void 'Open handles are gauged'() {
+        when:
+        metrics.handleOpened('people', 0L)
+        metrics.handleOpened('people', 0L)
+        double open = registry.get('jdbi.handles.open').tag('datasource', 'people').gauge().value()
+        metrics.handleClosed('people', 0L)
+
+        then:
+        open == 2d
+        registry.get('jdbi.handles.open').tag('datasource', 'people').gauge().value() == 1d
+    }
+
+    void 'Statements are timed per statement name'() {
+        when:
+        metrics.statementExecuted('people', 'PersonDAO.list', TimeUnit.MILLISECONDS.toNanos(2))
+        metrics.statementExecuted('people', 'PersonDAO.list', TimeUnit.MILLISECONDS.toNanos(4))
+        metrics.statementExecuted('people', 'PersonDAO.findById', TimeUnit.MILLISECONDS.toNanos(1))
+
+        then:
+        registry.get('jdbi.statements').tags('datasource', 'people', 'statement', 'PersonDAO.list').timer().count() == 2
+        registry.get('jdbi.statements').tags('datasource', 'people', 'statement', 'PersonDAO.list').timer().totalTime(TimeUnit.MILLISECONDS) == 6d
+        registry.get('jdbi.statements').tags('datasource', 'people', 'statement', 'PersonDAO.findById').timer().count() == 1
+    }
+
+    void 'Transactions are timed per outcome'() {
+        when:
+        metrics.transactionCompleted('people', true, TimeUnit.MILLISECONDS.toNanos(10))
+        metrics.transactionCompleted('people', true, TimeUnit.MILLISECONDS.toNanos(10))
+        metrics.transactionCompleted('people', false, TimeUnit.MILLISECONDS.toNanos(5))
+
+        then:
+        registry.get('jdbi.transactions').tags('datasource', 'people', 'outcome', 'commit').timer().count() == 2
+        registry.get('jdbi.transactions').tags('datasource', 'people', 'outcome', 'rollback').timer().count() == 1
+        registry.get('jdbi.transactions').tags('datasource', 'people', 'outcome', 'rollback').timer().totalTime(TimeUnit.MILLISECONDS) == 5d
+    }
+
+    void 'Batch sizes are summarized'() {
+        when:
+        metrics.batchExecuted('people', 100)
+        metrics.batchExecuted('people', 50)
+
+        then:
+        registry.get('jdbi.batches.size').tag('datasource', 'people').summary().count() == 2
+        registry.get('jdbi.batches.size').tag('datasource', 'people').summary().totalAmount() == 150d
+        registry.get('jdbi.batches.size').tag('datasource', 'people').summary().max() == 100d
+    }
+}